@@ -0,0 +1,89 @@
+package benchmark;
+
+/**
+ * Minimal benchmark harness for the exchange's hot paths, run from the command line with plain java.  It is not JMH -
+ * README.md lists what that means for the numbers it prints.
+ * <p>
+ * Each benchmark is warmed up for a fixed number of calls, then measured over several timed batches.  Results returned
+ * by the operation are folded into a sink so the JIT cannot remove the work being measured.  throughput() times whole
+ * batches; latency() times every call on its own into a LatencyHistogram, which adds the cost of two System.nanoTime()
+ * calls (roughly 20-40ns) to each sample.
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * A single benchmarked operation.  The argument is the call number, the result is consumed by the runner.
+	 */
+	public interface Op {
+		long run(int i) throws Exception;
+	}
+
+	private final int warmupCalls;
+	private final int batches;
+	private final int callsPerBatch;
+	private long sink;
+
+	public BenchmarkRunner(int warmupCalls, int batches, int callsPerBatch) {
+		this.warmupCalls = warmupCalls;
+		this.batches = batches;
+		this.callsPerBatch = callsPerBatch;
+	}
+
+	/**
+	 * Run one benchmark and print its average time per call and throughput.
+	 * 
+	 * @param name - label printed with the results
+	 * @param op - operation to measure
+	 * @return - average nanoseconds per call over the measured batches
+	 */
+	public double throughput(String name, Op op) throws Exception {
+		for (int i = 0; i < warmupCalls; i++) sink += op.run(i);
+
+		long best = Long.MAX_VALUE;
+		long total = 0;
+		for (int b = 0; b < batches; b++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < callsPerBatch; i++) sink += op.run(i);
+			long elapsed = System.nanoTime() - start;
+			total += elapsed;
+			best = Math.min(best, elapsed);
+		}
+		double avg = (double) total / ((long) batches * callsPerBatch);
+		double min = (double) best / callsPerBatch;
+		System.out.println(String.format("%-40s %10.1f ns/op (best %8.1f) %14.0f ops/s", name, avg, min, 1e9 / avg));
+		return avg;
+	}
+
+	/**
+	 * Run one benchmark, timing each call, and print its latency percentiles.
+	 * 
+	 * @param name - label printed with the results
+	 * @param op - operation to measure
+	 * @param reset - untimed operation run after every call to put the state back, may be null
+	 * @return - the measured latencies
+	 */
+	public LatencyHistogram latency(String name, Op op, Op reset) throws Exception {
+		for (int i = 0; i < warmupCalls; i++) {
+			sink += op.run(i);
+			if (reset != null) sink += reset.run(i);
+		}
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		long calls = (long) batches * callsPerBatch;
+		for (int i = 0; i < calls; i++) {
+			long start = System.nanoTime();
+			sink += op.run(i);
+			histogram.record(System.nanoTime() - start);
+			if (reset != null) sink += reset.run(i);
+		}
+		System.out.println(String.format("%-40s %14.0f ops/s  %s", name, 1e9 / histogram.getMean(), histogram.summary()));
+		return histogram;
+	}
+
+	/**
+	 * @return - the folded results, print it once so the work stays observable
+	 */
+	public long getSink() {
+		return sink;
+	}
+}
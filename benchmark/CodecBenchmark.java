@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import codec.CancelCodec;
+import codec.CurrentMarketCodec;
+import codec.EventDecoder;
+import codec.EventEncoder;
+import codec.EventHandler;
+import codec.FillCodec;
+import codec.LastSaleCodec;
+import codec.TickerCodec;
+import messages.FillMessage;
+import price.Price;
+import price.PriceFactory;
+import tradable.Side;
+
+/**
+ * Cost of turning market data and fills into bytes and back with the codec flyweights, next to Java serialization of
+ * an equivalent object for scale.
+ * <p>
+ * Run: java benchmark.CodecBenchmark
+ */
+public class CodecBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final Price bid = PriceFactory.makeLimitPrice(18940);
+		final Price ask = PriceFactory.makeLimitPrice(18960);
+		final FillMessage fill = new FillMessage("REX", "IBM", bid, 100, "leaving 0", Side.BUY, "REXIBM$189.401234567890");
+		final EventEncoder encoder = new EventEncoder();
+		final EventDecoder decoder = new EventDecoder();
+		final long[] read = new long[1];
+		final EventHandler handler = new EventHandler() {
+			public void onCurrentMarket(CurrentMarketCodec m) {
+				read[0] += m.buyPriceValue() + m.buyVolume() + m.sellPriceValue() + m.sellVolume();
+			}
+
+			public void onLastSale(LastSaleCodec m) {
+				read[0] += m.priceValue() + m.volume();
+			}
+
+			public void onTicker(TickerCodec m) {
+				read[0] += m.priceValue() + m.direction();
+			}
+
+			public void onFill(FillCodec m) {
+				read[0] += m.priceValue() + m.volume();
+			}
+
+			public void onCancel(CancelCodec m) {
+				read[0] += m.priceValue() + m.volume();
+			}
+		};
+		final int fillLength = encoder.encodeFill(4096, fill);
+
+		System.out.println(System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+		BenchmarkRunner runner = new BenchmarkRunner(200000, 10, 200000);
+		runner.throughput("encode current market", i -> encoder.encodeCurrentMarket(0, "IBM", bid, i, ask, 300));
+		runner.throughput("encode+decode current market", i -> {
+			int length = encoder.encodeCurrentMarket(0, "IBM", bid, i, ask, 300);
+			return length + decoder.decode(encoder.buffer(), 0, handler) + read[0];
+		});
+		runner.throughput("encode fill", i -> encoder.encodeFill(0, fill));
+		runner.throughput("decode fill, fixed fields", i -> decoder.decode(encoder.buffer(), 4096, handler) + read[0]);
+		runner.throughput("serialize current market (ObjectOutputStream)", i -> {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(new SerializableMarket("IBM", 18940, i, 18960, 300));
+			out.close();
+			return bytes.size();
+		});
+		System.out.println("fill encoded in " + fillLength + " bytes");
+		System.out.println("sink " + runner.getSink());
+	}
+
+	// what a serialized MarketDataDTO would carry
+	@SuppressWarnings("serial")
+	private static final class SerializableMarket implements Serializable {
+		final String product;
+		final long buyPrice;
+		final int buyVolume;
+		final long sellPrice;
+		final int sellVolume;
+
+		SerializableMarket(String p, long bp, int bv, long sp, int sv) {
+			product = p;
+			buyPrice = bp;
+			buyVolume = bv;
+			sellPrice = sp;
+			sellVolume = sv;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package benchmark;
+
+/**
+ * Fixed-size log-linear histogram of latencies in nanoseconds, in the manner of HdrHistogram.
+ * <p>
+ * Values below 128 are counted exactly; above that each power of two is split into 64 buckets, so a reported percentile
+ * is within 1/64 (about 1.6%) of the true value. Recording is a couple of shifts and an array increment and never
+ * allocates. A histogram is not thread safe: give each recording thread its own and combine them with add().
+ */
+public final class LatencyHistogram {
+
+	private static final int LINEAR = 128;
+	private static final int SUB_BUCKETS = 64;
+	private static final int SUB_BITS = 6;
+	private static final int BUCKETS = LINEAR + (63 - SUB_BITS) * SUB_BUCKETS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long total;
+	private long min = Long.MAX_VALUE;
+	private long max;
+
+	/**
+	 * Count one latency.
+	 *
+	 * @param nanos - latency in nanoseconds, negative values are counted as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		counts[index(nanos)]++;
+		count++;
+		total += nanos;
+		if (nanos < min) min = nanos;
+		if (nanos > max) max = nanos;
+	}
+
+	/**
+	 * Fold another histogram's counts into this one.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) counts[i] += other.counts[i];
+		count += other.count;
+		total += other.total;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public void reset() {
+		java.util.Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * @param percentile - 0 to 100
+	 * @return - the latency that the given percentage of recorded values are at or below
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (count == 0) return 0;
+		long rank = (long) Math.ceil(percentile / 100.0 * count);
+		if (rank < 1) rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) return Math.min(highestValue(i), max);
+		}
+		return max;
+	}
+
+	/**
+	 * @return - one line with the count, mean and the usual percentiles
+	 */
+	public String summary() {
+		return String.format("n=%d mean=%s p50=%s p90=%s p99=%s p99.9=%s p99.99=%s max=%s", count, time((long) getMean()),
+				time(getValueAtPercentile(50)), time(getValueAtPercentile(90)), time(getValueAtPercentile(99)),
+				time(getValueAtPercentile(99.9)), time(getValueAtPercentile(99.99)), time(max));
+	}
+
+	/**
+	 * Print the percentile distribution in HdrHistogram's layout: value, percentile, cumulative count and 1/(1-percentile),
+	 * with the tail percentiles (50, 75, 87.5, ...) spelled out in more detail the closer they get to 100.
+	 *
+	 * @param out - where to print
+	 * @param unitNanos - nanoseconds per printed unit, e.g. 1000 for microseconds
+	 */
+	public void outputPercentileDistribution(java.io.PrintStream out, double unitNanos) {
+		out.println(String.format("%12s %14s %10s %14s", "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+		if (count == 0) return;
+		double percentile = 0;
+		double half = 50;
+		int ticksPerHalf = 5;
+		while (true) {
+			long value = getValueAtPercentile(percentile);
+			long below = countAtOrBelow(value);
+			out.println(String.format("%12.3f %14.12f %10d %14.2f", value / unitNanos, percentile / 100, below,
+					percentile < 100 ? 1 / (1 - percentile / 100) : Double.POSITIVE_INFINITY));
+			if (percentile >= 100 || below >= count) break;
+			percentile += half / ticksPerHalf;
+			if (percentile >= 100 - half) half /= 2;
+		}
+		if (percentile < 100) {
+			out.println(String.format("%12.3f %14.12f %10d %14s", max / unitNanos, 1.0, count, "Infinity"));
+		}
+		out.println(String.format("#[Mean    = %12.3f, Max = %12.3f]", getMean() / unitNanos, max / unitNanos));
+		out.println(String.format("#[Total count = %10d]", count));
+	}
+
+	private long countAtOrBelow(long value) {
+		long seen = 0;
+		for (int i = 0; i < BUCKETS && (i < LINEAR ? i : lowestValue(i)) <= value; i++) seen += counts[i];
+		return seen;
+	}
+
+	private static String time(long nanos) {
+		if (nanos < 10000) return nanos + "ns";
+		if (nanos < 10000000) return String.format("%.1fus", nanos / 1e3);
+		return String.format("%.1fms", nanos / 1e6);
+	}
+
+	private static int index(long v) {
+		if (v < LINEAR) return (int) v;
+		int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+		return LINEAR + (shift - 1) * SUB_BUCKETS + (int) ((v >>> shift) - SUB_BUCKETS);
+	}
+
+	// smallest value that lands in bucket i
+	private static long lowestValue(int i) {
+		if (i < LINEAR) return i;
+		int shift = (i - LINEAR) / SUB_BUCKETS + 1;
+		long mantissa = (i - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+		return mantissa << shift;
+	}
+
+	// largest value that lands in bucket i
+	private static long highestValue(int i) {
+		if (i < LINEAR) return i;
+		int shift = (i - LINEAR) / SUB_BUCKETS + 1;
+		long mantissa = (i - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+		if (shift > 62 - SUB_BITS) return Long.MAX_VALUE;
+		return ((mantissa + 1) << shift) - 1;
+	}
+}
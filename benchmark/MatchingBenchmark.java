@@ -0,0 +1,223 @@
+package benchmark;
+
+import java.util.Random;
+
+import book.ProductBook;
+import book.ProductBookSide;
+import book.ProductService;
+import messages.MarketMessage.MarketState;
+import price.Price;
+import price.PriceFactory;
+import publishers.MessagePublisher;
+import tradeProcessor.TradeProcessorFactory;
+import tradable.Order;
+import tradable.Quote;
+import tradable.Side;
+
+/**
+ * Latency and throughput of the matching path: ProductBook.addToBook(Order), addToBook(Quote), cancelOrder and
+ * ProductBookSide.tryTrade, each against books of several depths and, for the trading paths, several crossing ratios,
+ * plus a tryTrade that sweeps through up to 50 price levels in one go, and each matching algorithm of
+ * TradeProcessorFactory taking part of a single deep price level.
+ * <p>
+ * Every scenario starts from a fresh book with DEPTH price levels a side and ORDERS_PER_LEVEL resting orders of 100 at
+ * each level. Each timed call is followed by an untimed reset that cancels or replenishes what the call changed, so the
+ * book stays at the same depth for the whole run. Prices, sides and crossing decisions come from a fixed seed, so runs
+ * on the same machine and JVM are comparable.
+ * <p>
+ * Run: java [-DreuseMessages=true] benchmark.MatchingBenchmark [depth ...]  (default depths 1 10 100 1000)
+ */
+public class MatchingBenchmark {
+
+	private static final String SYMBOL = "BNCH";
+	private static final int ORDERS_PER_LEVEL = 4;
+	private static final int VOLUME = 100;
+	private static final long BEST_BID = 9999;
+	private static final long BEST_ASK = 10001;
+	private static final double[] CROSSING_RATIOS = { 0.0, 0.1, 0.5, 1.0 };
+	private static final int SWEEP_LEVELS = 50;
+	private static final int[] LEVEL_ORDERS = { 10, 100, 1000 };
+	private static final String[] ALGORITHMS = { TradeProcessorFactory.PRICE_TIME, TradeProcessorFactory.PRO_RATA,
+			TradeProcessorFactory.PRICE_SIZE_TIME };
+
+	private static final int RANDOMS = 1 << 16;
+	private static final int MASK = RANDOMS - 1;
+	private static final int[] random = new int[RANDOMS];
+	private static final String[] quoteUsers = new String[16];
+
+	public static void main(String[] args) throws Exception {
+		int[] depths = { 1, 10, 100, 1000 };
+		if (args.length > 0) {
+			depths = new int[args.length];
+			for (int i = 0; i < args.length; i++) depths[i] = Integer.parseInt(args[i]);
+		}
+		Random seed = new Random(42);
+		for (int i = 0; i < RANDOMS; i++) random[i] = seed.nextInt(Integer.MAX_VALUE);
+		for (int i = 0; i < quoteUsers.length; i++) quoteUsers[i] = "QUOTER" + i;
+
+		MessagePublisher.getInstance().setReuseMessages(Boolean.getBoolean("reuseMessages"));
+
+		// The books below are driven directly and carry their own state: only a book in PREOPEN holds
+		// orders back from trading, so they trade as built.  The market is opened as it is for live trading
+		ProductService.getInstance().setMarketState(MarketState.PREOPEN);
+		ProductService.getInstance().setMarketState(MarketState.OPEN);
+
+		System.out.println(System.getProperty("java.vm.name") + " " + System.getProperty("java.version")
+				+ (MessagePublisher.getInstance().getReuseMessages() ? ", reusing messages" : ""));
+		BenchmarkRunner runner = new BenchmarkRunner(100000, 10, 50000);
+		// every order a sweep takes stays in the book's old entries, so sweeps get far fewer calls
+		BenchmarkRunner sweepRunner = new BenchmarkRunner(2000, 5, 1000);
+		for (int depth : depths) {
+			System.out.println("--- depth " + depth + " levels x " + ORDERS_PER_LEVEL + " orders a side");
+			addRestingOrder(runner, depth);
+			cancelOrder(runner, depth);
+			addQuote(runner, depth);
+			for (double ratio : CROSSING_RATIOS) tryTrade(runner, depth, ratio);
+			for (double ratio : CROSSING_RATIOS) addCrossingOrder(runner, depth, ratio);
+			sweep(sweepRunner, depth);
+		}
+		System.out.println("--- one ask level of N orders, each BUY taking a tenth of it");
+		for (int orders : LEVEL_ORDERS) {
+			for (String algorithm : ALGORITHMS) matchLevel(sweepRunner, algorithm, orders);
+		}
+		System.out.println("sink " + (runner.getSink() + sweepRunner.getSink()));
+	}
+
+	// addToBook(Order) of a non-crossing BUY at one of the existing bid levels, cancelled again after timing
+	private static void addRestingOrder(BenchmarkRunner runner, final int depth) throws Exception {
+		final ProductBook book = newBook(depth);
+		final Order[] last = new Order[1];
+		runner.latency("addToBook(Order) resting", i -> {
+			Order o = new Order("BENCH", SYMBOL, bid(random[i & MASK] % depth), VOLUME, Side.BUY);
+			book.addToBook(o);
+			last[0] = o;
+			return o.getRemainingVolume();
+		}, i -> {
+			book.cancelOrder(Side.BUY, last[0].getId());
+			return 0;
+		});
+	}
+
+	// cancelOrder of an order resting at a random bid level, replaced after timing
+	private static void cancelOrder(BenchmarkRunner runner, final int depth) throws Exception {
+		final ProductBook book = newBook(depth);
+		final Order[] pending = { new Order("BENCH", SYMBOL, bid(0), VOLUME, Side.BUY) };
+		book.addToBook(pending[0]);
+		runner.latency("cancelOrder", i -> {
+			book.cancelOrder(Side.BUY, pending[0].getId());
+			return 1;
+		}, i -> {
+			pending[0] = new Order("BENCH", SYMBOL, bid(random[i & MASK] % depth), VOLUME, Side.BUY);
+			book.addToBook(pending[0]);
+			return 0;
+		});
+	}
+
+	// addToBook(Quote) from a fixed set of quoting users, so each quote replaces that user's previous one
+	private static void addQuote(BenchmarkRunner runner, final int depth) throws Exception {
+		final ProductBook book = newBook(depth);
+		runner.latency("addToBook(Quote) replace", i -> {
+			int r = random[i & MASK];
+			book.addToBook(new Quote(quoteUsers[i & 15], SYMBOL, bid(r % depth), VOLUME, ask((r >>> 10) % depth), VOLUME));
+			return r;
+		}, null);
+	}
+
+	// ProductBookSide.tryTrade of a BUY against the sell side; a crossing BUY takes exactly one resting order at the best ask
+	private static void tryTrade(BenchmarkRunner runner, int depth, double ratio) throws Exception {
+		final ProductBook book = newBook(depth);
+		final ProductBookSide sell = book.getSell();
+		final int threshold = (int) (ratio * Integer.MAX_VALUE);
+		runner.latency(String.format("tryTrade crossing %3.0f%%", ratio * 100), i -> {
+			Price price = random[i & MASK] < threshold ? ask(0) : bid(0);
+			Order o = new Order("BENCH", SYMBOL, price, VOLUME, Side.BUY);
+			sell.tryTrade(o);
+			return o.getRemainingVolume();
+		}, i -> {
+			if (random[i & MASK] < threshold) sell.addToBook(new Order("MAKER", SYMBOL, ask(0), VOLUME, Side.SELL));
+			return 0;
+		});
+	}
+
+	// ProductBook.addToBook(Order) end to end: a crossing BUY trades one order at the best ask, otherwise it rests
+	private static void addCrossingOrder(BenchmarkRunner runner, final int depth, double ratio) throws Exception {
+		final ProductBook book = newBook(depth);
+		final int threshold = (int) (ratio * Integer.MAX_VALUE);
+		final Order[] last = new Order[1];
+		runner.latency(String.format("addToBook(Order) crossing %3.0f%%", ratio * 100), i -> {
+			int r = random[i & MASK];
+			Price price = r < threshold ? ask(0) : bid(r % depth);
+			Order o = new Order("BENCH", SYMBOL, price, VOLUME, Side.BUY);
+			book.addToBook(o);
+			last[0] = o;
+			return o.getRemainingVolume();
+		}, i -> {
+			if (random[i & MASK] < threshold) book.getSell().addToBook(new Order("MAKER", SYMBOL, ask(0), VOLUME, Side.SELL));
+			else book.cancelOrder(Side.BUY, last[0].getId());
+			return 0;
+		});
+	}
+
+	// ProductBookSide.tryTrade of a BUY that takes every order on up to SWEEP_LEVELS ask levels, restocked after timing
+	private static void sweep(BenchmarkRunner runner, int depth) throws Exception {
+		final ProductBook book = newBook(depth);
+		final ProductBookSide sell = book.getSell();
+		final int levels = Math.min(depth, SWEEP_LEVELS);
+		runner.latency("tryTrade sweep " + levels + " levels", i -> {
+			Order o = new Order("BENCH", SYMBOL, ask(levels - 1), levels * ORDERS_PER_LEVEL * VOLUME, Side.BUY);
+			sell.tryTrade(o);
+			return o.getRemainingVolume();
+		}, i -> {
+			for (int level = 0; level < levels; level++) {
+				for (int n = 0; n < ORDERS_PER_LEVEL; n++)
+					sell.addToBook(new Order("MAKER", SYMBOL, ask(level), VOLUME, Side.SELL));
+			}
+			return 0;
+		});
+	}
+
+	// ProductBookSide.tryTrade of a BUY for a tenth of one ask level of orders of mixed sizes, the level rebuilt after timing
+	private static void matchLevel(BenchmarkRunner runner, final String algorithm, final int orders) throws Exception {
+		final ProductBookSide[] sell = new ProductBookSide[1];
+		final int levelVolume = newLevel(sell, algorithm, orders);
+		runner.latency(String.format("tryTrade %-15s %4d orders", algorithm, orders), i -> {
+			Order o = new Order("BENCH", SYMBOL, ask(0), levelVolume / 10, Side.BUY);
+			sell[0].tryTrade(o);
+			return o.getRemainingVolume();
+		}, i -> {
+			newLevel(sell, algorithm, orders);
+			return 0;
+		});
+	}
+
+	private static int newLevel(ProductBookSide[] sell, String algorithm, int orders) throws Exception {
+		sell[0] = new ProductBook(SYMBOL, algorithm).getSell();
+		int volume = 0;
+		for (int n = 0; n < orders; n++) {
+			int size = VOLUME * (1 + random[n & MASK] % 4);
+			sell[0].addToBook(new Order("MAKER", SYMBOL, ask(0), size, Side.SELL));
+			volume += size;
+		}
+		return volume;
+	}
+
+	private static ProductBook newBook(int depth) throws Exception {
+		ProductBook book = new ProductBook(SYMBOL);
+		for (int level = 0; level < depth; level++) {
+			for (int n = 0; n < ORDERS_PER_LEVEL; n++) {
+				book.getBuy().addToBook(new Order("MAKER", SYMBOL, bid(level), VOLUME, Side.BUY));
+				book.getSell().addToBook(new Order("MAKER", SYMBOL, ask(level), VOLUME, Side.SELL));
+			}
+		}
+		return book;
+	}
+
+	// level 0 is the top of book
+	private static Price bid(int level) {
+		return PriceFactory.makeLimitPrice(BEST_BID - level);
+	}
+
+	private static Price ask(int level) {
+		return PriceFactory.makeLimitPrice(BEST_ASK + level);
+	}
+}
@@ -0,0 +1,63 @@
+package benchmark;
+
+import java.text.DecimalFormat;
+
+import price.PriceFormat;
+
+/**
+ * Compares the original DecimalFormat / regular expression Price conversions with PriceFormat.
+ * <p>
+ * The inputs are the kind of text UserSim and the GUI entry screens produce ("189.40", "$1,234.50", "-12.5"). Before timing,
+ * every input is checked to give the same result on both paths.
+ * <p>
+ * Run: java benchmark.PriceBenchmark
+ */
+public class PriceBenchmark {
+
+	private static final int INPUTS = 4096;
+
+	public static void main(String[] args) throws Exception {
+		final String[] text = new String[INPUTS];
+		final long[] cents = new long[INPUTS];
+		java.util.Random random = new java.util.Random(42);
+		for (int i = 0; i < INPUTS; i++) {
+			cents[i] = random.nextInt(2000000) - 100000;
+			switch (i % 4) {
+			case 0: text[i] = String.format("%.2f", cents[i] / 100.0); break;
+			case 1: text[i] = legacyFormat(cents[i]); break;
+			case 2: text[i] = Long.toString(cents[i] / 100); break;
+			default: text[i] = String.format("%.1f", cents[i] / 100.0); break;
+			}
+		}
+		for (int i = 0; i < INPUTS; i++) {
+			if (legacyParse(text[i]) != PriceFormat.parse(text[i]))
+				throw new IllegalStateException("parse mismatch for " + text[i]);
+			if (!legacyFormat(cents[i]).equals(PriceFormat.format(cents[i])))
+				throw new IllegalStateException("format mismatch for " + cents[i]);
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner(200000, 10, 200000);
+		final int mask = INPUTS - 1;
+		runner.throughput("parse  legacy (replaceAll+parseDouble)", i -> legacyParse(text[i & mask]));
+		runner.throughput("parse  PriceFormat", i -> PriceFormat.parse(text[i & mask]));
+		runner.throughput("format legacy (DecimalFormat)", i -> legacyFormat(cents[i & mask]).length());
+		runner.throughput("format PriceFormat", i -> PriceFormat.format(cents[i & mask]).length());
+		System.out.println("sink " + runner.getSink());
+	}
+
+	// The conversions as they were in PriceFactory.makeLimitPrice(String) and the Price(long) constructor
+	private static long legacyParse(String value) {
+		int decLocation = value.indexOf(".");
+		if (decLocation == -1 ) value += "00";
+		else if (decLocation == value.length() - 1)  value += "00";
+		else if (decLocation == value.length() - 2)  value += "0";
+		value = value.replaceAll("[$,.]", ""); 
+		double decimalPrice = Double.parseDouble(value);
+		return (long)(decimalPrice);
+	}
+
+	private static String legacyFormat(long price) {
+		DecimalFormat a = new DecimalFormat("$#,##0.00;$-#,##0.00");
+		return a.format(price/100.0).toString();
+	}
+}
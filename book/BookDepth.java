@@ -0,0 +1,121 @@
+package book;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *The best price levels on each side of a ProductBook - price, remaining
+ *volume and number of booked entries at each - without formatting any
+ *Strings.  Levels are best price first.  Prices are in cents, with
+ *MARKET_PRICE standing for a MKT price.  A BookDepth may be filled again
+ *and again by ProductBook.getBookDepth(BookDepth) without allocating.
+ ***************************************************************************/
+public final class BookDepth {
+
+	// stored in place of the price value for a MKT price
+	public static final long MARKET_PRICE = Long.MIN_VALUE;
+
+	private final String symbol;
+	private final Levels buy;
+	private final Levels sell;
+
+	/**
+	 * @param symbol - product the depth is of
+	 * @param maxLevels - most levels to hold on each side
+	 */
+	public BookDepth(String symbol, int maxLevels) {
+		if (maxLevels < 1) throw new IllegalArgumentException("Invalid number of levels: " + maxLevels);
+		this.symbol = symbol;
+		buy = new Levels(maxLevels);
+		sell = new Levels(maxLevels);
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public Levels getBuy() {
+		return buy;
+	}
+
+	public Levels getSell() {
+		return sell;
+	}
+
+	/********************************************************
+	 * The levels of one side of the book, best price first
+	 ********************************************************/
+	public static final class Levels {
+		private final long[] prices;
+		private final int[] volumes;
+		private final int[] counts;
+		private int size;
+		private int totalLevels;
+
+		private Levels(int maxLevels) {
+			prices = new long[maxLevels];
+			volumes = new int[maxLevels];
+			counts = new int[maxLevels];
+		}
+
+		/**
+		 * @return - levels held, at most the maximum asked for
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return - levels on the side of the book, including any not held
+		 */
+		public int getTotalLevels() {
+			return totalLevels;
+		}
+
+		/**
+		 * @param i - level from 0, the best
+		 * @return - price in cents, or MARKET_PRICE
+		 */
+		public long getPrice(int i) {
+			check(i);
+			return prices[i];
+		}
+
+		/**
+		 * @param i - level from 0, the best
+		 * @return - remaining volume booked at the level
+		 */
+		public int getVolume(int i) {
+			check(i);
+			return volumes[i];
+		}
+
+		/**
+		 * @param i - level from 0, the best
+		 * @return - number of Tradables booked at the level
+		 */
+		public int getCount(int i) {
+			check(i);
+			return counts[i];
+		}
+
+		int capacity() {
+			return prices.length;
+		}
+
+		void clear(int total) {
+			size = 0;
+			totalLevels = total;
+		}
+
+		void add(PriceLevel level) {
+			prices[size] = level.getPrice().getIsMarket() ? MARKET_PRICE : level.getPrice().getPrice();
+			volumes[size] = level.getVolume();
+			counts[size] = level.size();
+			size++;
+		}
+
+		private void check(int i) {
+			if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Level " + i + " of " + size);
+		}
+	}
+}
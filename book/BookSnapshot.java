@@ -0,0 +1,151 @@
+package book;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import exceptions.InvalidVolumeException;
+import exceptions.NullObjectException;
+import messages.MarketMessage.MarketState;
+import price.Price;
+import price.PriceFactory;
+import tradable.Order;
+import tradable.QuoteSide;
+import tradable.Side;
+import tradable.Tradable;
+import tradeProcessor.TradeProcessorFactory;
+
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *A point-in-time binary image of one ProductBook: the resting Tradables of
+ *both sides in price-time order, the users with live quotes, and the old
+ *(cancelled or traded out) entries.  The image also holds the book's
+ *market state, the product index its ids carry (see OrderId) and the
+ *sequence number of the last journal record applied to the book, so
+ *recovery replays only the journal records that came after it.
+ ***************************************************************************/
+final class BookSnapshot {
+
+	private static final MarketState[] STATES = MarketState.values();
+
+	final String symbol;
+	final long seq;
+	final ProductBook book;
+
+	private BookSnapshot(String s, long sq, ProductBook b) {
+		symbol = s;
+		seq = sq;
+		book = b;
+	}
+
+	/**********************************************************
+	 * Copy the book into a byte array.  Must run on the thread
+	 * that owns the book so the image is consistent.
+	 *
+	 * @param book
+	 * @param seq - last journal record applied to the book
+	 * @return - the encoded image
+	 * @throws IOException
+	 **********************************************************/
+	static byte[] capture(ProductBook book, long seq) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(book.getSymbol());
+		out.writeUTF(book.getMatchingAlgorithm());
+		out.writeLong(seq);
+		out.writeByte(book.getMarketState().ordinal());
+		out.writeShort(book.getProductIndex());
+		writeTradables(out, book.getBuy().getRestingTradables());
+		writeTradables(out, book.getSell().getRestingTradables());
+		out.writeInt(book.getUserQuotes().size());
+		for (String user : book.getUserQuotes())
+			out.writeUTF(user);
+		writeTradables(out, book.getOldEntries());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**********************************************************
+	 * Build a new ProductBook from an image made by capture
+	 *
+	 * @param image
+	 * @return - the restored book and the sequence number it was captured at
+	 * @throws IOException
+	 **********************************************************/
+	static BookSnapshot restore(byte[] image) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(image));
+		String symbol = in.readUTF().intern();
+		String algorithm = in.readUTF();
+		long seq = in.readLong();
+		int state = in.readByte();
+		if (state < 0 || state >= STATES.length)
+			throw new IOException("Snapshot of " + symbol + " has no market state " + state);
+		int productIndex = in.readUnsignedShort();
+		if (!TradeProcessorFactory.isRegistered(algorithm))
+			throw new IOException("Snapshot of " + symbol + " uses unregistered matching algorithm " + algorithm);
+		ProductBook book;
+		try {
+			book = new ProductBook(symbol, algorithm, productIndex);
+		} catch (NullObjectException e) {
+			throw new IOException("Snapshot has no product symbol", e);
+		}
+		book.setMarketState(STATES[state]);
+		for (Tradable t : readTradables(in, symbol))
+			book.getBuy().addToBook(t);
+		for (Tradable t : readTradables(in, symbol))
+			book.getSell().addToBook(t);
+		int users = in.readInt();
+		for (int i = 0; i < users; i++)
+			book.getUserQuotes().add(in.readUTF().intern());
+		for (Tradable t : readTradables(in, symbol))
+			book.restoreOldEntry(t);
+		return new BookSnapshot(symbol, seq, book);
+	}
+
+	private static void writeTradables(DataOutputStream out, ArrayList<Tradable> tradables) throws IOException {
+		out.writeInt(tradables.size());
+		for (Tradable t : tradables) {
+			out.writeBoolean(t.isQuote());
+			out.writeUTF(t.getUser());
+			out.writeUTF(t.getSide().name());
+			out.writeBoolean(t.getPrice().getIsMarket());
+			out.writeLong(t.getPrice().getPrice());
+			out.writeInt(t.getOriginalVolume());
+			out.writeInt(t.getRemainingVolume());
+			out.writeInt(t.getCancelledVolume());
+			out.writeLong(t.getOrderId());
+		}
+	}
+
+	private static ArrayList<Tradable> readTradables(DataInputStream in, String symbol) throws IOException {
+		int count = in.readInt();
+		ArrayList<Tradable> tradables = new ArrayList<Tradable>(count);
+		for (int i = 0; i < count; i++) {
+			boolean isQuote = in.readBoolean();
+			String user = in.readUTF().intern();
+			Side side = Side.valueOf(in.readUTF());
+			boolean market = in.readBoolean();
+			long value = in.readLong();
+			Price price = market ? PriceFactory.makeMarketPrice() : PriceFactory.makeLimitPrice(value);
+			int original = in.readInt();
+			int remaining = in.readInt();
+			int cancelled = in.readInt();
+			long id = in.readLong();
+			try {
+				Tradable t = isQuote ? new QuoteSide(user, symbol, price, original, side, true, id)
+						: new Order(user, symbol, price, original, side, id);
+				t.setRemainingVolume(remaining);
+				t.setCancelledVolume(cancelled);
+				tradables.add(t);
+			} catch (InvalidVolumeException e) {
+				throw new IOException("Snapshot holds an invalid tradable: " + id, e);
+			}
+		}
+		return tradables;
+	}
+}
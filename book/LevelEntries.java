@@ -0,0 +1,57 @@
+package book;
+
+import tradable.Tradable;
+
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *A reusable copy of the Tradables booked at one Price, in time of arrival
+ *order, along with the sequence number each one was booked under.  The
+ *sequence number identifies a booked entry within its ProductBookSide, so
+ *a TradeProcessor can key fills by it instead of building a String key.
+ *One LevelEntries is refilled for every price level a trade sweeps through.
+ ***************************************************************************/
+public final class LevelEntries {
+
+	private Tradable[] entries = new Tradable[16];
+	private long[] seqs = new long[16];
+	private int size;
+
+	public int size() {
+		return size;
+	}
+
+	/*******************************************************
+	 * @param i - position in time priority, from 0
+	 * @return - the booked Tradable at that position
+	 *******************************************************/
+	public Tradable get(int i) {
+		return entries[i];
+	}
+
+	/*******************************************************
+	 * @param i - position in time priority, from 0
+	 * @return - the sequence number the entry was booked under
+	 *******************************************************/
+	public long getSeq(int i) {
+		return seqs[i];
+	}
+
+	// Drop the previous level's entries so they are not kept reachable
+	void clear() {
+		for (int i = 0; i < size; i++)
+			entries[i] = null;
+		size = 0;
+	}
+
+	void add(Tradable t, long seq) {
+		if (size == entries.length) {
+			entries = java.util.Arrays.copyOf(entries, size * 2);
+			seqs = java.util.Arrays.copyOf(seqs, size * 2);
+		}
+		entries[size] = t;
+		seqs[size] = seq;
+		size++;
+	}
+}
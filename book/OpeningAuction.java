@@ -0,0 +1,86 @@
+package book;
+
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *The single price a ProductBook opens at, found from the cumulative demand
+ *and supply of its price levels in one pass.  The opening price is the 
+ *level price at which the most volume can trade.  Ties go to the price 
+ *that leaves the least volume unmatched, then to the highest such price 
+ *when buyers are left over, the lowest when sellers are, and the middle 
+ *of them when neither is.  ProductService refuses MKT orders before the
+ *open, so only limit prices are expected; a MKT level is passed over.
+ ***************************************************************************/
+final class OpeningAuction {
+
+	// price in cents every crossing entry trades at
+	final long price;
+	// volume each side trades
+	final int volume;
+	// demand less supply at the price
+	final long imbalance;
+
+	private OpeningAuction(long p, int v, long i) {
+		price = p;
+		volume = v;
+		imbalance = i;
+	}
+
+	/*******************************************************
+	 * @param buy - BUY levels, best (highest) price first
+	 * @param sell - SELL levels, best (lowest) price first
+	 * @return - the opening price and volume, null when the 
+	 * book does not cross
+	 *******************************************************/
+	static OpeningAuction uncross(BookDepth.Levels buy, BookDepth.Levels sell) {
+		// limit levels only - a MKT level would be at the low end of either side
+		int nb = buy.size();
+		while (nb > 0 && buy.getPrice(nb - 1) == BookDepth.MARKET_PRICE) nb--;
+		int first = 0;
+		while (first < sell.size() && sell.getPrice(first) == BookDepth.MARKET_PRICE) first++;
+		if (nb == 0 || first == sell.size()) return null;
+		long bestBuy = buy.getPrice(0);
+		long bestSell = sell.getPrice(first);
+		if (bestBuy < bestSell) return null;
+
+		long demand = 0;
+		for (int b = 0; b < nb; b++)
+			demand += buy.getVolume(b);
+		long supply = 0;
+
+		long bestVolume = 0;
+		long bestImbalance = 0;
+		long low = 0;
+		long high = 0;
+		// every level price is a candidate, taken lowest first from both sides
+		int s = first;
+		int b = nb - 1;
+		while (s < sell.size() || b >= 0) {
+			long p = Math.min(s < sell.size() ? sell.getPrice(s) : Long.MAX_VALUE, b >= 0 ? buy.getPrice(b) : Long.MAX_VALUE);
+			if (p > bestBuy) break;
+			while (s < sell.size() && sell.getPrice(s) <= p) supply += sell.getVolume(s++);
+			if (p >= bestSell) {
+				long volume = Math.min(demand, supply);
+				long imbalance = demand - supply;
+				if (volume > bestVolume || volume == bestVolume && Math.abs(imbalance) < Math.abs(bestImbalance)) {
+					bestVolume = volume;
+					bestImbalance = imbalance;
+					low = p;
+					high = p;
+				} else if (volume == bestVolume && imbalance == bestImbalance) {
+					high = p;
+				}
+			}
+			// buys at p are not willing to pay any higher candidate
+			while (b >= 0 && buy.getPrice(b) <= p) demand -= buy.getVolume(b--);
+		}
+		if (bestVolume == 0) return null;
+
+		long price;
+		if (bestImbalance > 0) price = high;
+		else if (bestImbalance < 0) price = low;
+		else price = (low + high) / 2;
+		return new OpeningAuction(price, (int) bestVolume, bestImbalance);
+	}
+}
@@ -0,0 +1,100 @@
+package book;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Open addressing hash table of the booked entries of one ProductBookSide,
+ *keyed on their Tradable's primitive long id (see tradable.OrderId).  The
+ *slots hold the Nodes themselves, so no key is boxed and no entry object is
+ *allocated.  Removal shifts the entries after the removed one back, so the
+ *table never fills with deleted markers.  Guarded by the ProductBookSide.
+ ***************************************************************************/
+final class OrderIndex {
+
+	private PriceLevel.Node[] slots = new PriceLevel.Node[64];
+	private int size;
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param orderId
+	 * @return - the entry booked with that id, null if there is none
+	 */
+	PriceLevel.Node get(long orderId) {
+		PriceLevel.Node[] table = slots;
+		int mask = table.length - 1;
+		for (int i = hash(orderId) & mask; ; i = (i + 1) & mask) {
+			PriceLevel.Node n = table[i];
+			if (n == null || n.tradable.getOrderId() == orderId) return n;
+		}
+	}
+
+	/**
+	 * Add an entry, replacing any with the same id
+	 * 
+	 * @param n - booked entry
+	 */
+	void put(PriceLevel.Node n) {
+		if ((size + 1) * 2 > slots.length) resize();
+		long orderId = n.tradable.getOrderId();
+		int mask = slots.length - 1;
+		int i = hash(orderId) & mask;
+		while (slots[i] != null) {
+			if (slots[i].tradable.getOrderId() == orderId) {
+				slots[i] = n;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		slots[i] = n;
+		size++;
+	}
+
+	/**
+	 * @param orderId
+	 * @return - the entry removed, null if there was none
+	 */
+	PriceLevel.Node remove(long orderId) {
+		PriceLevel.Node[] table = slots;
+		int mask = table.length - 1;
+		int i = hash(orderId) & mask;
+		while (true) {
+			PriceLevel.Node n = table[i];
+			if (n == null) return null;
+			if (n.tradable.getOrderId() == orderId) break;
+			i = (i + 1) & mask;
+		}
+		PriceLevel.Node removed = table[i];
+		// move back every following entry that the gap would cut off from its home slot
+		int gap = i;
+		for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+			int home = hash(table[j].tradable.getOrderId()) & mask;
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				table[gap] = table[j];
+				gap = j;
+			}
+		}
+		table[gap] = null;
+		size--;
+		return removed;
+	}
+
+	private void resize() {
+		PriceLevel.Node[] old = slots;
+		slots = new PriceLevel.Node[old.length * 2];
+		int mask = slots.length - 1;
+		for (PriceLevel.Node n : old) {
+			if (n == null) continue;
+			int i = hash(n.tradable.getOrderId()) & mask;
+			while (slots[i] != null) i = (i + 1) & mask;
+			slots[i] = n;
+		}
+	}
+
+	private static int hash(long orderId) {
+		long h = orderId * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
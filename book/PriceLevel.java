@@ -0,0 +1,149 @@
+package book;
+
+import java.util.ArrayList;
+
+import price.Price;
+import tradable.Tradable;
+
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *A PriceLevel holds the booked Tradables at one Price on one side of a 
+ *ProductBook in time of arrival order.  Entries are kept in a doubly linked 
+ *list so any entry can be unlinked in constant time once its Node is known.
+ *The level's total remaining volume is kept up to date as entries are 
+ *added, filled and removed, so reading it never walks the entries.
+ ***************************************************************************/
+class PriceLevel {
+
+	private final Price price;
+	private Node head;
+	private Node tail;
+	private int size;
+	// sum of the volume counted for each entry
+	private int volume;
+
+	/********************************************************
+	 * A single booked Tradable and its position in a level
+	 ********************************************************/
+	static final class Node {
+		final Tradable tradable;
+		// order the entry was booked in on its ProductBookSide, unique within that side
+		final long seq;
+		// the Tradable's remaining volume as last counted into its level's volume
+		int volume;
+		PriceLevel level;
+		Node prev;
+		Node next;
+		// the same user's booked Orders on either side of the book, see ProductBook
+		Node userPrev;
+		Node userNext;
+
+		Node(Tradable t, long s) {
+			tradable = t;
+			seq = s;
+		}
+	}
+
+	//CONSTRUCTOR --------//
+	PriceLevel(Price p) {
+		price = p;
+	}
+
+	Price getPrice() {
+		return price;
+	}
+
+	Node getHead() {
+		return head;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/*******************************************************
+	 * Add a Tradable to the back of the time priority queue
+	 * 
+	 * @param t - Tradable to add
+	 * @param seq - booking sequence number of the entry
+	 * @return - the Node now holding the Tradable
+	 *******************************************************/
+	Node append(Tradable t, long seq) {
+		Node n = new Node(t, seq);
+		n.level = this;
+		n.volume = t.getRemainingVolume();
+		volume += n.volume;
+		n.prev = tail;
+		if (tail == null) head = n;
+		else tail.next = n;
+		tail = n;
+		size++;
+		return n;
+	}
+
+	/*******************************************************
+	 * Unlink a Node from this level
+	 * 
+	 * @param n - Node to remove
+	 *******************************************************/
+	void remove(Node n) {
+		if (n.level != this) return;
+		if (n.prev == null) head = n.next;
+		else n.prev.next = n.next;
+		if (n.next == null) tail = n.prev;
+		else n.next.prev = n.prev;
+		n.prev = null;
+		n.next = null;
+		n.level = null;
+		size--;
+		volume -= n.volume;
+		n.volume = 0;
+	}
+
+	/*******************************************************
+	 * Count a booked entry's remaining volume again, after
+	 * it has been partly filled
+	 * 
+	 * @param n - Node of the entry
+	 *******************************************************/
+	void updateVolume(Node n) {
+		if (n.level != this) return;
+		int remaining = n.tradable.getRemainingVolume();
+		volume += remaining - n.volume;
+		n.volume = remaining;
+	}
+
+	/*******************************************************
+	 * @return - the Tradables at this level in time order
+	 *******************************************************/
+	ArrayList<Tradable> toList() {
+		ArrayList<Tradable> list = new ArrayList<Tradable>(size);
+		for (Node n = head; n != null; n = n.next)
+			list.add(n.tradable);
+		return list;
+	}
+
+	/*******************************************************
+	 * Replace the content of a LevelEntries with this level
+	 * 
+	 * @param into - reusable copy to fill
+	 *******************************************************/
+	void copyTo(LevelEntries into) {
+		into.clear();
+		for (Node n = head; n != null; n = n.next)
+			into.add(n.tradable, n.seq);
+	}
+
+	/*******************************************************
+	 * @return - the sum of the remaining volume at this level
+	 *******************************************************/
+	int getVolume() {
+		return volume;
+	}
+}
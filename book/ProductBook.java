@@ -1,11 +1,11 @@
 package book;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map.Entry;
+import java.util.Objects;
 
 import messages.CancelMessage;
 import messages.FillMessage;
@@ -23,10 +23,14 @@ import publishers.LastSalePublisher;
 import publishers.MarketDataDTO;
 import publishers.MessagePublisher;
 import tradable.Order;
+import tradable.OrderId;
 import tradable.Quote;
 import tradable.QuoteSide;
+import tradable.Side;
 import tradable.Tradable;
 import tradable.TradableDTO;
+import tradeProcessor.FillAccumulator;
+import tradeProcessor.TradeProcessorFactory;
 
 
 /***************************************************************************
@@ -39,17 +43,49 @@ import tradable.TradableDTO;
 public class ProductBook {
 
 	private String symbol;
+	// name of the TradeProcessorFactory algorithm both sides trade with
+	private final String matchingAlgorithm;
 	private ProductBookSide buy; 
 	private ProductBookSide sell; 
-	private String lastCurrentMarket = "";
+	// the current market last published, compared field by field to spot a change
+	private Price lastBuyPrice;
+	private int lastBuyVolume;
+	private Price lastSellPrice;
+	private int lastSellVolume;
 	private HashSet<String> userQuotesSet = new HashSet<String>();
+	// each user's most recently booked Order on either side, the rest linked through the
+	// Nodes' userPrev, so a user's Orders are found without walking the book
+	private HashMap<String, PriceLevel.Node> userOrders = new HashMap<String, PriceLevel.Node>();
 	private HashMap<Price, ArrayList<Tradable>> oldEntriesMap = new HashMap<Price, ArrayList<Tradable>>(); 
+	// the market state as this book's own commands have seen it, changed by the commands 
+	// that open and close the book, so every order sees the state of the orders ahead of it
+	private MarketState marketState = MarketState.CLOSED;
+	// the product's part of every OrderId the book gives out, and the last sequence number given out
+	private final int productIndex;
+	private long lastSequence;
 	
 	//CONSTRUCTOR-----------//
 	public ProductBook(String s) throws NullObjectException {
+		this(s, TradeProcessorFactory.PRICE_TIME);
+	}
+
+	public ProductBook(String s, String algorithm) throws NullObjectException {
+		this(s, algorithm, 0);
+	}
+
+	/**
+	 * @param s - product symbol
+	 * @param algorithm - name of the TradeProcessorFactory matching algorithm to trade with
+	 * @param productIndex - index of the product in the OrderIds the book gives out
+	 * @throws NullObjectException
+	 */
+	public ProductBook(String s, String algorithm, int productIndex) throws NullObjectException {
+		if (algorithm == null) throw new NullObjectException("Matching algorithm cannot be null");
+		matchingAlgorithm = algorithm;
+		this.productIndex = productIndex;
 		setSymbol(s);
-		buy = new ProductBookSide(this, "BUY");
-		sell = new ProductBookSide(this, "SELL");
+		buy = new ProductBookSide(this, Side.BUY);
+		sell = new ProductBookSide(this, Side.SELL);
 	}
 	
 	//GETTERS ------//
@@ -61,6 +97,36 @@ public class ProductBook {
 		return sell;
 	}
 
+	public String getMatchingAlgorithm() {
+		return matchingAlgorithm;
+	}
+
+	public int getProductIndex() {
+		return productIndex;
+	}
+
+	/**
+	 * Give a Tradable new to the exchange the next of this book's OrderIds, or, 
+	 * for one restored with the id it had, make sure the ids given out from now 
+	 * on come after it.  Only the thread that owns the book calls it, so the 
+	 * sequence needs no lock.
+	 * 
+	 * @param t - an Order or QuoteSide of this product
+	 */
+	void number(Tradable t) {
+		long id = t.getOrderId();
+		if (id == 0) t.setOrderId(OrderId.make(productIndex, ++lastSequence, t.getSide()));
+		else if (OrderId.getSequence(id) > lastSequence) lastSequence = OrderId.getSequence(id);
+	}
+
+	MarketState getMarketState() {
+		return marketState;
+	}
+
+	void setMarketState(MarketState ms) {
+		marketState = ms;
+	}
+
 	/////////3.1///////////////
 	 /*********************************************** 
 	  * @param userName - user with active orders
@@ -68,19 +134,45 @@ public class ProductBook {
 	  * that contain the details on all orders from 
 	  * the specified user that are still active with 
 	  * remaining volume from both sides of the book 
-	  * (Buy/Sell)
+	  * (Buy/Sell), in the order they were booked.
+	  * Quotes are not included
 	  ***********************************************/
 	 public synchronized ArrayList<TradableDTO> getOrdersWithRemainingQty(String userName) {
 		 ArrayList<TradableDTO> dtoList = new ArrayList<TradableDTO>();
 		 
-		 ArrayList<TradableDTO> buyList = buy.getOrdersWithRemainingQty(userName);
-		 dtoList.addAll(buyList);
-		 
-		 ArrayList<TradableDTO> sellList = sell.getOrdersWithRemainingQty(userName);
-		 dtoList.addAll(sellList);
+		 for (PriceLevel.Node n = userOrders.get(userName); n != null; n = n.userPrev) {
+			 if (n.tradable.getRemainingVolume() > 0) dtoList.add(new TradableDTO(n.tradable));
+		 }
+		 Collections.reverse(dtoList);
 		 
 		 return dtoList;
 	 }
+	 
+	 /***********************************************
+	  * Add a newly booked Order to its user's index
+	  * 
+	  * @param n - Node the Order was booked in
+	  ***********************************************/
+	 void indexUserOrder(PriceLevel.Node n) {
+		 PriceLevel.Node latest = userOrders.put(n.tradable.getUser(), n);
+		 n.userPrev = latest;
+		 if (latest != null) latest.userNext = n;
+	 }
+	 
+	 /***********************************************
+	  * Drop an Order leaving the book from its 
+	  * user's index
+	  * 
+	  * @param n - Node the Order was booked in
+	  ***********************************************/
+	 void unindexUserOrder(PriceLevel.Node n) {
+		 if (n.userPrev != null) n.userPrev.userNext = n.userNext;
+		 if (n.userNext != null) n.userNext.userPrev = n.userPrev;
+		 else if (n.userPrev != null) userOrders.put(n.tradable.getUser(), n.userPrev);
+		 else userOrders.remove(n.tradable.getUser());
+		 n.userPrev = null;
+		 n.userNext = null;
+	 }
 	
 		 
 	 //////////3.2/////////
@@ -119,12 +211,23 @@ public class ProductBook {
 
 		 String[][] bd = new String[2][];
 		 bd[0] = buy.getBookDepth();
-		 Collections.reverse(Arrays.asList(bd[0]));
 		 bd[1] = sell.getBookDepth();
 		 
 		 return bd;
 	 }
 	 
+	 /*************************************************************************
+	  * Fill a BookDepth with the best levels on both sides of the book
+	  * 
+	  * @param into - BookDepth to fill, reused from call to call if wanted
+	  * @return - into
+	  *************************************************************************/
+	 public synchronized BookDepth getBookDepth(BookDepth into) {
+		 buy.getBookDepth(into.getBuy());
+		 sell.getBookDepth(into.getSell());
+		 return into;
+	 }
+	 
 	 /////////3.4////////////////
 	 /***********************************************************************
 	  * Create a MarketDataDTO containing the best buy side price and volume, 
@@ -179,7 +282,12 @@ public class ProductBook {
 	
 	////3.3////////////
 	/******************************
-	 * Open the book for trading
+	 * Open the book for trading with a single price call auction.  The 
+	 * opening price is found from both sides' price levels in one pass 
+	 * (see OpeningAuction), then every entry that crosses it trades at 
+	 * that price, best price and then time first, and one last sale is 
+	 * published for the whole auction.  MKT orders are refused before 
+	 * the open, so there are none to take part.
 	 * 
 	 * @throws InvalidMessageException 
 	 * @throws InvalidVolumeException 
@@ -187,44 +295,17 @@ public class ProductBook {
 	 ******************************/
 	public synchronized void openMarket() throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
 		
-		Price buyPrice = buy.topOfBookPrice();
-		Price sellPrice = sell.topOfBookPrice();
-
-		if (buyPrice.equals(PriceFactory.makeLimitPrice("$0.00")) || sellPrice.equals(PriceFactory.makeLimitPrice("$0.00"))) return;
-		
-		while (buyPrice.compareTo(sellPrice) != -1 
-				|| sellPrice.equals("MKT") || buyPrice.equals("MKT")) {
-			
-			ArrayList<Tradable> topOfBuySide = buy.getEntriesAtPrice(buyPrice);
-			
-			HashMap<String, FillMessage> allFills = new HashMap<String, FillMessage>();
-		
-			ArrayList<Tradable> toRemove = new ArrayList<Tradable>();//Tradables to be removed once opening trading completed
-			
-			for(Tradable t : topOfBuySide) {
-				allFills = sell.tryTrade(t);
-				if(t.getRemainingVolume() == 0)
-					toRemove.add(t);
-			}
-			
-			for(Tradable t : toRemove) {
-				buy.removeTradable(t);//removed traded items from book
-			}
-		
-			updateCurrentMarket();
-			
-			Price lastSalePrice = determineLastSalePrice(allFills);
-			int lastSaleVolume = determineLastSaleQuantity(allFills);
-			
-			LastSalePublisher publisher = LastSalePublisher.getInstance();
-			publisher.publishLastSale(getSymbol(), lastSalePrice, lastSaleVolume);
-			
-			buyPrice = buy.topOfBookPrice();
-			sellPrice = sell.topOfBookPrice();
-			
-			if (buyPrice == null || sellPrice == null) break;
-		}
-		
+		BookDepth depth = new BookDepth(symbol, Math.max(1, Math.max(buy.levelCount(), sell.levelCount())));
+		getBookDepth(depth);
+		OpeningAuction auction = OpeningAuction.uncross(depth.getBuy(), depth.getSell());
+		if (auction == null) return;
+
+		Price openingPrice = PriceFactory.makeLimitPrice(auction.price);
+		buy.auctionFill(openingPrice, auction.volume);
+		sell.auctionFill(openingPrice, auction.volume);
+
+		updateCurrentMarket();
+		LastSalePublisher.getInstance().publishLastSale(symbol, openingPrice, auction.volume);
 	}
 	
 	
@@ -255,14 +336,12 @@ public class ProductBook {
 	 * @throws InvalidPriceException
 	 * @throws OrderNotFoundException
 	 ***********************************************/
-	 public synchronized void cancelOrder(String side, String orderId) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException  {
-		 if(side == "BUY"){
+	 public synchronized void cancelOrder(Side side, String orderId) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException  {
+		 if(side == Side.BUY){
 			 buy.submitOrderCancel(orderId);
-			 buy.removeTradable(orderId);
 		 }
-		 if(side == "SELL"){
+		 if(side == Side.SELL){
 			 sell.submitOrderCancel(orderId);
-			 sell.removeTradable(orderId);
 		 }
 		 updateCurrentMarket();
 	 }
@@ -303,8 +382,8 @@ public class ProductBook {
 	  ****************************************/
 	 public synchronized void addToBook(Quote q) throws DataValidationException, InvalidVolumeException, InvalidMessageException, InvalidPriceException {
 		 
-		 QuoteSide sellSide = q.getQuoteSide("SELL");
-		 QuoteSide buySide = q.getQuoteSide("BUY");
+		 QuoteSide sellSide = q.getQuoteSide(Side.SELL);
+		 QuoteSide buySide = q.getQuoteSide(Side.BUY);
 		 
 		 if (sellSide.getPrice().compareTo(buySide.getPrice()) != 1)  throw new DataValidationException();
 		
@@ -321,8 +400,8 @@ public class ProductBook {
 			updateCurrentMarket();
 		 }
 		 
-		 addToBook("BUY", buySide);
-		 addToBook("SELL", sellSide);
+		 addToBook(Side.BUY, buySide);
+		 addToBook(Side.SELL, sellSide);
 		 
 		 userQuotesSet.add(q.getUserName());
 		 updateCurrentMarket();
@@ -352,53 +431,56 @@ public class ProductBook {
 	 ***************************************************/
 	public synchronized void updateCurrentMarket() {
 
-		String s = buy.topOfBookPrice().toString() + buy.topOfBookVolume() +
-				sell.topOfBookPrice().toString() + sell.topOfBookVolume();
+		Price buyPrice = buy.topOfBookPrice();
+		int buyVolume = buy.topOfBookVolume();
+		Price sellPrice = sell.topOfBookPrice();
+		int sellVolume = sell.topOfBookVolume();
 
-		if(!(lastCurrentMarket.equals(s)))  {
+		// a side with nothing in it has no top of book Price
+		if (buyVolume != lastBuyVolume || sellVolume != lastSellVolume
+				|| !Objects.equals(buyPrice, lastBuyPrice) || !Objects.equals(sellPrice, lastSellPrice))  {
 			MarketDataDTO dto = new MarketDataDTO(getSymbol(),
-					buy.topOfBookPrice(), buy.topOfBookVolume(),
-					sell.topOfBookPrice(), sell.topOfBookVolume());
+					buyPrice, buyVolume, sellPrice, sellVolume);
 			CurrentMarketPublisher publisher = CurrentMarketPublisher.getInstance();
 			publisher.publishCurrentMarket(dto);
-			lastCurrentMarket = s;
+			lastBuyPrice = buyPrice;
+			lastBuyVolume = buyVolume;
+			lastSellPrice = sellPrice;
+			lastSellVolume = sellVolume;
 		}		
 	}
 	
 	
 	//////////////3.10/////////////
 	/******************************************
-	 * Determines the last sale Price
+	 * Determines the last sale Price - the highest
+	 * fill Price for a BUY, the lowest otherwise
 	 * 
-	 * @param fills - HashMap of fill messages
+	 * @param fills - fill messages of one trade
 	 * @return - last sale Price
 	 ******************************************/
-	 private synchronized Price determineLastSalePrice(HashMap<String, FillMessage> fills, String side) {
-		 ArrayList<FillMessage> msgs = new ArrayList<FillMessage>(fills.values()); 
-		 Collections.sort(msgs);
-		 if (side.equals("BUY")) Collections.reverse(msgs);
-		 return msgs.get(0).getPrice(); 
+	 private synchronized Price determineLastSalePrice(FillAccumulator fills, Side side) {
+		 if (side != Side.BUY) return determineLastSalePrice(fills);
+		 FillMessage last = fills.get(0);
+		 for (int i = 1; i < fills.size(); i++) {
+			 if (fills.get(i).compareTo(last) >= 0) last = fills.get(i);
+		 }
+		 return last.getPrice(); 
 	 }
 	 
-	 private synchronized Price determineLastSalePrice(HashMap<String, FillMessage> fills) {
-		 ArrayList<FillMessage> msgs = new ArrayList<FillMessage>(fills.values()); 
-		 Collections.sort(msgs);
-		 return msgs.get(0).getPrice(); 
+	 private synchronized Price determineLastSalePrice(FillAccumulator fills) {
+		 return lowestFill(fills).getPrice(); 
 	 }
 	 
 	 
 	 
-	 ///////////3.11//////////////////////
-	 /******************************************
-		 * Determines the last sale quantity
-		 * 
-		 * @param fills - HashMap of fill messages
-		 * @return - last sale quantity/volume
-		 ******************************************/
-		 private synchronized int determineLastSaleQuantity(HashMap<String, FillMessage> fills) {
-			 ArrayList<FillMessage> msgs = new ArrayList<FillMessage>(fills.values()); 
-			 Collections.sort(msgs); 
-			 return msgs.get(0).getVolume(); 
+		 // first of the fills made at the lowest Price
+		 private static FillMessage lowestFill(FillAccumulator fills) {
+			 FillMessage lowest = fills.get(0);
+			 for (int i = 1; i < fills.size(); i++) {
+				 if (fills.get(i).compareTo(lowest) < 0) lowest = fills.get(i);
+			 }
+			 return lowest;
 		 }
 	 
 		 
@@ -414,37 +496,33 @@ public class ProductBook {
 		  **********************************************************************/
 	
 	//////////3.12//////////////
-	private synchronized void addToBook(String side, Tradable trd) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
-		if (ProductService.getInstance().getMarketState() == MarketState.PREOPEN) {
-			if (side.equals("BUY")) 
+	private synchronized void addToBook(Side side, Tradable trd) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+		number(trd);
+		if (marketState == MarketState.PREOPEN) {
+			if (side == Side.BUY) 
 				buy.addToBook(trd);
 			else sell.addToBook(trd);
 			return;
 		}
 
-		HashMap<String, FillMessage> allFills = null;
-		
-		if(side.equals("BUY")) 
-			allFills = sell.tryTrade(trd);
-		if(side.equals("SELL")) 
-			allFills = buy.tryTrade(trd);		
+		FillAccumulator allFills = side == Side.BUY ? sell.tryTrade(trd) : buy.tryTrade(trd);
 
 		if (allFills != null && !allFills.isEmpty()) {
-			updateCurrentMarket();
+			// read the fills before anything else is published - a subscriber trading from its callback may reuse them
 			int tradedVolume = trd.getOriginalVolume() - trd.getRemainingVolume();
 			Price lastSalePrice = determineLastSalePrice(allFills, side);
+			updateCurrentMarket();
 			LastSalePublisher.getInstance().publishLastSale(symbol, lastSalePrice, tradedVolume);
 		}
 		
 		if(trd.getRemainingVolume() > 0) {
 			if(trd.getPrice().isMarket()){
-				CancelMessage msg = new CancelMessage(trd.getUser(),
+				MessagePublisher.getInstance().publishCancel(trd.getUser(),
 						trd.getProduct(), trd.getPrice(),
 						trd.getRemainingVolume(), "Cancelled",
 						trd.getSide(), trd.getId());
-				MessagePublisher.getInstance().publishCancel(msg);
 			} else {
-				if (side.equals("BUY")) 
+				if (side == Side.BUY) 
 					buy.addToBook(trd);
 			    else sell.addToBook(trd);
 			}
@@ -454,6 +532,32 @@ public class ProductBook {
 	public String getSymbol() {
 		return symbol;
 	}
+	
+	/*******************************************
+	 * Snapshot access - see BookSnapshot
+	 *******************************************/
+	
+	HashSet<String> getUserQuotes() {
+		return userQuotesSet;
+	}
+	
+	ArrayList<Tradable> getOldEntries() {
+		ArrayList<Tradable> entries = new ArrayList<Tradable>();
+		for (ArrayList<Tradable> list : oldEntriesMap.values())
+			entries.addAll(list);
+		return entries;
+	}
+	
+	//Re-instate an old entry exactly as it was captured, without cancelling its volume again
+	void restoreOldEntry(Tradable t) {
+		number(t);
+		ArrayList<Tradable> list = oldEntriesMap.get(t.getPrice());
+		if (list == null) {
+			list = new ArrayList<Tradable>();
+			oldEntriesMap.put(t.getPrice(), list);
+		}
+		list.add(t);
+	}
 
 	private void setSymbol(String symbol) throws NullObjectException {
 		if (symbol == null)
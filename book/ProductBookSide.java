@@ -1,12 +1,11 @@
 package book;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 
-import messages.CancelMessage;
-import messages.FillMessage;
 import exceptions.InvalidMessageException;
 import exceptions.InvalidPriceException;
 import exceptions.InvalidVolumeException;
@@ -14,8 +13,11 @@ import exceptions.OrderNotFoundException;
 import price.Price;
 import price.PriceFactory;
 import publishers.MessagePublisher;
+import tradable.OrderId;
+import tradable.Side;
 import tradable.Tradable;
 import tradable.TradableDTO;
+import tradeProcessor.FillAccumulator;
 import tradeProcessor.TradeProcessor;
 import tradeProcessor.TradeProcessorFactory;
 
@@ -29,62 +31,67 @@ import tradeProcessor.TradeProcessorFactory;
  ***************************************************************************/
 public class ProductBookSide implements Runnable {
 
-	// collection of book entries for one side of the ProductBook
-	private HashMap<Price, ArrayList<Tradable>> bookEntriesMap = new HashMap<Price, ArrayList<Tradable>>();
-	private String side;
+	// Orders prices by value, lowest first.  A MKT price has no value (0) so it is
+	// ranked ahead of any limit price of the same value to keep the two keys apart
+	private static final Comparator<Price> ASCENDING = new Comparator<Price>() {
+		public int compare(Price a, Price b) {
+			int result = a.compareTo(b);
+			if (result != 0 || a.getIsMarket() == b.getIsMarket()) return result;
+			return a.getIsMarket() ? -1 : 1;
+		}
+	};
+
+	// collection of book entries for one side of the ProductBook, kept in best-price-first
+	// order (descending for BUY, ascending for SELL)
+	private TreeMap<Price, PriceLevel> bookEntriesMap;
+	// cached first entry of bookEntriesMap so the top of book is found without a tree walk
+	private PriceLevel topLevel;
+	// booked entries by Tradable id, and booked QuoteSides by user, for constant time removal
+	private OrderIndex orderIndex = new OrderIndex();
+	private HashMap<String, PriceLevel.Node> quoteIndex = new HashMap<String, PriceLevel.Node>();
+	// sequence number given to the next entry booked on this side
+	private long nextSeq;
+	private Side side;
 	private ProductBook productBook;
-	//removed TradeProcessor variable - local variable used instead
+	// looked up once rather than once per price level traded against
+	private TradeProcessor tradeProcessor;
+	// fills of the Tradable currently trading against this side, reused for every trade
+	private final FillAccumulator fills = new FillAccumulator();
 
 	//CONSTRUCTOR --------//
-	public ProductBookSide(ProductBook price, String side)  {
+	public ProductBookSide(ProductBook price, Side side)  {
 		if(price == null) throw new NullPointerException();
 		productBook = price;
 		setSide(side);
+		if (side == Side.BUY)
+			bookEntriesMap = new TreeMap<Price, PriceLevel>(ASCENDING.reversed());
+		else bookEntriesMap = new TreeMap<Price, PriceLevel>(ASCENDING);
 	}
 	
-	//////////////2.1//////////////////
-	/********************************************************
-	 * @param userName - user with remaining volume         
-	 * @return - ArrayList of TradableDTOs  for all orders
-	 * which have remaining quantity for a specified user
-	 ********************************************************/
-	public synchronized ArrayList<TradableDTO> getOrdersWithRemainingQty(String userName) {
-		ArrayList<TradableDTO> remainingQtyList = new ArrayList<TradableDTO>();
-
-
-		for (Entry<Price, ArrayList<Tradable>> entry : bookEntriesMap.entrySet()) {
-			ArrayList<Tradable> list = entry.getValue();
-			for (Tradable tradable : list) {
-				if (tradable.getUser() == userName) {
-					if (tradable.getRemainingVolume() > 0) {
-						TradableDTO dto = new TradableDTO(tradable);
-						remainingQtyList.add(dto);
-					}
-				}
-			}
-		}
-		return remainingQtyList;
-	}
-
-
 	//////////////2.2//////////////////
 	/***************************************************************************************
 	 * @return -  ArrayList of the Tradables that are at the best price in the â€œbookEntriesâ€� 
 	 ***************************************************************************************/
 	public synchronized ArrayList<Tradable> getEntriesAtTopOfBook() {
-		if (bookEntriesMap.isEmpty())return null;
+		if (topLevel == null) return null;
+		return topLevel.toList();
+	}
 
-		ArrayList<Price> prices = new ArrayList<Price>(bookEntriesMap.keySet()); 									
-		Collections.sort(prices); 
-		if (side == "BUY") {
-			Collections.reverse(prices); // Reverse them
-		}
-		return bookEntriesMap.get(prices.get(0));
+	/***************************************************************************************
+	 * Copy the Tradables at the best price into a reusable LevelEntries, emptying it when 
+	 * the book side is empty
+	 * 
+	 * @param into - LevelEntries to fill
+	 ***************************************************************************************/
+	public synchronized void getEntriesAtTopOfBook(LevelEntries into) {
+		if (topLevel == null) into.clear();
+		else topLevel.copyTo(into);
 	}
 
 	//////////////2.3//////////////////
 	/*********************************************************************************
-	 * @return - an array of Strings, where each index holds a Price x Volume String
+	 * @return - an array of Strings, where each index holds a Price x Volume String,
+	 * best price first
 	 *********************************************************************************/
 	public synchronized String[] getBookDepth() {
 		if (bookEntriesMap.isEmpty())
@@ -92,26 +99,28 @@ public class ProductBookSide implements Runnable {
 		else {
 			String[] bookDepth = new String[bookEntriesMap.size()];
 
-			ArrayList<Price> priceList = new ArrayList<Price>(bookEntriesMap.keySet()); // Get prices
-
-			Collections.sort(priceList);
-			String s = "";
 			int counter = 0;
-			for (Price p : priceList) {
-				ArrayList<Tradable> tradableList = bookEntriesMap.get(p);
-				int volume = 0;
-
-				for (Tradable t : tradableList) {
-					volume += t.getRemainingVolume();
-					s = t.getPrice() + " x " + volume;
-				}
-				bookDepth[counter] = s;
+			for (PriceLevel level : bookEntriesMap.values()) {
+				bookDepth[counter] = level.getPrice() + " x " + level.getVolume();
 				counter++;
 			}
 			return bookDepth;
 		}
 	}
 
+	/*********************************************************************************
+	 * Fill a BookDepth side with the best levels of this side, as many as it holds
+	 * 
+	 * @param into - levels to fill
+	 *********************************************************************************/
+	public synchronized void getBookDepth(BookDepth.Levels into) {
+		into.clear(bookEntriesMap.size());
+		for (PriceLevel level : bookEntriesMap.values()) {
+			if (into.size() == into.capacity()) break;
+			into.add(level);
+		}
+	}
+
 
 
 	//////////////2.4//////////////////
@@ -120,8 +129,20 @@ public class ProductBookSide implements Runnable {
 	 * @return -  all the Tradables in this book side at the specified price
 	 ***********************************************************************/
 	synchronized ArrayList<Tradable> getEntriesAtPrice(Price price) {
-		if(!bookEntriesMap.containsKey(price)) return null;
-		return bookEntriesMap.get(price);
+		PriceLevel level = bookEntriesMap.get(price);
+		if(level == null) return null;
+		return level.toList();
+	}
+	
+	/***********************************************************************
+	 * @return -  every Tradable in this book side, best price first and in 
+	 * time priority within each price
+	 ***********************************************************************/
+	synchronized ArrayList<Tradable> getRestingTradables() {
+		ArrayList<Tradable> resting = new ArrayList<Tradable>();
+		for (PriceLevel level : bookEntriesMap.values())
+			resting.addAll(level.toList());
+		return resting;
 	}
 
 
@@ -133,9 +154,7 @@ public class ProductBookSide implements Runnable {
 	public synchronized boolean hasMarketPrice() throws InvalidPriceException {
 
 		boolean hasMarketPrice = false;
-		@SuppressWarnings("unchecked")
-		ArrayList<Price> priceList = (ArrayList<Price>) bookEntriesMap.keySet();
-		for(Price p : priceList) {
+		for(Price p : bookEntriesMap.keySet()) {
 			if(p.isMarket()) hasMarketPrice = true;
 		}
 		return hasMarketPrice;
@@ -147,7 +166,7 @@ public class ProductBookSide implements Runnable {
 	 * @return - is the ONLY Price in this productâ€™s book a Market Price?
 	 **********************************************************************/
 	public synchronized boolean hasOnlyMarketPrice() {
-		return bookEntriesMap.size() == 1 && bookEntriesMap.containsKey("MKT");
+		return bookEntriesMap.size() == 1 && topLevel.getPrice().getIsMarket();
 	}
 
 
@@ -160,12 +179,7 @@ public class ProductBookSide implements Runnable {
 		if(bookEntriesMap.isEmpty())
 			return PriceFactory.makeLimitPrice("0");
 
-		ArrayList<Price> sorted = new ArrayList<Price>(bookEntriesMap.keySet());
-		Collections.sort(sorted);
-		if (side == "BUY") {
-			Collections.reverse(sorted); // Reverse them
-		}
-		return sorted.get(0);
+		return topLevel.getPrice();
 	}
 
 	//////////////2.8//////////////////
@@ -175,12 +189,7 @@ public class ProductBookSide implements Runnable {
 	public synchronized int topOfBookVolume() {
 		if(bookEntriesMap.isEmpty()) return 0;
 
-		int volume = 0;
-		ArrayList<Tradable> bestTradable = getEntriesAtTopOfBook();
-		for(Tradable t : bestTradable) {
-			volume += t.getRemainingVolume();
-		}
-		return volume;
+		return topLevel.getVolume();
 
 	}
 
@@ -210,18 +219,15 @@ public class ProductBookSide implements Runnable {
 	 */
 	public synchronized void cancelAll() throws InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException {
 
-		ArrayList<Price> priceList= new ArrayList<Price>(bookEntriesMap.keySet());
+		ArrayList<PriceLevel> levels = new ArrayList<PriceLevel>(bookEntriesMap.values());
 		
-		for (Price p : priceList) {
-			ArrayList<Tradable> tradables = bookEntriesMap.get(p);
-			for (Tradable tradable : tradables) {
+		for (PriceLevel level : levels) {
+			for (Tradable tradable : level.toList()) {
 			//	if (tradable.isQuote()) 
 				//	submitQuoteCancel(tradable.getUser());
-				submitOrderCancel(tradable.getId());
+				submitOrderCancel(tradable.getOrderId());
 			}
 		}
-		for (Price p : priceList)
-		bookEntriesMap.remove(p);
 	}
 
 
@@ -235,32 +241,12 @@ public class ProductBookSide implements Runnable {
 	 *********************************************************/
 	public synchronized TradableDTO removeQuote(String user)  {
 		
-		ArrayList<Price> priceList= new ArrayList<>(bookEntriesMap.keySet());
-		ArrayList<Tradable> tradables = null;
-		ArrayList<Tradable> tempList = new ArrayList<>();
-		TradableDTO dto = null;
+		PriceLevel.Node node = quoteIndex.get(user);
+		if (node == null) return null;
 		
-		//Get tradable ArrayList for each price, search for correct username
-		//If user found, check to see that the Tradable is a Quote
-		for (Price p : priceList) {
-			tradables = bookEntriesMap.get(p);
-			for (Tradable tradable : tradables) {
-				if (tradable.getUser().equals(user)) {
-					if (tradable.isQuote()) {
-						tempList.add(tradable);
-						dto = new TradableDTO(tradable);
-					}
-				}
-			}
-		}
-		if (!tempList.isEmpty()){
-		Tradable t = tempList.get(0);  
-		tradables.remove(t);
-		if (tradables.isEmpty())
-			bookEntriesMap.remove(t.getPrice());
+		TradableDTO dto = new TradableDTO(node.tradable);
+		unlink(node);
 		return dto;
-		}
-		return null;
 	}
 
 
@@ -275,25 +261,28 @@ public class ProductBookSide implements Runnable {
 	 * @throws OrderNotFoundException 
 	 **********************************************************************/
 	public synchronized void submitOrderCancel(String orderId) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException {
+		submitOrderCancel(indexKey(orderId));
+	}
 
-		ArrayList<Price> priceList= new ArrayList<Price>(bookEntriesMap.keySet());
-		ArrayList<Tradable> tradables = null;
-
-		// Get tradable ArrayList for each price, search for correct ID
-		// If user ID found, remove that Tradable and publish a CancelMessage 
-		for (Price price : priceList) {
-			tradables = bookEntriesMap.get(price);
-			for (Tradable tradable : tradables) {
-				if(orderId.contains(tradable.getId())){
-					CancelMessage cm = new CancelMessage(tradable.getUser(),
-							tradable.getProduct(), tradable.getPrice(),
-							tradable.getRemainingVolume(), tradable.toString(),
-							tradable.getSide(), tradable.getId());
-					MessagePublisher.getInstance().publishCancel(cm);
-					addOldEntry(tradable);
-					return;
-				}
-			}	
+	/**********************************************************************
+	 * Cancel the Order (if possible) that has the specified numeric id
+	 * 
+	 * @param orderId - id of canceled order, see OrderId
+	 * @throws InvalidPriceException 
+	 * @throws InvalidVolumeException 
+	 * @throws InvalidMessageException 
+	 * @throws OrderNotFoundException 
+	 **********************************************************************/
+	public synchronized void submitOrderCancel(long orderId) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException {
+
+		// Find the booked entry for the ID, remove that Tradable and publish a CancelMessage 
+		PriceLevel.Node node = orderIndex.get(orderId);
+		if (node != null) {
+			Tradable tradable = node.tradable;
+			MessagePublisher.getInstance().publishCancel(tradable);
+			addOldEntry(tradable);
+			unlink(node);
+			return;
 		}
 		//productBook.checkTooLateToCancel(orderId); //TODO verify this works
 	}
@@ -313,11 +302,10 @@ public class ProductBookSide implements Runnable {
 	public synchronized void submitQuoteCancel(String userName) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException {
 		TradableDTO dto = removeQuote(userName);
 		if (dto != null) {
-			CancelMessage cm = new CancelMessage(dto.getUser(),
+			MessagePublisher.getInstance().publishCancel(dto.getUser(),
 					dto.getSymbol(), dto.getOrdPrice(),
-					dto.getRemVolume(), "Quote " + getSide() + "-Side Cancelled",
+					dto.getRemVolume(), getSide() == Side.BUY ? "Quote BUY-Side Cancelled" : "Quote SELL-Side Cancelled",
 					getSide(), dto.getId());
-			MessagePublisher.getInstance().publishCancel(cm);
 		}
 		else{return;}
 	}
@@ -333,126 +321,178 @@ public class ProductBookSide implements Runnable {
 	}
 	//////////////2.6//////////////////
 	/******************************************
-	 * Add the Tradable passed in to the book 
+	 * Add the Tradable passed in to the book, 
+	 * numbered by the ProductBook if it has no id
 	 * 
 	 * @param trd = Tradable to add to the book
 	 ******************************************/
 	public synchronized void addToBook(Tradable trd) {
+		productBook.number(trd);
 
-		ArrayList<Tradable> tList = new ArrayList<Tradable>();
+		PriceLevel level = bookEntriesMap.get(trd.getPrice());
 
-		if (!bookEntriesMap.containsKey(trd.getPrice())) {
-			bookEntriesMap.put(trd.getPrice(), tList);
+		if (level == null) {
+			level = new PriceLevel(trd.getPrice());
+			bookEntriesMap.put(trd.getPrice(), level);
+			if (topLevel == null || bookEntriesMap.comparator().compare(trd.getPrice(), topLevel.getPrice()) < 0) {
+				topLevel = level;
+			}
 		}
-		ArrayList<Tradable> tradableList = bookEntriesMap.get(trd.getPrice());
-		tradableList.add(trd);
+		PriceLevel.Node node = level.append(trd, nextSeq++);
+		orderIndex.put(node);
+		if (trd.isQuote()) quoteIndex.put(trd.getUser(), node);
+		else productBook.indexUserOrder(node);
 	}
 	//////////////2.7//////////////////
 	/*******************************************************************************
-	 * Attempt a trade the provided Tradable against entries in this ProductBookSide
+	 * Attempt a trade the provided Tradable against entries in this ProductBookSide.
+	 * The fills are published once the Tradable has finished trading
 	 * 
 	 * @param trd
-	 * @return
+	 * @return - the fills made, in the order they were made.  The FillAccumulator is
+	 * reused, so its content is only good until the next trade against this side
 	 * @throws InvalidMessageException 
 	 * @throws InvalidVolumeException 
 	 * @throws InvalidPriceException 
 	 *******************************************************************************/
 
 
-	public HashMap<String, FillMessage> tryTrade(Tradable trd) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+	public FillAccumulator tryTrade(Tradable trd) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+
+		FillAccumulator fills = startFills();
 
-		HashMap<String, FillMessage> allFills;
+		if (getSide() == Side.BUY){ 
+			trySellAgainstBuySideTrade(trd, fills);
+		}
+		else tryBuyAgainstSellSideTrade(trd, fills);
+
+		publishFills(fills);
+		return fills;
+	}
 
-		if (getSide().equals("BUY")){ 
-			allFills = trySellAgainstBuySideTrade(trd);
+	/******************************************************************************
+	 * Trade the best entries of this side, price then time first, at one 
+	 * auction Price, until the volume passed in is used up.  Each entry 
+	 * filled gets a single FillMessage, which is published.  A MKT level,
+	 * which ProductService does not let into the book before the open, 
+	 * is passed over.
+	 * 
+	 * @param price - Price every fill is made at
+	 * @param volume - volume to trade, no more than the entries at or 
+	 * better than the Price hold
+	 * @return - the fills made
+	 * @throws InvalidVolumeException
+	 * @throws InvalidMessageException
+	 * @throws InvalidPriceException
+	 ******************************************************************************/
+	synchronized FillAccumulator auctionFill(Price price, int volume) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+
+		FillAccumulator fills = startFills();
+
+		int left = volume;
+		Entry<Price, PriceLevel> e = bookEntriesMap.firstEntry();
+		while (e != null && left > 0) {
+			Price levelPrice = e.getKey();
+			// the level may go once its last entry fills, so find the next one first
+			Entry<Price, PriceLevel> next = bookEntriesMap.higherEntry(levelPrice);
+			if (!levelPrice.getIsMarket()) {
+				if (bookEntriesMap.comparator().compare(levelPrice, price) > 0) break;
+				PriceLevel.Node n = e.getValue().getHead();
+				while (n != null && left > 0) {
+					PriceLevel.Node nextNode = n.next;
+					Tradable t = n.tradable;
+					int remaining = t.getRemainingVolume();
+					int traded = Math.min(left, remaining);
+					fills.addRestingFill(n.seq, t, price, traded, remaining - traded);
+					t.setRemainingVolume(remaining - traded);
+					left -= traded;
+					if (remaining == traded) {
+						addOldEntry(t);
+						unlink(n);
+					} else n.level.updateVolume(n);
+					n = nextNode;
+				}
+			}
+			e = next;
 		}
-		else allFills = tryBuyAgainstSellSideTrade(trd);
 
-		for (Entry<String, FillMessage> entry : allFills.entrySet()) {
-			FillMessage fm = entry.getValue();
-			MessagePublisher.getInstance().publishFill(fm);
+		publishFills(fills);
+		return fills;
+	}
+
+	/******************************************************************************
+	 * @return - this side's FillAccumulator, cleared for the next trade, or a new
+	 * one when a subscriber trades from inside the callback of a fill this side is
+	 * still publishing - like MessagePublisher's reused CancelMessage, the fills
+	 * being published must not be overwritten
+	 ******************************************************************************/
+	private FillAccumulator startFills() {
+		FillAccumulator f = fills.isPublishing() ? new FillAccumulator() : fills;
+		f.clear(MessagePublisher.getInstance().getReuseMessages());
+		return f;
+	}
+
+	private static void publishFills(FillAccumulator fills) {
+		fills.setPublishing(true);
+		try {
+			for (int i = 0; i < fills.size(); i++) {
+				MessagePublisher.getInstance().publishFill(fills.get(i));
+			}
+		} finally {
+			fills.setPublishing(false);
 		}
-		return allFills;
+	}
+
+	/**
+	 * @return - number of price levels on this side
+	 */
+	synchronized int levelCount() {
+		return bookEntriesMap.size();
+	}
+
+	private TradeProcessor getTradeProcessor() {
+		if (tradeProcessor == null) tradeProcessor = TradeProcessorFactory.newProcessor(this);
+		return tradeProcessor;
 	}
 
 	/******************************************************************************
 	 * Try to fill the SELL side Tradable passed in against the content of the book
 	 * 
 	 * @param t
-	 * @return
+	 * @param fills - collects the fills made
 	 * @throws InvalidMessageException 
 	 * @throws InvalidVolumeException 
 	 * @throws InvalidPriceException 
 	 ******************************************************************************/
-	public HashMap<String, FillMessage> trySellAgainstBuySideTrade(Tradable t) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+	public void trySellAgainstBuySideTrade(Tradable t, FillAccumulator fills) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
 
-		HashMap<String, FillMessage> allFills = new HashMap<String, FillMessage>();
-		HashMap<String, FillMessage> fillMsgs = new HashMap<String, FillMessage>();
-
-		TradeProcessor tProcessor;
+		TradeProcessor tProcessor = getTradeProcessor();
 		
 		while (t.getRemainingVolume() > 0 && !isEmpty() && t.getPrice().compareTo(topOfBookPrice()) != 1 || t.getRemainingVolume() > 0 && !isEmpty()
 				&& t.getPrice().isMarket()) {
 
-			tProcessor = TradeProcessorFactory.newProcessor(productBook.getBuy());
-
-			HashMap<String, FillMessage> tempMessages = tProcessor.doTrade(t);
-			fillMsgs = mergeFills(fillMsgs, tempMessages);
+			tProcessor.doTrade(t, fills);
 		}
-		allFills.putAll(fillMsgs);
-		return allFills;
-	}
-
-	/****************************************************************
-	 * Merge multiple fill messages together into one consistent list
-	 * 
-	 * @param existing
-	 * @param newOnes
-	 * @return
-	 * @throws InvalidVolumeException 
-	 * @throws InvalidMessageException 
-	 ****************************************************************/
-	private HashMap<String, FillMessage> mergeFills(HashMap<String, FillMessage> existing, HashMap<String, FillMessage> newOnes) throws InvalidVolumeException, InvalidMessageException {
-		if(existing.isEmpty()) 
-			return new HashMap<String, FillMessage>(newOnes);
-		HashMap<String, FillMessage> results = new HashMap<String, FillMessage>(existing); 
-
-		for (String key : newOnes.keySet())  {    
-			if (!existing.containsKey(key)) 
-				results.put(key, newOnes.get(key));   
-			else {     
-				FillMessage fm = results.get(key);   
-				fm.setVolume(newOnes.get(key).getVolume());  // Update the fill volume 
-				fm.setDetails(newOnes.get(key).getDetails()); // Update the fill details 
-			}
-		}	
-		return results;
 	}
 
 	/**
+	 * Try to fill the BUY side Tradable passed in against the content of the book
+	 * 
 	 * @param trd
-	 * @return
+	 * @param fills - collects the fills made
 	 * @throws InvalidVolumeException
 	 * @throws InvalidMessageException
 	 * @throws InvalidPriceException 
 	 */
-	public HashMap<String, FillMessage> tryBuyAgainstSellSideTrade(Tradable trd) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
-		HashMap<String, FillMessage> allFills = new HashMap<String, FillMessage>();
-		HashMap<String, FillMessage> fillMsgs = new HashMap<String, FillMessage>();
+	public void tryBuyAgainstSellSideTrade(Tradable trd, FillAccumulator fills) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
 
-		TradeProcessor tProcessor;
+		TradeProcessor tProcessor = getTradeProcessor();
 
 		while (trd.getRemainingVolume() > 0 && !isEmpty() && trd.getPrice().greaterOrEqual(topOfBookPrice()) || trd.getRemainingVolume() > 0 && !isEmpty()
 				&& trd.getPrice().isMarket()) {
 
-
-			tProcessor = TradeProcessorFactory.newProcessor(productBook.getSell());
-
-			HashMap<String, FillMessage> tempMessages = tProcessor.doTrade(trd);
-			fillMsgs = mergeFills(fillMsgs, tempMessages);
+			tProcessor.doTrade(trd, fills);
 		}
-		allFills.putAll(fillMsgs);
-		return allFills;
 	}
 
 	/********************************************************************
@@ -462,12 +502,58 @@ public class ProductBookSide implements Runnable {
 	 * @param p - Price to remove if no ArrayList of Tradables associated
 	 ********************************************************************/
 	public synchronized void clearIfEmpty(Price p)  {
-		ArrayList<Tradable> priceList = bookEntriesMap.get(p); 
-		if(priceList.isEmpty()) {
-			bookEntriesMap.remove(p);
+		PriceLevel level = bookEntriesMap.get(p); 
+		if(level != null && level.isEmpty()) {
+			removeLevel(p);
 		}
 	}
 
+	/********************************************************************
+	 * Remove a price level from the book, moving the cached top of book
+	 * to the next best level when the best level is the one removed
+	 * 
+	 * @param p - Price of the level to remove
+	 ********************************************************************/
+	private void removeLevel(Price p) {
+		PriceLevel level = bookEntriesMap.remove(p);
+		if (level == null) return;
+		if (level == topLevel) {
+			Entry<Price, PriceLevel> first = bookEntriesMap.firstEntry();
+			topLevel = first == null ? null : first.getValue();
+		}
+	}
+
+	/********************************************************************
+	 * Unlink a booked entry from its level and from the id indexes,
+	 * dropping the level when it has no entries left
+	 * 
+	 * @param node - booked entry to remove
+	 ********************************************************************/
+	private void unlink(PriceLevel.Node node) {
+		PriceLevel level = node.level;
+		if (level == null) return;
+		Tradable t = node.tradable;
+		orderIndex.remove(t.getOrderId());
+		if (t.isQuote()) {
+			if (quoteIndex.get(t.getUser()) == node) quoteIndex.remove(t.getUser());
+		} else productBook.unindexUserOrder(node);
+		level.remove(node);
+		if (level.isEmpty()) removeLevel(level.getPrice());
+	}
+
+	/********************************************************************
+	 * Order ids handed back to users are the Tradable id; older ones were
+	 * the Order's toString(), which ends with it - strip anything ahead of it
+	 * 
+	 * @param orderId - order id or order description
+	 * @return - the numeric Tradable id used to index the book, 0 if 
+	 * there is none
+	 ********************************************************************/
+	private static long indexKey(String orderId) {
+		int i = orderId.lastIndexOf("ID: ");
+		return OrderId.parse(i < 0 ? orderId : orderId.substring(i + 4));
+	}
+
 	/************************************************************************************
 	 * Remove the Tradable passed in from the book (when it has been traded or cancelled)
 	 *
@@ -476,42 +562,40 @@ public class ProductBookSide implements Runnable {
 
 	public synchronized void removeTradable(Tradable t) {
 
-		ArrayList<Tradable> entries = bookEntriesMap.get(t.getPrice());
-		if (entries == null)
-			return;
-
-		boolean result = entries.remove(t);
-		if (result == false)
+		PriceLevel.Node node = orderIndex.get(t.getOrderId());
+		if (node == null || node.tradable != t)
 			return;
 
-		if (entries.isEmpty())
-			clearIfEmpty(t.getPrice());
+		unlink(node);
 	}
 	
+	/************************************************************************************
+	 * Count a booked Tradable's remaining volume into its level again, once a trade 
+	 * has left it with less
+	 *
+	 * @param t - booked Tradable that was partly filled
+	 ************************************************************************************/
+	public synchronized void updateVolume(Tradable t) {
+		PriceLevel.Node node = orderIndex.get(t.getOrderId());
+		if (node != null && node.tradable == t) node.level.updateVolume(node);
+	}
+
 	public synchronized void removeTradable(String orderId) {
-		ArrayList<Tradable> tempList = new ArrayList<>();
-		int indexA = orderId.indexOf("$");
-		int indexB = orderId.indexOf(".") + 3;
-		String price = orderId.substring(indexA, indexB);
-		Price tradePrice = PriceFactory.makeLimitPrice(price);
-		
-		ArrayList<Tradable> entries = bookEntriesMap.get(tradePrice);
-		if (entries == null) return;
-		for (Tradable tradables : entries){
-			if(orderId.contains(tradables.getId())){
-				tempList.add(tradables);
-			}
-		}
-		if (!tempList.isEmpty()) entries.remove(tempList.get(0));
-		if (entries.isEmpty()) bookEntriesMap.remove(tradePrice);
+		PriceLevel.Node node = orderIndex.get(indexKey(orderId));
+		if (node == null) return;
+		unlink(node);
 		}
 
-	public String getSide() {
+	public String getMatchingAlgorithm() {
+		return productBook.getMatchingAlgorithm();
+	}
+
+	public Side getSide() {
 		return side;
 	}
 
 	///add Exception handling here
-	public void setSide(String sideIn)  {
+	public void setSide(Side sideIn)  {
 		side = sideIn;
 	
 	}
@@ -0,0 +1,125 @@
+package book;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *A ProductEngine owns one ProductBook and applies every command for that 
+ *book, in arrival order, on its own event-loop thread.  Any number of 
+ *threads may submit commands through the lock-free command queue; each 
+ *submit returns a future completed by the event-loop thread.  Books for
+ *different products never wait on each other.
+ ***************************************************************************/
+class ProductEngine implements Runnable {
+
+	// polls of an empty queue before the event-loop thread parks
+	private static final int SPIN_LIMIT = 200;
+
+	/********************************************************
+	 * A unit of work to run against the engine's book
+	 ********************************************************/
+	interface Command<T> {
+		T execute(ProductBook book) throws Exception;
+	}
+
+	private static final class Task<T> {
+		private final Command<T> command;
+		private final CompletableFuture<T> result = new CompletableFuture<T>();
+
+		Task(Command<T> c) {
+			command = c;
+		}
+
+		void run(ProductBook book) {
+			try {
+				result.complete(command.execute(book));
+			} catch (Throwable t) {
+				result.completeExceptionally(t);
+			}
+		}
+	}
+
+	private final ProductBook book;
+	private final ConcurrentLinkedQueue<Task<?>> commands = new ConcurrentLinkedQueue<Task<?>>();
+	private final Thread thread;
+	private volatile boolean running = true;
+	private volatile boolean parked;
+
+	//CONSTRUCTOR --------//
+	ProductEngine(ProductBook b) {
+		book = b;
+		thread = new Thread(this, "ProductEngine-" + b.getSymbol());
+		thread.setDaemon(true);
+	}
+
+	ProductBook getBook() {
+		return book;
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	/**********************************************************
+	 * Queue a command for the event-loop thread.  A command 
+	 * submitted from the event-loop thread itself runs inline.
+	 * 
+	 * @param c - command to run against the book
+	 * @return - future completed with the command's result
+	 **********************************************************/
+	<T> CompletableFuture<T> submit(Command<T> c) {
+		Task<T> task = new Task<T>(c);
+		if (Thread.currentThread() == thread) {
+			task.run(book);
+			return task.result;
+		}
+		if (!running) {
+			task.result.completeExceptionally(new IllegalStateException(thread.getName() + " is stopped"));
+			return task.result;
+		}
+		commands.offer(task);
+		if (parked) LockSupport.unpark(thread);
+		return task.result;
+	}
+
+	/**********************************************************
+	 * Stop the event-loop thread once the queued commands 
+	 * have been applied
+	 **********************************************************/
+	void shutdown() throws InterruptedException {
+		running = false;
+		LockSupport.unpark(thread);
+		thread.join();
+		// commands that raced with the stop are applied here, the loop thread is gone
+		Task<?> task;
+		while ((task = commands.poll()) != null) task.run(book);
+	}
+
+	@Override
+	public void run() {
+		int idle = 0;
+		while (true) {
+			Task<?> task = commands.poll();
+			if (task != null) {
+				task.run(book);
+				idle = 0;
+				continue;
+			}
+			if (!running) return;
+			if (++idle < SPIN_LIMIT) {
+				Thread.yield();
+				continue;
+			}
+			// Publish the parked flag before the final check so a concurrent submit either 
+			// sees it and unparks this thread, or its command is found here
+			parked = true;
+			if (commands.isEmpty() && running) LockSupport.park(this);
+			parked = false;
+			idle = 0;
+		}
+	}
+}
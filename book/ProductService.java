@@ -1,9 +1,19 @@
 package book;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import codec.Flyweight;
 import exceptions.DataValidationException;
 import exceptions.InvalidMarketStateException;
 import exceptions.InvalidMessageException;
@@ -12,11 +22,19 @@ import exceptions.InvalidVolumeException;
 import exceptions.NoSuchProductException;
 import exceptions.NullObjectException;
 import exceptions.OrderNotFoundException;
+import journal.Journal;
+import journal.JournalHandler;
+import journal.SnapshotStore;
+import price.Price;
 import publishers.MarketDataDTO;
 import publishers.MessagePublisher;
 import tradable.Order;
+import tradable.OrderId;
 import tradable.Quote;
+import tradable.Side;
+import tradable.Tradable;
 import tradable.TradableDTO;
+import tradeProcessor.TradeProcessorFactory;
 import messages.MarketMessage;
 import messages.MarketMessage.MarketState;
 
@@ -27,19 +45,38 @@ import messages.MarketMessage.MarketState;
  ***************************************************************************************/
 
 public class ProductService {
+	
+	/**************************************************************************
+	 * SYNCHRONIZED - every book command runs on the caller's thread while 
+	 * holding the ProductService lock.
+	 * EVENT_LOOP - each ProductBook is owned by a ProductEngine thread; commands 
+	 * are routed to it by symbol, so products trade independently of each other.
+	 **************************************************************************/
+	public enum ExecutionMode {
+		SYNCHRONIZED, EVENT_LOOP
+	}
+	
 	//Holds all product books, organized by stock symbol
-	 private HashMap<String, ProductBook> allBooksMap = new HashMap<String, ProductBook>();
+	 private ConcurrentHashMap<String, ProductBook> allBooksMap = new ConcurrentHashMap<String, ProductBook>();
+	//Holds the event-loop engine for each product book when running in EVENT_LOOP mode
+	 private ConcurrentHashMap<String, ProductEngine> enginesMap = new ConcurrentHashMap<String, ProductEngine>();
+	 private volatile ExecutionMode mode = ExecutionMode.SYNCHRONIZED;
+	//Write-ahead log of every accepted command, null when journaling is off
+	 private volatile Journal journal;
+	//Snapshots of the books that bound journal replay, null when snapshots are off
+	 private SnapshotStore snapshots;
+	 private ScheduledExecutorService snapshotTimer;
+	//Index of the next product created in the OrderIds its book gives out, guarded by the ProductService lock
+	 private int nextProductIndex;
 	//Initiaize MarketState to CLOSED 
-	 MarketState state = MarketState.CLOSED;
+	 volatile MarketState state = MarketState.CLOSED;
 	 
 	//SINGLETON CONSTRUCTION--------------------//
-		private static ProductService instance = null;
+		// created eagerly, so product engine threads never take a lock to find it
+		private static final ProductService instance = new ProductService();
 		private ProductService(){}
 		
-		public synchronized static ProductService getInstance(){
-			if(instance == null){
-				instance = new ProductService();
-			}
+		public static ProductService getInstance(){
 			return instance;
 		}
 		
@@ -53,17 +90,29 @@ public class ProductService {
 	 * @param product
 	 * @return
 	 **************************************************************************/
-	public synchronized ArrayList<TradableDTO> getOrdersWithRemainingQty(
-			String userName, String product) {
-		ProductBook book = allBooksMap.get(product);
-		ArrayList<TradableDTO> dto = book.getOrdersWithRemainingQty(userName);
-		ArrayList <TradableDTO> temp = book.getOrdersWithRemainingQty(userName);
-		//Following 2 for loops remove Quotes from the getOrders results
-		for (TradableDTO dtos : dto)
-			if (dtos.isQuote()) temp.add(dtos);
-		for (TradableDTO dtos : temp)
-			dto.remove(dtos);
-		return dto;
+	public ArrayList<TradableDTO> getOrdersWithRemainingQty(
+			final String userName, String product) {
+		try {
+			return await(getOrdersWithRemainingQtyAsync(userName, product));
+		} catch (Exception e) {
+			throw unexpected(e);
+		}
+	}
+
+	/**
+	 * Request the orders with remaining quantity the user has in the specified product's book
+	 * 
+	 * @param userName
+	 * @param product
+	 * @return - future completed with the orders
+	 */
+	public CompletableFuture<ArrayList<TradableDTO>> getOrdersWithRemainingQtyAsync(
+			final String userName, String product) {
+		return route(product, new ProductEngine.Command<ArrayList<TradableDTO>>() {
+			public ArrayList<TradableDTO> execute(ProductBook book) {
+				return book.getOrdersWithRemainingQty(userName);
+			}
+		});
 	}
 
 		////////4.2///////
@@ -74,10 +123,16 @@ public class ProductService {
 	 * @param product
 	 * @return
 	 ******************************************************************************/
-	public synchronized MarketDataDTO getMarketData(String product) {
-		ProductBook book = allBooksMap.get(product);
-		//MarketDataDTO dto = book.getMarketData();
-		return book.getMarketData();
+	public MarketDataDTO getMarketData(String product) {
+		try {
+			return await(route(product, new ProductEngine.Command<MarketDataDTO>() {
+				public MarketDataDTO execute(ProductBook book) {
+					return book.getMarketData();
+				}
+			}));
+		} catch (Exception e) {
+			throw unexpected(e);
+		}
 		
 		//return dto.product + " " + dto.buyVolume + "@"
 		//+ dto.buyPrice + " x " + dto.sellVolume + "@" + dto.sellPrice;
@@ -86,7 +141,7 @@ public class ProductService {
 	/************************
 	 * @return - MarketState
 	 ************************/
-	public synchronized MarketState getMarketState() {
+	public MarketState getMarketState() {
 		return state;
 	}
 	
@@ -100,22 +155,83 @@ public class ProductService {
 	 * @throws NoSuchProductException
 	 */
 
-	public synchronized String[][] getBookDepth(String product) throws NoSuchProductException {
+	public String[][] getBookDepth(String product) throws NoSuchProductException {
+		try {
+			return await(getBookDepthAsync(product));
+		} catch (NoSuchProductException e) {
+			throw e;
+		} catch (Exception e) {
+			throw unexpected(e);
+		}
+	}
+	
+	/**
+	 * Request a depth snapshot of the specified product's book
+	 * 
+	 * @param product
+	 * @return - future completed with the book depth
+	 */
+	public CompletableFuture<String[][]> getBookDepthAsync(String product) {
 		if(!allBooksMap.containsKey(product))
-			throw new NoSuchProductException();
+			return failed(new NoSuchProductException());
 		
-		ProductBook book = allBooksMap.get(product);
-		return book.getBookDepth();
+		return route(product, new ProductEngine.Command<String[][]>() {
+			public String[][] execute(ProductBook book) {
+				return book.getBookDepth();
+			}
+		});
+	}
+	
+	/**
+	 * @param product
+	 * @param maxLevels - most levels wanted on each side
+	 * @return - price, volume and entry count of the best levels on each side
+	 * @throws NoSuchProductException
+	 */
+	public BookDepth getBookDepth(String product, int maxLevels) throws NoSuchProductException {
+		try {
+			return await(getBookDepthAsync(product, maxLevels));
+		} catch (NoSuchProductException e) {
+			throw e;
+		} catch (Exception e) {
+			throw unexpected(e);
+		}
+	}
+	
+	/**
+	 * Request the best levels of the specified product's book
+	 * 
+	 * @param product
+	 * @param maxLevels - most levels wanted on each side
+	 * @return - future completed with the book depth
+	 */
+	public CompletableFuture<BookDepth> getBookDepthAsync(String product, int maxLevels) {
+		if(!allBooksMap.containsKey(product))
+			return failed(new NoSuchProductException());
+		
+		final BookDepth depth = new BookDepth(product, maxLevels);
+		return route(product, new ProductEngine.Command<BookDepth>() {
+			public BookDepth execute(ProductBook book) {
+				return book.getBookDepth(depth);
+			}
+		});
 	}
 	
 	/**
 	 * 
 	 * @return
 	 */
-	public synchronized ArrayList<String> getProductList() {
+	public ArrayList<String> getProductList() {
 		return new ArrayList<String>(allBooksMap.keySet());
 	}
 	
+	/**
+	 * @return - the current ExecutionMode
+	 */
+	public ExecutionMode getExecutionMode() {
+		return mode;
+	}
+	
 	/**************************************************
 	 * Market and Product Service Manipulation Methods
 	 **************************************************/
@@ -146,25 +262,101 @@ public class ProductService {
 			throw new InvalidMarketStateException("Cannot CLOSE the market while it is in PREOPEN");
 		}
 		
-		state = ms;
-		MarketMessage msg = new MarketMessage(state);
-		MessagePublisher.getInstance().publishMarketMessage(msg);
+		ArrayList<CompletableFuture<Void>> applied = new ArrayList<CompletableFuture<Void>>();
+		applied.add(journal(j -> j.appendMarketState(ms)));
+
+		// Every book changes state in order with its own commands; the service's state, which 
+		// new commands are checked against, only changes once they all have
+		if (newState == MarketState.PREOPEN) {
+			for (final String symbol : allBooksMap.keySet()) {
+				applied.add(route(symbol, new ProductEngine.Command<Void>() {
+					public Void execute(ProductBook book) {
+						book.setMarketState(MarketState.PREOPEN);
+						return null;
+					}
+				}));
+			}
+		}
 
 		// Get ProductBook, call open market for all
 		if (newState == MarketState.OPEN) {
-			for (Entry<String, ProductBook> entry : allBooksMap.entrySet()) {
-				ProductBookSide sellSide = entry.getValue().getSell();
-				ProductBookSide buySide = entry.getValue().getBuy();
-				if (sellSide.getEntriesAtTopOfBook() == null && buySide.getEntriesAtTopOfBook() == null) System.out.println("NO opening trade in " + entry.getKey()); 
-				else entry.getValue().openMarket();
+			for (final String symbol : allBooksMap.keySet()) {
+				applied.add(route(symbol, j -> j.appendOpenBook(symbol), new ProductEngine.Command<Void>() {
+					public Void execute(ProductBook book) throws Exception {
+						openBook(book);
+						return null;
+					}
+				}));
 			}
 		}
 		
 			// Get ProductBook, call close market for all
 		if (newState == MarketState.CLOSED) {
-			for (Entry<String, ProductBook> entry : allBooksMap.entrySet())
-				entry.getValue().closeMarket();
-			
+			for (final String symbol : allBooksMap.keySet())
+				applied.add(route(symbol, j -> j.appendCloseBook(symbol), new ProductEngine.Command<Void>() {
+					public Void execute(ProductBook book) throws Exception {
+						closeBook(book);
+						return null;
+					}
+				}));
+		}
+		awaitAll(applied);
+
+		state = ms;
+		MarketMessage msg = new MarketMessage(state);
+		MessagePublisher.getInstance().publishMarketMessage(msg);
+	}
+	
+	private static void openBook(ProductBook book) throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+		// a book with nothing to uncross opens without trading
+		book.openMarket();
+		book.setMarketState(MarketState.OPEN);
+	}
+	
+	private static void closeBook(ProductBook book) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException {
+		book.closeMarket();
+		book.setMarketState(MarketState.CLOSED);
+	}
+	
+	/**
+	 * Refuse a Tradable the book cannot take in its own market state.  Commands are 
+	 * checked against the service's state when submitted, but a book may have 
+	 * changed state since; this check runs with the command, in order with the book's
+	 * other commands.
+	 * 
+	 * @param book
+	 * @param market - the Tradable has a MKT price
+	 * @throws InvalidMarketStateException
+	 */
+	private static void checkBookState(ProductBook book, boolean market) throws InvalidMarketStateException {
+		if (book.getMarketState() == MarketState.CLOSED)
+			throw new InvalidMarketStateException("Orders are not accepted when the market is CLOSED");
+		if (book.getMarketState() == MarketState.PREOPEN && market)
+			throw new InvalidMarketStateException("MKT Orders are not accepted when makret is in PREOPEN");
+	}
+	
+	/**
+	 * Switch between running every book under the ProductService lock and
+	 * running each book on its own event-loop thread.  Only allowed while
+	 * the market is CLOSED.
+	 * 
+	 * @param newMode
+	 * @throws InvalidMarketStateException
+	 * @throws InterruptedException 
+	 */
+	public synchronized void setExecutionMode(ExecutionMode newMode) throws InvalidMarketStateException, InterruptedException {
+		if (getMarketState() != MarketState.CLOSED)
+			throw new InvalidMarketStateException("The execution mode can only be changed while the market is CLOSED");
+		if (newMode == mode) return;
+		
+		mode = newMode;
+		if (newMode == ExecutionMode.EVENT_LOOP) {
+			for (ProductBook book : allBooksMap.values())
+				startEngine(book);
+		} else {
+			for (ProductEngine engine : enginesMap.values())
+				engine.shutdown();
+			enginesMap.clear();
 		}
 	}
 
@@ -179,15 +371,184 @@ public class ProductService {
 	 * @throws DataValidationException 
 	 * @throws NullObjectException 
 	 */
-	public synchronized void createProduct(String product) throws DataValidationException, NullObjectException {
+	public void createProduct(String product) throws DataValidationException, NullObjectException {
+		createProduct(product, TradeProcessorFactory.PRICE_TIME);
+	}
+
+	/***
+	 * Create a new stock product that trades with the named matching algorithm
+	 * 
+	 * @param product - symbol of 1 to 8 ASCII characters, so every event about it can be encoded - see Flyweight
+	 * @param algorithm - name registered with TradeProcessorFactory, such as PRO_RATA
+	 * @throws DataValidationException - also when the symbol is not valid or no such algorithm is registered
+	 * @throws NullObjectException 
+	 */
+	public synchronized void createProduct(String product, String algorithm) throws DataValidationException, NullObjectException {
 		if(product == null || product == "") 
 			throw new DataValidationException("product cannot be null");
 	
+		if (!Flyweight.isValidSymbol(product))
+			throw new DataValidationException("Product symbols are 1 to " + Flyweight.SYMBOL_LENGTH + " ASCII characters: " + product);
+	
 		if(allBooksMap.containsKey(product))
 		throw new DataValidationException();
+
+		if (!TradeProcessorFactory.isRegistered(algorithm))
+			throw new DataValidationException("No matching algorithm named " + algorithm);
+	
+		if (nextProductIndex == OrderId.MAX_PRODUCTS)
+			throw new DataValidationException("No more than " + OrderId.MAX_PRODUCTS + " products can be created");
 	
-		ProductBook book = new ProductBook(product);
-		allBooksMap.put(product, book);
+		int productIndex = nextProductIndex++;
+		CompletableFuture<Void> durable = journal(j -> j.appendCreateProduct(product, algorithm, productIndex));
+		ProductBook book = new ProductBook(product, algorithm, productIndex);
+		book.setMarketState(state);
+		addBook(book);
+		try {
+			await(durable);
+		} catch (Exception e) {
+			throw unexpected(e);
+		}
+	}
+	
+	private void addBook(ProductBook book) {
+		allBooksMap.put(book.getSymbol(), book);
+		if (mode == ExecutionMode.EVENT_LOOP) startEngine(book);
+	}
+	
+	/**
+	 * Rebuild the product books by replaying the journal file, then journal 
+	 * every accepted command to the end of it.  Must be called before any 
+	 * product is created.
+	 * 
+	 * @param file - journal file, created if it does not exist
+	 * @param forceToDisk - false to rely on the OS page cache instead of syncing each group commit
+	 * @throws IOException
+	 */
+	public void openJournal(File file, boolean forceToDisk) throws IOException {
+		openJournal(file, null, forceToDisk);
+	}
+	
+	/**
+	 * Rebuild the product books from the newest snapshot in snapshotDir plus 
+	 * the journal records written after it, then journal every accepted 
+	 * command to the end of the journal.  Must be called before any product 
+	 * is created.
+	 * 
+	 * @param file - journal file, created if it does not exist
+	 * @param snapshotDir - where snapshots are kept, null to replay the whole journal and take no snapshots
+	 * @param forceToDisk - false to rely on the OS page cache instead of syncing each group commit
+	 * @throws IOException
+	 */
+	public synchronized void openJournal(File file, File snapshotDir, boolean forceToDisk) throws IOException {
+		if (journal != null || !allBooksMap.isEmpty())
+			throw new IllegalStateException("The journal must be opened before any product is created");
+		
+		Replayer replayer = new Replayer();
+		Journal.Position from = Journal.Position.START;
+		if (snapshotDir != null) {
+			snapshots = new SnapshotStore(snapshotDir);
+			SnapshotStore.Snapshot latest = snapshots.readLatest();
+			if (latest != null) {
+				for (byte[] image : latest.getBooks()) {
+					BookSnapshot restored = BookSnapshot.restore(image);
+					addBook(restored.book);
+					nextProductIndex = Math.max(nextProductIndex, restored.book.getProductIndex() + 1);
+					replayer.bookSeqs.put(restored.symbol, restored.seq);
+				}
+				state = latest.getMarketState();
+				from = latest.getPosition();
+			}
+		}
+		journal = Journal.open(file, from, replayer, forceToDisk);
+	}
+	
+	/**
+	 * Flush and close the journal; later commands are no longer journaled
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void closeJournal() throws IOException {
+		if (snapshotTimer != null) {
+			snapshotTimer.shutdownNow();
+			snapshotTimer = null;
+		}
+		if (journal == null) return;
+		journal.close();
+		journal = null;
+		snapshots = null;
+	}
+	
+	/**
+	 * Write a snapshot of every product book.  Each book is copied on the 
+	 * thread that owns it, so in EVENT_LOOP mode a product stops matching 
+	 * only while its own book is copied; the file is written afterwards.
+	 * 
+	 * @return - the journal sequence number the snapshot was taken at
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public long takeSnapshot() throws IOException, InterruptedException {
+		final Journal j;
+		SnapshotStore store;
+		Journal.Position position;
+		MarketState capturedState;
+		ArrayList<CompletableFuture<byte[]>> captures = new ArrayList<CompletableFuture<byte[]>>();
+		
+		// Nothing that changes the product list or market state can interleave with reading the 
+		// position, so every journal record before it is already reflected in the captured books
+		synchronized (this) {
+			if (journal == null || snapshots == null)
+				throw new IllegalStateException("Snapshots need an open journal and a snapshot directory");
+			j = journal;
+			store = snapshots;
+			position = j.getPosition();
+			capturedState = state;
+			for (String symbol : allBooksMap.keySet())
+				captures.add(route(symbol, book -> BookSnapshot.capture(book, j.getLastSeq())));
+		}
+		
+		ArrayList<byte[]> images = new ArrayList<byte[]>(captures.size());
+		for (CompletableFuture<byte[]> capture : captures) {
+			try {
+				images.add(await(capture));
+			} catch (IOException | InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				throw unexpected(e);
+			}
+		}
+		// a snapshot must never hold the effect of a command whose journal record could still be lost
+		j.awaitDurable(j.getLastSeq());
+		store.write(position, capturedState, images);
+		return position.seq;
+	}
+	
+	/**
+	 * Take a snapshot every periodMillis on a background thread until the 
+	 * journal is closed
+	 * 
+	 * @param periodMillis
+	 */
+	public synchronized void scheduleSnapshots(long periodMillis) {
+		if (snapshots == null)
+			throw new IllegalStateException("Snapshots need an open journal and a snapshot directory");
+		if (snapshotTimer != null) snapshotTimer.shutdownNow();
+		
+		snapshotTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Snapshots");
+			t.setDaemon(true);
+			return t;
+		});
+		snapshotTimer.scheduleWithFixedDelay(() -> {
+			try {
+				takeSnapshot();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				Logger.getLogger(ProductService.class.getName()).log(Level.WARNING, "Snapshot failed", e);
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
 	}
 	
 	/**
@@ -201,15 +562,37 @@ public class ProductService {
 	 * @throws InvalidVolumeException 
 	 * @throws InvalidPriceException 
 	 */
-	public synchronized void submitQuote(Quote q) throws InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException, InvalidVolumeException {
+	public void submitQuote(Quote q) throws InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException, InvalidVolumeException {
+		try {
+			await(submitQuoteAsync(q));
+		} catch (InvalidMarketStateException | NoSuchProductException | DataValidationException | InvalidMessageException | InvalidPriceException | InvalidVolumeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw unexpected(e);
+		}
+	}
+	
+	/**
+	 * Route the provided Quote to the appropriate product book
+	 * 
+	 * @param q
+	 * @return - future completed once the Quote has been booked or traded
+	 */
+	public CompletableFuture<Void> submitQuoteAsync(final Quote q) {
 		if(getMarketState() == MarketState.CLOSED)
-			throw new InvalidMarketStateException();
+			return failed(new InvalidMarketStateException());
 	
 		if(!allBooksMap.containsKey(q.getProductSymbol()))
-			throw new NoSuchProductException("product " + q.getProductSymbol() + " does not exist");
+			return failed(new NoSuchProductException("product " + q.getProductSymbol() + " does not exist"));
 	
-		ProductBook book = allBooksMap.get(q.getProductSymbol());
-		book.addToBook(q);
+		return route(q.getProductSymbol(), new Tradable[] { q.getQuoteSide(Side.BUY), q.getQuoteSide(Side.SELL) },
+				j -> j.appendQuote(q), new ProductEngine.Command<Void>() {
+			public Void execute(ProductBook book) throws Exception {
+				checkBookState(book, false);
+				book.addToBook(q);
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -225,19 +608,39 @@ public class ProductService {
 	 * @throws InvalidVolumeException 
 	 * @throws InvalidPriceException 
 	 */
-	public synchronized String submitOrder(Order o) throws InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+	public String submitOrder(Order o) throws InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+		try {
+			return await(submitOrderAsync(o));
+		} catch (InvalidMarketStateException | NoSuchProductException | DataValidationException | InvalidVolumeException | InvalidMessageException | InvalidPriceException e) {
+			throw e;
+		} catch (Exception e) {
+			throw unexpected(e);
+		}
+	}
+	
+	/**
+	 * Route the provided Order to the appropriate product book
+	 * 
+	 * @param o
+	 * @return - future completed with the order id once the Order has been booked or traded
+	 */
+	public CompletableFuture<String> submitOrderAsync(final Order o) {
 		if(getMarketState() == MarketState.CLOSED)
-			throw new InvalidMarketStateException("Orders are not accepted when the market is CLOSED");
+			return failed(new InvalidMarketStateException("Orders are not accepted when the market is CLOSED"));
 	
-		if(getMarketState() == MarketState.PREOPEN && o.getPrice().equals("MKT"))
-			throw new InvalidMarketStateException("MKT Orders are not accepted when makret is in PREOPEN");
+		if(getMarketState() == MarketState.PREOPEN && o.getPrice().getIsMarket())
+			return failed(new InvalidMarketStateException("MKT Orders are not accepted when makret is in PREOPEN"));
 		
 		if(!allBooksMap.containsKey(o.getProduct()))
-			throw new NoSuchProductException("Product " + o.getProduct() + " does not exist");
+			return failed(new NoSuchProductException("Product " + o.getProduct() + " does not exist"));
 		
-		ProductBook book = allBooksMap.get(o.getProduct());
-		book.addToBook(o);
-		return o.toString();
+		return route(o.getProduct(), new Tradable[] { o }, j -> j.appendOrder(o), new ProductEngine.Command<String>() {
+			public String execute(ProductBook book) throws Exception {
+				checkBookState(book, o.getPrice().getIsMarket());
+				book.addToBook(o);
+				return o.getId();
+			}
+		});
 	}
 	
 	/**
@@ -253,14 +656,35 @@ public class ProductService {
 	 * @throws InvalidVolumeException 
 	 * @throws InvalidMessageException 
 	 */
-	 public synchronized void submitOrderCancel(String product, String side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException {
-		 if(getMarketState() == MarketState.CLOSED) throw new InvalidMarketStateException();
+	 public void submitOrderCancel(String product, Side side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException {
+		 try {
+			 await(submitOrderCancelAsync(product, side, orderId));
+		 } catch (InvalidMarketStateException | NoSuchProductException | InvalidMessageException | InvalidVolumeException | InvalidPriceException | OrderNotFoundException e) {
+			 throw e;
+		 } catch (Exception e) {
+			 throw unexpected(e);
+		 }
+	 }
 	 
-		 if(!allBooksMap.containsKey(product)) return;
+	 /**
+	  * Route the provided Order Cancel to the appropriate product book
+	  * 
+	  * @param product
+	  * @param side
+	  * @param orderId
+	  * @return - future completed once the cancel has been processed
+	  */
+	 public CompletableFuture<Void> submitOrderCancelAsync(final String product, final Side side, final String orderId) {
+		 if(getMarketState() == MarketState.CLOSED) return failed(new InvalidMarketStateException());
+	 
+		 if(!allBooksMap.containsKey(product)) return CompletableFuture.completedFuture(null);
 			 		 
-		 ProductBook book = allBooksMap.get(product);
-		 book.cancelOrder(side, orderId);
-		 allBooksMap.put(product, book);
+		 return route(product, j -> j.appendOrderCancel(product, side, orderId), new ProductEngine.Command<Void>() {
+			 public Void execute(ProductBook book) throws Exception {
+				 book.cancelOrder(side, orderId);
+				 return null;
+			 }
+		 });
 	 }
 	 
 	 /**
@@ -277,14 +701,251 @@ public class ProductService {
 		 * @throws InvalidVolumeException 
 		 * @throws InvalidMessageException 
 		 */
-		 public synchronized void  submitQuoteCancel(String userName, String product) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException {
+		 public void  submitQuoteCancel(String userName, String product) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException {
+			 try {
+				 await(submitQuoteCancelAsync(userName, product));
+			 } catch (InvalidMarketStateException | NoSuchProductException | InvalidMessageException | InvalidVolumeException | InvalidPriceException e) {
+				 throw e;
+			 } catch (Exception e) {
+				 throw unexpected(e);
+			 }
+		 }
+		 
+		 /**
+		  * Route the provided Quote Cancel to the appropriate product book
+		  * 
+		  * @param userName
+		  * @param product
+		  * @return - future completed once the cancel has been processed
+		  */
+		 public CompletableFuture<Void> submitQuoteCancelAsync(final String userName, final String product) {
 			 if(getMarketState() == MarketState.CLOSED)
-					throw new InvalidMarketStateException();
+					return failed(new InvalidMarketStateException());
 		 
 			 if(!allBooksMap.containsKey(product))
-					throw new NoSuchProductException("Product " + product + " does not exist");	
+					return failed(new NoSuchProductException("Product " + product + " does not exist"));	
 		 
-			 ProductBook book = allBooksMap.get(product);
-			 book.cancelQuote(userName);//TODO TESTING
+			 return route(product, j -> j.appendQuoteCancel(userName, product), new ProductEngine.Command<Void>() {
+				 public Void execute(ProductBook book) throws Exception {
+					 book.cancelQuote(userName);//TODO TESTING
+					 return null;
+				 }
+			 });
 		 }
+		 
+	/**************************************************
+	 * Command Routing
+	 **************************************************/
+		 
+	/**
+	 * Run a command against the specified product's book - on the book's 
+	 * ProductEngine in EVENT_LOOP mode, otherwise immediately on this thread 
+	 * under the ProductService lock
+	 * 
+	 * @param product
+	 * @param command
+	 * @return - future holding the command's result
+	 */
+	private <T> CompletableFuture<T> route(String product, ProductEngine.Command<T> command) {
+		ProductEngine engine = enginesMap.get(product);
+		if (engine != null) return engine.submit(command);
+		
+		ProductBook book = allBooksMap.get(product);
+		synchronized (this) {
+			try {
+				return CompletableFuture.completedFuture(command.execute(book));
+			} catch (Exception e) {
+				return failed(e);
+			}
+		}
+	}
+	
+	/**
+	 * Route a command that changes the book, journaling it on the thread that 
+	 * applies it, immediately before it is applied.  The returned future 
+	 * completes once the command has been applied and its record is durable.
+	 * 
+	 * @param product
+	 * @param entry - writes the command's journal record
+	 * @param command
+	 * @return - future holding the command's result
+	 */
+	private <T> CompletableFuture<T> route(String product, final JournalEntry entry, final ProductEngine.Command<T> command) {
+		return route(product, NOTHING_NEW, entry, command);
+	}
+	
+	/**
+	 * Route a command that brings Tradables new to the exchange, journaled as 
+	 * above.  The book numbers them first, so their journal record carries 
+	 * their ids; without a journal the book numbers them as it books them.
+	 * 
+	 * @param product
+	 * @param fresh - the new Orders or QuoteSides
+	 * @param entry - writes the command's journal record
+	 * @param command
+	 * @return - future holding the command's result
+	 */
+	private <T> CompletableFuture<T> route(String product, final Tradable[] fresh, final JournalEntry entry, final ProductEngine.Command<T> command) {
+		if (journal == null) return route(product, command);
+		
+		return route(product, new ProductEngine.Command<CompletableFuture<T>>() {
+			public CompletableFuture<T> execute(ProductBook book) throws Exception {
+				for (Tradable t : fresh)
+					book.number(t);
+				CompletableFuture<Void> durable = journal(entry);
+				final T result = command.execute(book);
+				return durable.thenApply(v -> result);
+			}
+		}).thenCompose(f -> f);
+	}
+	
+	private CompletableFuture<Void> journal(JournalEntry entry) {
+		Journal j = journal;
+		if (j == null) return CompletableFuture.completedFuture(null);
+		return entry.writeTo(j);
+	}
+	
+	private void startEngine(ProductBook book) {
+		ProductEngine engine = new ProductEngine(book);
+		engine.start();
+		enginesMap.put(book.getSymbol(), engine);
+	}
+	
+	private static <T> CompletableFuture<T> failed(Exception e) {
+		CompletableFuture<T> f = new CompletableFuture<T>();
+		f.completeExceptionally(e);
+		return f;
+	}
+	
+	/**
+	 * Wait for a routed command, rethrowing the exception it failed with
+	 */
+	private static <T> T await(CompletableFuture<T> f) throws Exception {
+		try {
+			return f.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+			throw (Error) e.getCause();
+		}
+	}
+	
+	private void awaitAll(ArrayList<CompletableFuture<Void>> futures) throws InvalidMessageException, InvalidPriceException, OrderNotFoundException, InvalidVolumeException {
+		for (CompletableFuture<Void> f : futures) {
+			try {
+				await(f);
+			} catch (InvalidMessageException | InvalidPriceException | OrderNotFoundException | InvalidVolumeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw unexpected(e);
+			}
+		}
+	}
+	
+	private static RuntimeException unexpected(Exception e) {
+		if (e instanceof RuntimeException) return (RuntimeException) e;
+		return new IllegalStateException(e);
+	}
+	
+	/**
+	 * Writes the journal record for one command
+	 */
+	private interface JournalEntry {
+		CompletableFuture<Void> writeTo(Journal j);
+	}
+	
+	private static final Tradable[] NOTHING_NEW = {};
+	
+	/**************************************************************************
+	 * Applies replayed journal records straight to the books.  A record was 
+	 * journaled before its command was applied, so a command that was 
+	 * rejected when first submitted is simply rejected again here.  Records 
+	 * already reflected in a book's snapshot are skipped.
+	 **************************************************************************/
+	private final class Replayer implements JournalHandler {
+		
+		//Sequence number each restored book was captured at
+		private final HashMap<String, Long> bookSeqs = new HashMap<String, Long>();
+
+		public void createProduct(long seq, String symbol, String algorithm, int productIndex) {
+			if (allBooksMap.containsKey(symbol)) return;
+			if (!TradeProcessorFactory.isRegistered(algorithm))
+				throw new IllegalStateException("Product " + symbol + " was journaled with unregistered matching algorithm " + algorithm);
+			try {
+				ProductBook book = new ProductBook(symbol, algorithm, productIndex);
+				nextProductIndex = Math.max(nextProductIndex, productIndex + 1);
+				book.setMarketState(state);
+				addBook(book);
+			} catch (NullObjectException e) {
+				// rejected when first created
+			}
+		}
+
+		public void marketState(long seq, MarketState ms) {
+			state = ms;
+			if (ms != MarketState.PREOPEN) return;
+			// opening and closing each book are journaled on their own
+			for (String symbol : allBooksMap.keySet()) {
+				apply(seq, symbol, book -> {
+					book.setMarketState(MarketState.PREOPEN);
+					return null;
+				});
+			}
+		}
+
+		public void openBook(long seq, String symbol) {
+			apply(seq, symbol, book -> {
+				ProductService.openBook(book);
+				return null;
+			});
+		}
+
+		public void closeBook(long seq, String symbol) {
+			apply(seq, symbol, book -> {
+				ProductService.closeBook(book);
+				return null;
+			});
+		}
+
+		public void order(long seq, String user, String symbol, Price price, int volume, Side side, long id) {
+			apply(seq, symbol, book -> {
+				checkBookState(book, price.getIsMarket());
+				book.addToBook(new Order(user, symbol, price, volume, side, id));
+				return null;
+			});
+		}
+
+		public void quote(long seq, String user, String symbol, Price buyPrice, int buyVolume, long buyId,
+				Price sellPrice, int sellVolume, long sellId) {
+			apply(seq, symbol, book -> {
+				checkBookState(book, false);
+				book.addToBook(new Quote(user, symbol, buyPrice, buyVolume, buyId, sellPrice, sellVolume, sellId));
+				return null;
+			});
+		}
+
+		public void orderCancel(long seq, String symbol, Side side, String orderId) {
+			apply(seq, symbol, book -> {
+				book.cancelOrder(side, orderId);
+				return null;
+			});
+		}
+
+		public void quoteCancel(long seq, String user, String symbol) {
+			apply(seq, symbol, book -> {
+				book.cancelQuote(user);
+				return null;
+			});
+		}
+
+		private void apply(long seq, String symbol, ProductEngine.Command<Void> command) {
+			if (!allBooksMap.containsKey(symbol)) return;
+			Long captured = bookSeqs.get(symbol);
+			if (captured != null && seq <= captured) return;
+			try {
+				await(route(symbol, command));
+			} catch (Exception e) {
+				// rejected when first submitted
+			}
+		}
+	}
 }
@@ -0,0 +1,64 @@
+package client;
+
+import java.util.ArrayList;
+
+import exceptions.AlreadySubscribedException;
+import exceptions.ConnectionException;
+import exceptions.DataValidationException;
+import exceptions.InvalidMarketStateException;
+import exceptions.InvalidMessageException;
+import exceptions.InvalidPriceException;
+import exceptions.InvalidVolumeException;
+import exceptions.NoSuchProductException;
+import exceptions.NotSubscribedException;
+import exceptions.OrderNotFoundException;
+import price.Price;
+import tradable.Side;
+import tradable.TradableDTO;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *The commands a User sends to the trading system.  UserCommandService
+ *carries them out in process; a gateway.GatewayClient sends them to an
+ *exchange running in another process.  Every command after connect names
+ *the user and the connection id connect returned.
+ ***************************************************************************/
+public interface CommandService {
+
+	long connect(Subscriber user) throws ConnectionException;
+
+	void disConnect(String userName, long connId) throws ConnectionException;
+
+	String[][] getBookDepth(String userName, long connId, String product) throws ConnectionException, NoSuchProductException;
+
+	String getMarketState(String userName, long connId) throws ConnectionException;
+
+	ArrayList<TradableDTO> getOrdersWithRemainingQty(String userName, long connId, String product) throws ConnectionException;
+
+	ArrayList<String> getProducts(String userName, long connId) throws ConnectionException;
+
+	String submitOrder(String userName, long connId, String product, Price price, int volume, Side side) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException;
+
+	void submitOrderCancel(String userName, long connId, String product, Side side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException, ConnectionException;
+
+	void submitQuote(String userName, long connId, String product, Price bPrice, int bVolume, Price sPrice, int sVolume) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException;
+
+	void submitQuoteCancel(String userName, long connId, String product) throws ConnectionException, InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException;
+
+	void subscribeCurrentMarket(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException;
+
+	void subscribeLastSale(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException;
+
+	void subscribeMessages(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException;
+
+	void subscribeTicker(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException;
+
+	void unSubscribeCurrentMarket(String userName, long connId, String product) throws ConnectionException, NotSubscribedException;
+
+	void unSubscribeLastSale(String userName, long connId, String product) throws ConnectionException, NotSubscribedException;
+
+	void unSubscribeMessages(String userName, long connId, String product) throws ConnectionException, NotSubscribedException;
+
+	void unSubscribeTicker(String userName, long connId, String product) throws ConnectionException, NotSubscribedException;
+}
@@ -10,6 +10,7 @@ import exceptions.DataValidationException;
 import exceptions.InvalidPriceException;
 import price.Price;
 import price.PriceFactory;
+import tradable.Side;
 
 public class Position {
 
@@ -35,13 +36,13 @@ public class Position {
 	 * @throws DataValidationException 
 	 * @throws InvalidPriceException 
 	 */
-	public void updatePosition(String product, Price price, String side, int volume) throws DataValidationException, InvalidPriceException {
+	public void updatePosition(String product, Price price, Side side, int volume) throws DataValidationException, InvalidPriceException {
 		int adjustedVolume;
 		
-		if(side.equals("BUY")){
+		if(side == Side.BUY){
 			adjustedVolume = volume;
 		}
-		else if(side.equals("SELL")) {
+		else if(side == Side.SELL) {
 			adjustedVolume = -volume;
 		}
 		else {
@@ -65,7 +66,7 @@ public class Position {
 		
 		Price totalPrice = price.multiply(volume);
 		
-		if(side.equals("BUY")) {
+		if(side == Side.BUY) {
 			accountCosts = accountCosts.subtract(totalPrice);
 		}
 		else {//SELL
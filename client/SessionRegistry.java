@@ -0,0 +1,144 @@
+package client;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+
+import exceptions.ConnectionException;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *The connected Users of UserCommandService, one immutable Session each,
+ *found by the primitive long token handed out when the User connected.
+ *
+ *Sessions sit in an open addressing table keyed on their token.  Lookups
+ *read the current table without locking or allocating; connecting and
+ *disconnecting are synchronized and publish a new copy of the table, so
+ *a lookup always sees a whole table, before or after a change.  Users
+ *connect and disconnect rarely and every command looks its User up, so
+ *the copying is paid where it costs least.
+ ***************************************************************************/
+final class SessionRegistry {
+
+	private final SecureRandom random = new SecureRandom();
+	private volatile Session[] slots = new Session[16];
+	// user name to Session, guarded by this
+	private final HashMap<String, Session> byName = new HashMap<String, Session>();
+
+	//LOOKUP---------------------//
+	/**
+	 * @param token - connection id handed out by connect
+	 * @return - the Session with that token, null if there is none
+	 */
+	Session get(long token) {
+		return find(slots, token);
+	}
+
+	/**
+	 * @param userName
+	 * @param token
+	 * @return - the Session with that token, if it belongs to userName
+	 * @throws ConnectionException - there is no such Session
+	 */
+	Session verify(String userName, long token) throws ConnectionException {
+		Session s = find(slots, token);
+		if (s != null && s.userName.equals(userName)) return s;
+		if (!isConnected(userName)) {
+			throw new ConnectionException("User Not Connected");
+		}
+		throw new ConnectionException("Invalid Connection, User Not Associated With This Connection");
+	}
+
+	synchronized boolean isConnected(String userName) {
+		return byName.containsKey(userName);
+	}
+
+	synchronized int size() {
+		return byName.size();
+	}
+
+	private static Session find(Session[] table, long token) {
+		int mask = table.length - 1;
+		for (int i = hash(token) & mask; ; i = (i + 1) & mask) {
+			Session s = table[i];
+			if (s == null || s.token == token) return s;
+		}
+	}
+
+	//CONNECT / DISCONNECT-------//
+	/**
+	 * @param user
+	 * @return - a new Session for user, with a token no other Session has
+	 * @throws ConnectionException - a User of the same name is connected
+	 */
+	synchronized Session connect(Subscriber user) throws ConnectionException {
+		String userName = user.getUserName();
+		if (byName.containsKey(userName)) {
+			throw new ConnectionException(userName + " Already Connected");
+		}
+		Session[] table = slots;
+		long token;
+		do {
+			token = random.nextLong();
+		} while (token == 0 || find(table, token) != null);
+		Session s = new Session(user, token, System.currentTimeMillis());
+		int length = table.length;
+		if ((byName.size() + 1) * 2 > length) length *= 2;
+		Session[] copy = copy(table, length, 0);
+		insert(copy, s);
+		byName.put(userName, s);
+		slots = copy;
+		return s;
+	}
+
+	/**
+	 * @param userName
+	 * @param token
+	 * @return - the Session removed
+	 * @throws ConnectionException - there is no such Session
+	 */
+	synchronized Session disconnect(String userName, long token) throws ConnectionException {
+		Session s = verify(userName, token);
+		byName.remove(userName);
+		slots = copy(slots, slots.length, token);
+		return s;
+	}
+
+	// A new table of the given length with every Session but the one with token skip
+	private static Session[] copy(Session[] table, int length, long skip) {
+		Session[] copy = new Session[length];
+		for (Session s : table) {
+			if (s != null && s.token != skip) insert(copy, s);
+		}
+		return copy;
+	}
+
+	private static void insert(Session[] table, Session s) {
+		int mask = table.length - 1;
+		int i = hash(s.token) & mask;
+		while (table[i] != null) i = (i + 1) & mask;
+		table[i] = s;
+	}
+
+	private static int hash(long token) {
+		long h = token * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/********************************************************
+	 * One User's connection, fixed when the User connects
+	 ********************************************************/
+	static final class Session {
+		final Subscriber user;
+		final String userName;
+		final long token;
+		final long connectTime;
+
+		private Session(Subscriber user, long token, long connectTime) {
+			this.user = user;
+			this.userName = user.getUserName();
+			this.token = token;
+			this.connectTime = connectTime;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package client;
+
+import messages.CancelMessage;
+import messages.FillMessage;
+import price.Price;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *What the Publishers deliver to: the market data and messages side of a
+ *User.  Anything that stands in for a user inside the exchange, such as a
+ *gateway connection, only has to be a Subscriber, not a whole User.
+ ***************************************************************************/
+public interface Subscriber {
+
+	String getUserName(); 
+	// return the String username of this user 
+	
+	void acceptLastSale(String product, Price p, int v); 
+	//This will accept a String stock symbol
+	
+	void acceptMessage(FillMessage fm); 
+	//This will accept a FillMessage object which contains information related to an order or quote trade
+	
+	void acceptMessage(CancelMessage cm);
+	//This will accept a CancelMessage object which contains information related to an order or quote cancel
+	
+	void acceptMarketMessage(String message);
+	//This will accept a String which contains market information related to a Stock Symbol they are interested in
+	
+	void acceptTicker(String product, Price p, char direction);
+	//This will accept a stock symbol, a Price object holding the value of the last sale (trade) of that stock, 
+	//and a �char� indicator of whether the �ticker� price represents an increase or decrease in the Stock�s price
+	
+	void acceptCurrentMarket(String product, Price bp, int bv, Price sp, int sv);
+	//This will accept a String stock symbol, a Price object holding the current BUY side price for that stock, 
+	//an int holding the current BUY side volume (quantity),  a Price object holding the current SELL side price for that stock, 
+	//and an int holding the current SELL side volume (quantity). These values as a group tell the user the �current market� for a stock. For example:    AMZN:  BUY 220@12.80 and SELL 100@12.85. This info is used by 
+	//�Users� to update their market display screen so that they are always looking at the most current market data.  
+}
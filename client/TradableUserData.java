@@ -1,15 +1,16 @@
 package client;
 
 import exceptions.DataValidationException;
+import tradable.Side;
 
 public class TradableUserData {
 	
 	private String userName;
-	private String side;
+	private Side side;
 	private String orderId;
 	private String product;
 	
-	public TradableUserData (String userNameIn, String sideIn, String orderIdIn, String stockSymbolIn) throws DataValidationException  {
+	public TradableUserData (String userNameIn, Side sideIn, String orderIdIn, String stockSymbolIn) throws DataValidationException  {
 		setUserName(userNameIn);
 		setSide(sideIn);
 		setOrderId(orderIdIn);
@@ -20,7 +21,7 @@ public class TradableUserData {
 	public String getUserName() {
 		return userName;
 	}
-	public String getSide() {
+	public Side getSide() {
 		return side;
 	}
 	public String getOrderId() {
@@ -35,8 +36,8 @@ public class TradableUserData {
 		if(userName == ""  || userName == null  ) throw new DataValidationException("Username cannot be empty or null");
 		this.userName = userName;
 	}
-	private void setSide(String side) throws DataValidationException {
-		if(side == ""  || side == null  ) throw new DataValidationException("Side cannot be empty or null");
+	private void setSide(Side side) throws DataValidationException {
+		if(side == null) throw new DataValidationException("Side cannot be null");
 		this.side = side;
 	}
 	private void setOrderId(String orderId)throws DataValidationException {
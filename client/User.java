@@ -11,37 +11,11 @@ import exceptions.InvalidPriceException;
 import exceptions.InvalidVolumeException;
 import exceptions.NoSuchProductException;
 import exceptions.OrderNotFoundException;
-import messages.CancelMessage;
-import messages.FillMessage;
 import price.Price;
+import tradable.Side;
 import tradable.TradableDTO;
 
-public interface User {
-
-	String getUserName(); 
-	// return the String username of this user 
-	
-	void acceptLastSale(String product, Price p, int v); 
-	//This will accept a String stock symbol
-	
-	void acceptMessage(FillMessage fm); 
-	//This will accept a FillMessage object which contains information related to an order or quote trade
-	
-	void acceptMessage(CancelMessage cm);
-	//This will accept a CancelMessage object which contains information related to an order or quote cancel
-	
-	void acceptMarketMessage(String message);
-	//This will accept a String which contains market information related to a Stock Symbol they are interested in
-	
-	void acceptTicker(String product, Price p, char direction);
-	//This will accept a stock symbol, a Price object holding the value of the last sale (trade) of that stock, 
-	//and a �char� indicator of whether the �ticker� price represents an increase or decrease in the Stock�s price
-	
-	void acceptCurrentMarket(String product, Price bp, int bv, Price sp, int sv);
-	//This will accept a String stock symbol, a Price object holding the current BUY side price for that stock, 
-	//an int holding the current BUY side volume (quantity),  a Price object holding the current SELL side price for that stock, 
-	//and an int holding the current SELL side volume (quantity). These values as a group tell the user the �current market� for a stock. For example:    AMZN:  BUY 220@12.80 and SELL 100@12.85. This info is used by 
-	//�Users� to update their market display screen so that they are always looking at the most current market data.  
+public interface User extends Subscriber {
 	
 	void connect() throws ConnectionException; //Instructs a User object to connect to the trading system.
 	
@@ -49,10 +23,10 @@ public interface User {
 	
 	void showMarketDisplay() throws ConnectionException, Exception; //Requests the opening of the market display if the user is connected.
 	
-	String submitOrder(String product, Price price, int volume, String  side) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException; //Allows the User object to submit a new
+	String submitOrder(String product, Price price, int volume, Side side) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException; //Allows the User object to submit a new
 	//Order request
 	
-	void submitOrderCancel(String product, String side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException, ConnectionException; //Allows the User object to submit a new Order
+	void submitOrderCancel(String product, Side side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException, ConnectionException; //Allows the User object to submit a new Order
 	//Cancel request
 	
 	void submitQuote(String product, Price buyPrice, int buyVolume, Price sellPrice, int sellVolume) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException; //Allows the User
@@ -2,7 +2,7 @@ package client;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 import price.Price;
 import publishers.CurrentMarketPublisher;
@@ -11,6 +11,7 @@ import publishers.MessagePublisher;
 import publishers.TickerPublisher;
 import tradable.Order;
 import tradable.Quote;
+import tradable.Side;
 import tradable.TradableDTO;
 import book.ProductService;
 import exceptions.AlreadySubscribedException;
@@ -25,26 +26,18 @@ import exceptions.NotSubscribedException;
 import exceptions.OrderNotFoundException;
 
 
-public class UserCommandService {
+public class UserCommandService implements CommandService {
 
-	//hold user name and connection id pairs.
-	private HashMap<String, Long> connectedUserIds = new HashMap<>();
-	
-	//hold user name and user object pairs
-	private HashMap<String, User> connectedUsers = new HashMap<>();
-	
-	//hold user name and connection-time pairs, connection time is Long
-	private HashMap<String, Long> connectionTimes = new HashMap<>();
+	//connected users, found by connection id without locking
+	private final SessionRegistry sessions = new SessionRegistry();
 	
 	//SINGLETON CONSTRUCTION--------------------//
-	private static UserCommandService instance = null;
+	// created eagerly, so finding it takes no lock on the command path
+	private static final UserCommandService instance = new UserCommandService();
 
 	private UserCommandService() {}
 
-	public static synchronized UserCommandService getInstance() {
-		if (instance == null) {
-			instance = new UserCommandService();
-		}
+	public static UserCommandService getInstance() {
 		return instance;
 	}	
 		/**
@@ -53,33 +46,19 @@ public class UserCommandService {
 		 * @param userName
 		 * @param connId
 		 */
-	private void verifyUser(String userName, long connId)throws ConnectionException {
-		if (!connectedUserIds.containsKey(userName)) {
-			throw new ConnectionException("User Not Connected");
-		}
-		if(connId != connectedUserIds.get(userName)) {
-			throw new ConnectionException("Invalid Connection, User Not Associated With This Connection");
-		}		
-
+	private Subscriber verifyUser(String userName, long connId)throws ConnectionException {
+		return sessions.verify(userName, connId).user;
 	}
 	
 	/**
 	 * Connect the user to the trading system.
 	 * 
 	 * @param user
-	 * @return
-	 * @throws ConnectionException 
+	 * @return - the connection id to pass with every other command
+	 * @throws ConnectionException - a user of the same name is connected
 	 */
-	public synchronized long connect(User user) throws ConnectionException {
-		if(connectedUserIds.containsKey(user)) {
-			throw new ConnectionException(user + " Already Connected");
-		}
-		
-		connectedUserIds.put(user.getUserName(), System.nanoTime());
-		connectedUsers.put(user.getUserName(), user);
-		connectionTimes.put(user.getUserName(), System.currentTimeMillis());
-		
-		return connectedUserIds.get(user.getUserName());
+	public long connect(Subscriber user) throws ConnectionException {
+		return sessions.connect(user).token;
 	}
 	
 	/**
@@ -88,12 +67,8 @@ public class UserCommandService {
 	 * @param connId
 	 * @throws ConnectionException
 	 */
-	public synchronized void disConnect(String userName, long connId) throws ConnectionException {
-		verifyUser(userName, connId);
-		
-		connectedUserIds.remove(userName);
-		connectedUsers.remove(userName);
-		connectionTimes.remove(userName);
+	public void disConnect(String userName, long connId) throws ConnectionException {
+		sessions.disconnect(userName, connId);
 	}
 	
 	/**
@@ -131,7 +106,7 @@ public class UserCommandService {
 	 * @return
 	 * @throws ConnectionException
 	 */
-	public synchronized ArrayList<TradableDTO> getOrdersWithRemainingQty(String userName, long connId, String
+	public ArrayList<TradableDTO> getOrdersWithRemainingQty(String userName, long connId, String
 			product) throws ConnectionException {
 		verifyUser(userName, connId);
 		return ProductService.getInstance().getOrdersWithRemainingQty(userName, product);
@@ -170,13 +145,77 @@ public class UserCommandService {
 	 * @throws InvalidMessageException
 	 * @throws InvalidPriceException
 	 */
-	public String submitOrder(String userName, long connId, String product, Price price, int volume, String side) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException {
+	public String submitOrder(String userName, long connId, String product, Price price, int volume, Side side) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException {
 		verifyUser(userName, connId);
 		Order order = new Order(userName, product, price, volume, side);
 		String orderId = ProductService.getInstance().submitOrder(order);
 		return orderId;
 	}
 	
+	//ASYNC COMMANDS--------------------//
+	// The user is verified on the calling thread; only the book's part is left to complete.
+	// Each future fails with the exception the blocking command would throw.
+	
+	public CompletableFuture<String[][]> getBookDepthAsync(String userName, long connId, String product) {
+		try {
+			verifyUser(userName, connId);
+		} catch (ConnectionException e) {
+			return failed(e);
+		}
+		return ProductService.getInstance().getBookDepthAsync(product);
+	}
+	
+	public CompletableFuture<ArrayList<TradableDTO>> getOrdersWithRemainingQtyAsync(String userName, long connId, String product) {
+		try {
+			verifyUser(userName, connId);
+		} catch (ConnectionException e) {
+			return failed(e);
+		}
+		return ProductService.getInstance().getOrdersWithRemainingQtyAsync(userName, product);
+	}
+	
+	public CompletableFuture<String> submitOrderAsync(String userName, long connId, String product, Price price, int volume, Side side) {
+		try {
+			verifyUser(userName, connId);
+			return ProductService.getInstance().submitOrderAsync(new Order(userName, product, price, volume, side));
+		} catch (ConnectionException | InvalidVolumeException e) {
+			return failed(e);
+		}
+	}
+	
+	public CompletableFuture<Void> submitOrderCancelAsync(String userName, long connId, String product, Side side, String orderId) {
+		try {
+			verifyUser(userName, connId);
+		} catch (ConnectionException e) {
+			return failed(e);
+		}
+		return ProductService.getInstance().submitOrderCancelAsync(product, side, orderId);
+	}
+	
+	public CompletableFuture<Void> submitQuoteAsync(String userName, long connId, String product, Price bPrice, int bVolume, Price sPrice, int sVolume) {
+		try {
+			verifyUser(userName, connId);
+			return ProductService.getInstance().submitQuoteAsync(new Quote(userName, product, bPrice, bVolume, sPrice, sVolume));
+		} catch (ConnectionException | InvalidVolumeException e) {
+			return failed(e);
+		}
+	}
+	
+	public CompletableFuture<Void> submitQuoteCancelAsync(String userName, long connId, String product) {
+		try {
+			verifyUser(userName, connId);
+		} catch (ConnectionException e) {
+			return failed(e);
+		}
+		return ProductService.getInstance().submitQuoteCancelAsync(userName, product);
+	}
+	
+	private static <T> CompletableFuture<T> failed(Exception e) {
+		CompletableFuture<T> f = new CompletableFuture<T>();
+		f.completeExceptionally(e);
+		return f;
+	}
+	
 	
 	/**
 	 * forward the provided information to the ProductServiceâ€™s â€œsubmitOrderCancelâ€� method.
@@ -193,7 +232,7 @@ public class UserCommandService {
 	 * @throws OrderNotFoundException
 	 * @throws ConnectionException
 	 */
-	public void submitOrderCancel(String userName, long connId, String product, String side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException, ConnectionException {
+	public void submitOrderCancel(String userName, long connId, String product, Side side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException, ConnectionException {
 		verifyUser(userName, connId);
 		ProductService.getInstance().submitOrderCancel(product, side, orderId);
 	}
@@ -249,8 +288,8 @@ public class UserCommandService {
 	 * @throws AlreadySubscribedException
 	 */
 	public void subscribeCurrentMarket(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException {
-		verifyUser(userName, connId);
-		CurrentMarketPublisher.getInstance().subscribe(connectedUsers.get(userName), product);
+		Subscriber user = verifyUser(userName, connId);
+		CurrentMarketPublisher.getInstance().subscribe(user, product);
 	}
 	
 	/**
@@ -262,8 +301,8 @@ public class UserCommandService {
 	 * @throws AlreadySubscribedException
 	 */
 	public void subscribeLastSale(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException {
-		verifyUser(userName, connId);
-		LastSalePublisher.getInstance().subscribe(connectedUsers.get(userName), product);
+		Subscriber user = verifyUser(userName, connId);
+		LastSalePublisher.getInstance().subscribe(user, product);
 	}
 	
 	
@@ -276,8 +315,8 @@ public class UserCommandService {
 	 * @throws AlreadySubscribedException
 	 */
 	public void subscribeMessages(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException {
-		verifyUser(userName, connId);
-		MessagePublisher.getInstance().subscribe(connectedUsers.get(userName), product);
+		Subscriber user = verifyUser(userName, connId);
+		MessagePublisher.getInstance().subscribe(user, product);
 	}
 	
 	
@@ -291,8 +330,8 @@ public class UserCommandService {
 	 * @throws AlreadySubscribedException
 	 */
 	public void subscribeTicker(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException {
-		verifyUser(userName, connId);
-		TickerPublisher.getInstance().subscribe(connectedUsers.get(userName), product);
+		Subscriber user = verifyUser(userName, connId);
+		TickerPublisher.getInstance().subscribe(user, product);
 	}
 	
 	
@@ -305,8 +344,8 @@ public class UserCommandService {
 	 * @throws NotSubscribedException
 	 */
 	public void unSubscribeCurrentMarket(String userName, long connId, String product) throws ConnectionException, NotSubscribedException{
-		verifyUser(userName, connId);
-		CurrentMarketPublisher.getInstance().unSubscribe(connectedUsers.get(userName), product);
+		Subscriber user = verifyUser(userName, connId);
+		CurrentMarketPublisher.getInstance().unSubscribe(user, product);
 	}
 	
 	
@@ -320,8 +359,8 @@ public class UserCommandService {
 	 * @throws NotSubscribedException
 	 */
 	public void unSubscribeLastSale(String userName, long connId, String product) throws ConnectionException, NotSubscribedException{
-		verifyUser(userName, connId);
-		LastSalePublisher.getInstance().unSubscribe(connectedUsers.get(userName), product);
+		Subscriber user = verifyUser(userName, connId);
+		LastSalePublisher.getInstance().unSubscribe(user, product);
 	}
 	
 	/**
@@ -334,8 +373,8 @@ public class UserCommandService {
 	 * @throws NotSubscribedException
 	 */
 	public void unSubscribeTicker(String userName, long connId, String product) throws ConnectionException, NotSubscribedException{
-		verifyUser(userName, connId);
-		TickerPublisher.getInstance().unSubscribe(connectedUsers.get(userName), product);
+		Subscriber user = verifyUser(userName, connId);
+		TickerPublisher.getInstance().unSubscribe(user, product);
 	}
 	
 	/**
@@ -348,8 +387,8 @@ public class UserCommandService {
 	 * @throws NotSubscribedException
 	 */
 	public void unSubscribeMessages(String userName, long connId, String product) throws ConnectionException, NotSubscribedException{
-		verifyUser(userName, connId);
-		MessagePublisher.getInstance().unSubscribe(connectedUsers.get(userName), product);
+		Subscriber user = verifyUser(userName, connId);
+		MessagePublisher.getInstance().unSubscribe(user, product);
 	}
 	
 	
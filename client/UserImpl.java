@@ -15,12 +15,14 @@ import java.sql.Timestamp;
 import messages.CancelMessage;
 import messages.FillMessage;
 import price.Price;
+import tradable.Side;
 import tradable.TradableDTO;
 
 public class UserImpl implements User {
 
 	private String userName;
 	private long connectionId;
+	private final CommandService service;//where this user's commands go
 	private Position position;//holds values of users stocks, etc
 	private UserDisplayManager userDisplayManager;
 	
@@ -32,7 +34,12 @@ public class UserImpl implements User {
 	
 	//CONSTRUCTOR----------//
 	public UserImpl(String userNameIn) throws DataValidationException {
+		this(userNameIn, UserCommandService.getInstance());
+	}
+
+	public UserImpl(String userNameIn, CommandService serviceIn) throws DataValidationException {
 		setUserName(userNameIn);
+		service = serviceIn;
 		position = new Position();
 	}
 
@@ -65,7 +72,6 @@ public class UserImpl implements User {
 		userDisplayManager.updateMarketActivity(summary);
 		position.updatePosition(fm.getProduct(), fm.getPrice(), fm.getSide(), fm.getVolume());
 			}}  catch(Exception e) {e.getMessage(); e.printStackTrace();}
-		System.out.println();
 	}
 
 	public void acceptMessage(CancelMessage cm) {		
@@ -75,7 +81,6 @@ public class UserImpl implements User {
 			String summary = "{" + timeStamp.toString() + "} Cancel Message: " + cm.toString();
 			userDisplayManager.updateMarketActivity(summary);
 			}} catch(Exception e) { e.printStackTrace(); e.getMessage(); }
-		System.out.println();
 	}
 
 	public void acceptMarketMessage(String message) {
@@ -100,12 +105,12 @@ public class UserImpl implements User {
 	}
 
 	public void connect() throws ConnectionException {
-		connectionId = UserCommandService.getInstance().connect(this);
-		availableStocks = UserCommandService.getInstance().getProducts(getUserName(), getConnectionId());
+		connectionId = service.connect(this);
+		availableStocks = service.getProducts(getUserName(), getConnectionId());
 	}
 
 	public void disConnect() throws ConnectionException {
-		UserCommandService.getInstance().disConnect(getUserName(), getConnectionId());
+		service.disConnect(getUserName(), getConnectionId());
 	}
 	
 	public void showMarketDisplay() throws Exception {
@@ -119,45 +124,45 @@ public class UserImpl implements User {
 	}
 
 
-	public String submitOrder(String product, Price price, int volume, String side) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException {
-		String id = UserCommandService.getInstance().submitOrder(getUserName(), getConnectionId(), product, price, volume, side);
-		TradableUserData tradable = new TradableUserData(getUserName(), product, side, id);
+	public String submitOrder(String product, Price price, int volume, Side side) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException {
+		String id = service.submitOrder(getUserName(), getConnectionId(), product, price, volume, side);
+		TradableUserData tradable = new TradableUserData(getUserName(), side, id, product);
 		userOrders.add(tradable);
 		return id;
 	}
 
 
 
-	public void submitOrderCancel(String product, String side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException, ConnectionException {
-		UserCommandService.getInstance().submitOrderCancel(getUserName(), getConnectionId(), product, side, orderId);
+	public void submitOrderCancel(String product, Side side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException, ConnectionException {
+		service.submitOrderCancel(getUserName(), getConnectionId(), product, side, orderId);
 	}
 
 
 	public void submitQuote(String product, Price buyPrice, int buyVolume, Price sellPrice, int sellVolume) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException {
-		UserCommandService.getInstance().submitQuote(getUserName(), getConnectionId(), product, buyPrice, buyVolume, sellPrice, sellVolume);
+		service.submitQuote(getUserName(), getConnectionId(), product, buyPrice, buyVolume, sellPrice, sellVolume);
 	}
 
 
 	public void submitQuoteCancel(String product) throws ConnectionException, InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException {
-		UserCommandService.getInstance().submitQuoteCancel(getUserName(), getConnectionId(), product);
+		service.submitQuoteCancel(getUserName(), getConnectionId(), product);
 	}
 
 	public void subscribeCurrentMarket(String product) throws ConnectionException, AlreadySubscribedException {
-		UserCommandService.getInstance().subscribeCurrentMarket(getUserName(), getConnectionId(), product);
+		service.subscribeCurrentMarket(getUserName(), getConnectionId(), product);
 	}
 
 
 	public void subscribeLastSale(String product) throws ConnectionException, AlreadySubscribedException {
-		UserCommandService.getInstance().subscribeLastSale(getUserName(), getConnectionId(), product);
+		service.subscribeLastSale(getUserName(), getConnectionId(), product);
 	}
 
 
 	public void subscribeMessages(String product) throws ConnectionException, AlreadySubscribedException {
-		UserCommandService.getInstance().subscribeMessages(getUserName(), getConnectionId(), product);
+		service.subscribeMessages(getUserName(), getConnectionId(), product);
 	}
 
 	public void subscribeTicker(String product) throws ConnectionException, AlreadySubscribedException {
-		UserCommandService.getInstance().subscribeTicker(getUserName(), getConnectionId(), product);
+		service.subscribeTicker(getUserName(), getConnectionId(), product);
 	}
 
 
@@ -175,11 +180,11 @@ public class UserImpl implements User {
 
 
 	public String[][] getBookDepth(String product) throws ConnectionException, NoSuchProductException {
-		return UserCommandService.getInstance().getBookDepth(getUserName(), getConnectionId(), product);
+		return service.getBookDepth(getUserName(), getConnectionId(), product);
 	}
 
 	public String getMarketState() throws ConnectionException {
-		return UserCommandService.getInstance().getMarketState(getUserName(), getConnectionId());
+		return service.getMarketState(getUserName(), getConnectionId());
 	}
 
 
@@ -206,7 +211,7 @@ public class UserImpl implements User {
 	}
 
 	public ArrayList<TradableDTO> getOrdersWithRemainingQty(String product) throws ConnectionException {
-		return UserCommandService.getInstance().getOrdersWithRemainingQty(getUserName(), getConnectionId(), product);
+		return service.getOrdersWithRemainingQty(getUserName(), getConnectionId(), product);
 	}
 	
 	
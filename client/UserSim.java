@@ -1,16 +1,23 @@
 package client;
 
 import driver.MainAutomatedTest;
+import exceptions.ConnectionException;
 import exceptions.InvalidPriceException;
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import price.Price;
 import price.PriceFactory;
-import book.ProductService;
+import tradable.Side;
 
 public class UserSim implements Runnable {
 
+    // The kinds of activity a simulated user performs
+    public enum Event {
+        QUOTE, QUOTE_CANCEL, ORDER, ORDER_CANCEL, BOOK_DEPTH
+    }
+
     private User user;
     private boolean running = true;
     private boolean showDisplay = false;
@@ -61,8 +68,7 @@ public class UserSim implements Runnable {
         System.out.println("Simulated user '" + user.getUserName() + "' starting trading activity - " + runDuration / 1000 + " second duration.");
         long start = System.currentTimeMillis();
         try {
-            user.connect();
-            subscribeUser(user);
+            connectAndSubscribe();
             if (showDisplay) {
                 user.showMarketDisplay();
             }
@@ -90,8 +96,16 @@ public class UserSim implements Runnable {
         }
     }
 
+    /**
+     * Connect the user and subscribe it to every product, as run() does before trading
+     */
+    public void connectAndSubscribe() throws ConnectionException {
+        user.connect();
+        subscribeUser(user);
+    }
+
     private void subscribeUser(User u) {
-        for (String s : ProductService.getInstance().getProductList()) {
+        for (String s : u.getProductList()) {
             try {
                 u.subscribeCurrentMarket(s);
                 u.subscribeLastSale(s);
@@ -104,34 +118,54 @@ public class UserSim implements Runnable {
     }
 
     private void doRandomEvent() throws Exception {
+        doEvent(randomEvent());
+    }
 
-        double num = Math.random();
+    /**
+     * Pick the next activity with the simulated user mix: 70% quote activity (85% quotes, 15% quote cancels), 20% order
+     * activity (55% orders, 45% order cancels) and 10% book depth requests.
+     */
+    public static Event randomEvent() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double num = random.nextDouble();
 
         if (num < 0.70) // Quote
         {
-            double next = Math.random();
-            if (next < 0.85) {
-                makeQuote();
-            } else {
-                makeQuoteCancel();
-            }
+            return random.nextDouble() < 0.85 ? Event.QUOTE : Event.QUOTE_CANCEL;
         } else if (num < 0.9) // Order
         {
-            double next = Math.random();
-            if (next < 0.55) {
-                makeOrder();
+            return random.nextDouble() < 0.55 ? Event.ORDER : Event.ORDER_CANCEL;
+        } else {
+            return Event.BOOK_DEPTH;
+        }
+    }
 
-            } else {
+    /**
+     * Perform one activity as this simulated user
+     */
+    public void doEvent(Event event) throws Exception {
+        switch (event) {
+            case QUOTE:
+                makeQuote();
+                break;
+            case QUOTE_CANCEL:
+                makeQuoteCancel();
+                break;
+            case ORDER:
+                makeOrder();
+                break;
+            case ORDER_CANCEL:
                 makeOrderCancel();
-            }
-        } else {
-            makeBookDepth();
+                break;
+            case BOOK_DEPTH:
+                makeBookDepth();
+                break;
         }
     }
 
     private void makeBookDepth() throws Exception {
         ArrayList<String> list = user.getProductList();
-        String product = list.get((int) (Math.random() * list.size()));
+        String product = list.get(ThreadLocalRandom.current().nextInt(list.size()));
         String[][] bd = user.getBookDepth(product);
         //printBookDepth(bd);
         bookDepthCount++;
@@ -142,7 +176,7 @@ public class UserSim implements Runnable {
         if (list.isEmpty()) {
             return;
         }
-        TradableUserData order = list.get((int) (Math.random() * list.size()));
+        TradableUserData order = list.get(ThreadLocalRandom.current().nextInt(list.size()));
 
         user.submitOrderCancel(order.getProduct(), order.getSide(), order.getOrderId());
         orderCxlCount++;
@@ -150,8 +184,8 @@ public class UserSim implements Runnable {
 
     private void makeOrder() throws Exception {
         ArrayList<String> list = user.getProductList();
-        String product = list.get((int) (Math.random() * list.size()));
-        String side = makeRandomSide(); // This should match your format for storing a side - enum, String, etc
+        String product = list.get(ThreadLocalRandom.current().nextInt(list.size()));
+        Side side = makeRandomSide();
         Price p = makeRandomOrderPrice(side, product);
         int v = makeRandomVolume(product);
 
@@ -161,18 +195,18 @@ public class UserSim implements Runnable {
 
     private void makeQuoteCancel() throws Exception {
         ArrayList<String> list = user.getProductList();
-        String product = list.get((int) (Math.random() * list.size()));
+        String product = list.get(ThreadLocalRandom.current().nextInt(list.size()));
         user.submitQuoteCancel(product);
         quoteCxlCount++;
     }
 
     private void makeQuote() throws Exception {
         ArrayList<String> list = user.getProductList();
-        String product = list.get((int) (Math.random() * list.size()));
-        Price bp = makeRandomPrice("BUY", product); // This should match your format for storing a side - enum, String, etc
+        String product = list.get(ThreadLocalRandom.current().nextInt(list.size()));
+        Price bp = makeRandomPrice(Side.BUY, product);
         int bv = makeRandomVolume(product);
 
-        Price sp = makeRandomPrice("SELL", product); // This should m`atch your format for storing a side - enum, String, etc
+        Price sp = makeRandomPrice(Side.SELL, product);
         int sv = makeRandomVolume(product);
 
 
@@ -188,41 +222,41 @@ public class UserSim implements Runnable {
         }
     }
 
-    private String makeRandomSide() { // This should match your format for storing a side - enum, String, etc
-        if (Math.random() < 0.5) {
-            return "BUY"; // This should match your format for storing a side - enum, String, etc
+    private Side makeRandomSide() {
+        if (ThreadLocalRandom.current().nextDouble() < 0.5) {
+            return Side.BUY;
         } else {
-            return "SELL"; // This should match your format for storing a side - enum, String, etc
+            return Side.SELL;
         } 
     }
 
-    private Price makeRandomOrderPrice(String side, String product) { // This should match your format for storing a side - enum, String, etc
+    private Price makeRandomOrderPrice(Side side, String product) {
 
-        if (Math.random() < 0.1) {
+        if (ThreadLocalRandom.current().nextDouble() < 0.1) {
             return PriceFactory.makeMarketPrice();
         } else {
             return makeRandomPrice(side, product);
         }
     }
 
-    private Price makeRandomPrice(String side, String product) { // This should match your format for storing a side - enum, String, etc
+    private Price makeRandomPrice(Side side, String product) {
 
-        double priceBase = (side == "BUY" ? UserSimSettings.getBuyPriceBase(product) : UserSimSettings.getSellPriceBase(product)); // This should match your format for storing a side - enum, String, etc
+        double priceBase = (side == Side.BUY ? UserSimSettings.getBuyPriceBase(product) : UserSimSettings.getSellPriceBase(product));
 
         double price = priceBase * (1 - UserSimSettings.priceVariance);
-        price += priceBase * (UserSimSettings.priceVariance * 2) * Math.random();
+        price += priceBase * (UserSimSettings.priceVariance * 2) * ThreadLocalRandom.current().nextDouble();
 
-        return PriceFactory.makeLimitPrice(String.format("%.2f", price));
+        return PriceFactory.makeLimitPrice(Math.round(price * 100));
     }
 
     private int makeRandomVolume(String product) {
         int vol = (int) (UserSimSettings.getVolumeBase(product) * (1 - UserSimSettings.volumeVariance));
-        vol += UserSimSettings.getVolumeBase(product) * (UserSimSettings.volumeVariance * 2) * Math.random();
+        vol += UserSimSettings.getVolumeBase(product) * (UserSimSettings.volumeVariance * 2) * ThreadLocalRandom.current().nextDouble();
         return vol;
     }
 
     private void waitRandomTime() {
-        int waitTime = (int) ((0.75 * waitBase) + (0.5 * waitBase * Math.random()));
+        int waitTime = (int) ((0.75 * waitBase) + (0.5 * waitBase * ThreadLocalRandom.current().nextDouble()));
 
         synchronized (this) {
             try {
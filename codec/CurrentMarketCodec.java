@@ -0,0 +1,110 @@
+package codec;
+
+import java.nio.ByteBuffer;
+
+import price.Price;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Flyweight for a current market update: the best BUY and SELL price of a
+ *product and the volume at each.  The binary form of a MarketDataDTO.
+ ***************************************************************************/
+public final class CurrentMarketCodec extends Flyweight {
+
+	public static final int TEMPLATE_ID = 1;
+	public static final int BLOCK_LENGTH = 32;
+
+	private static final int SYMBOL_OFFSET = 0;
+	private static final int BUY_PRICE_OFFSET = 8;
+	private static final int BUY_VOLUME_OFFSET = 16;
+	private static final int SELL_PRICE_OFFSET = 20;
+	private static final int SELL_VOLUME_OFFSET = 28;
+
+	/**
+	 * Wrap a buffer to encode a message at the given offset
+	 */
+	public CurrentMarketCodec wrap(ByteBuffer b, int off) {
+		wrapBuffer(b, off, BLOCK_LENGTH);
+		return this;
+	}
+
+	/**
+	 * Wrap an encoded message, whose header gave its block length
+	 */
+	public CurrentMarketCodec wrap(ByteBuffer b, int off, int blockLength) {
+		wrapBuffer(b, off, blockLength);
+		return this;
+	}
+
+	public int templateId() {
+		return TEMPLATE_ID;
+	}
+
+	public int blockLength() {
+		return BLOCK_LENGTH;
+	}
+
+	public String symbol() {
+		return getSymbol(SYMBOL_OFFSET);
+	}
+
+	public boolean symbolEquals(String symbol) {
+		return symbolEquals(SYMBOL_OFFSET, symbol);
+	}
+
+	public CurrentMarketCodec symbol(String symbol) {
+		putSymbol(SYMBOL_OFFSET, symbol);
+		return this;
+	}
+
+	public Price buyPrice() {
+		return getPrice(BUY_PRICE_OFFSET);
+	}
+
+	/**
+	 * @return - the BUY price in cents, or MARKET_PRICE
+	 */
+	public long buyPriceValue() {
+		return getPriceValue(BUY_PRICE_OFFSET);
+	}
+
+	public CurrentMarketCodec buyPrice(Price p) {
+		putPrice(BUY_PRICE_OFFSET, p);
+		return this;
+	}
+
+	public int buyVolume() {
+		return buffer.getInt(offset + BUY_VOLUME_OFFSET);
+	}
+
+	public CurrentMarketCodec buyVolume(int volume) {
+		buffer.putInt(offset + BUY_VOLUME_OFFSET, volume);
+		return this;
+	}
+
+	public Price sellPrice() {
+		return getPrice(SELL_PRICE_OFFSET);
+	}
+
+	/**
+	 * @return - the SELL price in cents, or MARKET_PRICE
+	 */
+	public long sellPriceValue() {
+		return getPriceValue(SELL_PRICE_OFFSET);
+	}
+
+	public CurrentMarketCodec sellPrice(Price p) {
+		putPrice(SELL_PRICE_OFFSET, p);
+		return this;
+	}
+
+	public int sellVolume() {
+		return buffer.getInt(offset + SELL_VOLUME_OFFSET);
+	}
+
+	public CurrentMarketCodec sellVolume(int volume) {
+		buffer.putInt(offset + SELL_VOLUME_OFFSET, volume);
+		return this;
+	}
+}
@@ -0,0 +1,60 @@
+package codec;
+
+import java.nio.ByteBuffer;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Reads the MessageHeader of an encoded event and hands an EventHandler the
+ *matching flyweight, wrapped in place.  Not thread safe: each decoding
+ *thread needs its own.
+ ***************************************************************************/
+public final class EventDecoder {
+
+	private final MessageHeader header = new MessageHeader();
+	private final CurrentMarketCodec currentMarket = new CurrentMarketCodec();
+	private final LastSaleCodec lastSale = new LastSaleCodec();
+	private final TickerCodec ticker = new TickerCodec();
+	private final FillCodec fill = new FillCodec();
+	private final CancelCodec cancel = new CancelCodec();
+
+	/**********************************************************
+	 * @param b - buffer holding the event
+	 * @param offset - where its MessageHeader starts
+	 * @param handler - receives the decoded event
+	 * @return - length of the event, header included, or -1 when it is
+	 * from another schema or a message this decoder does not know
+	 **********************************************************/
+	public int decode(ByteBuffer b, int offset, EventHandler handler) {
+		header.wrap(b, offset);
+		if (header.schemaId() != MessageHeader.SCHEMA_ID) return -1;
+		int body = offset + MessageHeader.ENCODED_LENGTH;
+		int blockLength = header.blockLength();
+		Flyweight message;
+		switch (header.templateId()) {
+		case CurrentMarketCodec.TEMPLATE_ID:
+			handler.onCurrentMarket(currentMarket.wrap(b, body, blockLength));
+			message = currentMarket;
+			break;
+		case LastSaleCodec.TEMPLATE_ID:
+			handler.onLastSale(lastSale.wrap(b, body, blockLength));
+			message = lastSale;
+			break;
+		case TickerCodec.TEMPLATE_ID:
+			handler.onTicker(ticker.wrap(b, body, blockLength));
+			message = ticker;
+			break;
+		case FillCodec.TEMPLATE_ID:
+			handler.onFill(fill.wrap(b, body, blockLength));
+			message = fill;
+			break;
+		case CancelCodec.TEMPLATE_ID:
+			handler.onCancel(cancel.wrap(b, body, blockLength));
+			message = cancel;
+			break;
+		default:
+			return -1;
+		}
+		return MessageHeader.ENCODED_LENGTH + message.encodedLength();
+	}
+}
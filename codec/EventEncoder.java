@@ -0,0 +1,85 @@
+package codec;
+
+import java.nio.ByteBuffer;
+
+import messages.CancelMessage;
+import messages.FillMessage;
+import price.Price;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Encodes whole events - MessageHeader and body - into a buffer it owns,
+ *reusing one flyweight of each kind.  Not thread safe: each publishing
+ *thread needs its own.
+ ***************************************************************************/
+public final class EventEncoder {
+
+	private final ByteBuffer buffer;
+	private final MessageHeader header = new MessageHeader();
+	private final CurrentMarketCodec currentMarket = new CurrentMarketCodec();
+	private final LastSaleCodec lastSale = new LastSaleCodec();
+	private final TickerCodec ticker = new TickerCodec();
+	private final FillCodec fill = new FillCodec();
+	private final CancelCodec cancel = new CancelCodec();
+
+	public EventEncoder() {
+		this(ByteBuffer.allocateDirect(1 << 16));
+	}
+
+	public EventEncoder(ByteBuffer b) {
+		buffer = b;
+	}
+
+	public ByteBuffer buffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return - length of the event written at offset, header included
+	 */
+	public int encodeCurrentMarket(int offset, String symbol, Price buyPrice, int buyVolume, Price sellPrice, int sellVolume) {
+		header.wrap(buffer, offset).encode(currentMarket);
+		currentMarket.wrap(buffer, offset + MessageHeader.ENCODED_LENGTH).symbol(symbol)
+				.buyPrice(buyPrice).buyVolume(buyVolume).sellPrice(sellPrice).sellVolume(sellVolume);
+		return MessageHeader.ENCODED_LENGTH + currentMarket.encodedLength();
+	}
+
+	/**
+	 * @return - length of the event written at offset, header included
+	 */
+	public int encodeLastSale(int offset, String symbol, Price price, int volume) {
+		header.wrap(buffer, offset).encode(lastSale);
+		lastSale.wrap(buffer, offset + MessageHeader.ENCODED_LENGTH).symbol(symbol).price(price).volume(volume);
+		return MessageHeader.ENCODED_LENGTH + lastSale.encodedLength();
+	}
+
+	/**
+	 * @return - length of the event written at offset, header included
+	 */
+	public int encodeTicker(int offset, String symbol, Price price, char direction) {
+		header.wrap(buffer, offset).encode(ticker);
+		ticker.wrap(buffer, offset + MessageHeader.ENCODED_LENGTH).symbol(symbol).price(price).direction(direction);
+		return MessageHeader.ENCODED_LENGTH + ticker.encodedLength();
+	}
+
+	/**
+	 * @return - length of the event written at offset, header included
+	 */
+	public int encodeFill(int offset, FillMessage fm) {
+		header.wrap(buffer, offset).encode(fill);
+		fill.wrap(buffer, offset + MessageHeader.ENCODED_LENGTH).symbol(fm.getProduct()).price(fm.getPrice())
+				.volume(fm.getVolume()).side(fm.getSide()).strings(fm.getUser(), fm.getId(), fm.getDetails());
+		return MessageHeader.ENCODED_LENGTH + fill.encodedLength();
+	}
+
+	/**
+	 * @return - length of the event written at offset, header included
+	 */
+	public int encodeCancel(int offset, CancelMessage cm) {
+		header.wrap(buffer, offset).encode(cancel);
+		cancel.wrap(buffer, offset + MessageHeader.ENCODED_LENGTH).symbol(cm.getProduct()).price(cm.getPrice())
+				.volume(cm.getVolume()).side(cm.getSide()).strings(cm.getUser(), cm.getId(), cm.getDetails());
+		return MessageHeader.ENCODED_LENGTH + cancel.encodedLength();
+	}
+}
@@ -0,0 +1,21 @@
+package codec;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Called by an EventDecoder with a flyweight wrapped around each event it
+ *decodes.  The flyweight is reused for the next event, so anything needed
+ *later has to be read out of it during the call.
+ ***************************************************************************/
+public interface EventHandler {
+
+	void onCurrentMarket(CurrentMarketCodec currentMarket);
+
+	void onLastSale(LastSaleCodec lastSale);
+
+	void onTicker(TickerCodec ticker);
+
+	void onFill(FillCodec fill);
+
+	void onCancel(CancelCodec cancel);
+}
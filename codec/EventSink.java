@@ -0,0 +1,21 @@
+package codec;
+
+import java.nio.ByteBuffer;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Receives events already encoded - a MessageHeader followed by the message
+ *body - from a Publisher.  It is called on the publishing thread and the
+ *bytes are only good for the length of the call, so a sink should copy or
+ *write them out and return.
+ ***************************************************************************/
+public interface EventSink {
+
+	/**
+	 * @param buffer - holds the encoded event
+	 * @param offset - where the MessageHeader starts
+	 * @param length - header and body length
+	 */
+	void onEvent(ByteBuffer buffer, int offset, int length);
+}
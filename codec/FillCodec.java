@@ -0,0 +1,34 @@
+package codec;
+
+import java.nio.ByteBuffer;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Flyweight for the fill (trade) of an order or quote-side - the binary
+ *form of a FillMessage.
+ ***************************************************************************/
+public final class FillCodec extends OrderEventCodec {
+
+	public static final int TEMPLATE_ID = 4;
+
+	/**
+	 * Wrap a buffer to encode a message at the given offset
+	 */
+	public FillCodec wrap(ByteBuffer b, int off) {
+		wrapBuffer(b, off, BLOCK_LENGTH);
+		return this;
+	}
+
+	/**
+	 * Wrap an encoded message, whose header gave its block length
+	 */
+	public FillCodec wrap(ByteBuffer b, int off, int blockLength) {
+		wrapBuffer(b, off, blockLength);
+		return this;
+	}
+
+	public int templateId() {
+		return TEMPLATE_ID;
+	}
+}
@@ -0,0 +1,174 @@
+package codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import price.Price;
+import price.PriceFactory;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Base of the message flyweights.  A flyweight is wrapped around a buffer
+ *at an offset and reads and writes its fields in place, at fixed offsets
+ *from the start of the message body, so encoding and decoding copy nothing
+ *and allocate nothing beyond the Strings a caller asks for.  One flyweight
+ *can be rewrapped for message after message.
+ *
+ *Every message is little-endian and made of a fixed-length block, which
+ *a newer schema version may only extend at the end, optionally followed
+ *by variable-length fields.  Wrapping a buffer sets its byte order.
+ ***************************************************************************/
+public abstract class Flyweight {
+
+	// symbols are fixed-length ASCII, padded with zero bytes
+	public static final int SYMBOL_LENGTH = 8;
+	// stored in place of the price value for a MKT price
+	public static final long MARKET_PRICE = Long.MIN_VALUE;
+
+	protected ByteBuffer buffer;
+	protected int offset;
+	// block length the wrapped message was encoded with - variable-length fields start after it
+	protected int actingBlockLength;
+
+	Flyweight() {
+	}
+
+	final void wrapBuffer(ByteBuffer b, int off, int blockLength) {
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		buffer = b;
+		offset = off;
+		actingBlockLength = blockLength;
+	}
+
+	public ByteBuffer buffer() {
+		return buffer;
+	}
+
+	public int offset() {
+		return offset;
+	}
+
+	/**
+	 * @return - identifies the message type in the MessageHeader
+	 */
+	public abstract int templateId();
+
+	/**
+	 * @return - length of the fixed-length block
+	 */
+	public abstract int blockLength();
+
+	/**
+	 * @return - length of the whole message body, block and variable-length fields
+	 */
+	public int encodedLength() {
+		return actingBlockLength;
+	}
+
+	/**
+	 * @param symbol - a product symbol
+	 * @return - whether the symbol fits a symbol field: 1 to SYMBOL_LENGTH ASCII characters, none of them zero
+	 */
+	public static boolean isValidSymbol(String symbol) {
+		int length = symbol.length();
+		if (length == 0 || length > SYMBOL_LENGTH) return false;
+		for (int i = 0; i < length; i++) {
+			char c = symbol.charAt(i);
+			if (c == 0 || c > 0x7F) return false;
+		}
+		return true;
+	}
+
+	// ProductService only creates products whose symbols are valid, see isValidSymbol
+	final void putSymbol(int at, String symbol) {
+		int length = symbol.length();
+		if (length > SYMBOL_LENGTH)
+			throw new IllegalArgumentException("Symbol longer than " + SYMBOL_LENGTH + " characters: " + symbol);
+		int base = offset + at;
+		for (int i = 0; i < SYMBOL_LENGTH; i++) {
+			char c = i < length ? symbol.charAt(i) : 0;
+			if (c > 0x7F) throw new IllegalArgumentException("Symbol is not ASCII: " + symbol);
+			buffer.put(base + i, (byte) c);
+		}
+	}
+
+	final String getSymbol(int at) {
+		int base = offset + at;
+		int length = 0;
+		while (length < SYMBOL_LENGTH && buffer.get(base + length) != 0)
+			length++;
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = (char) buffer.get(base + i);
+		return new String(chars);
+	}
+
+	/**
+	 * Compare a symbol field with a String without decoding it
+	 */
+	final boolean symbolEquals(int at, String symbol) {
+		int length = symbol.length();
+		if (length > SYMBOL_LENGTH) return false;
+		int base = offset + at;
+		for (int i = 0; i < SYMBOL_LENGTH; i++) {
+			int c = i < length ? symbol.charAt(i) : 0;
+			if (buffer.get(base + i) != c) return false;
+		}
+		return true;
+	}
+
+	final void putPrice(int at, Price p) {
+		buffer.putLong(offset + at, p.getIsMarket() ? MARKET_PRICE : p.getPrice());
+	}
+
+	final long getPriceValue(int at) {
+		return buffer.getLong(offset + at);
+	}
+
+	// Prices come from the PriceFactory, so common values are shared rather than allocated
+	final Price getPrice(int at) {
+		long value = buffer.getLong(offset + at);
+		return value == MARKET_PRICE ? PriceFactory.makeMarketPrice() : PriceFactory.makeLimitPrice(value);
+	}
+
+	/**
+	 * Write a String as an unsigned 16 bit length followed by its UTF-8 bytes
+	 *
+	 * @param at - where to write, from the start of the message body
+	 * @return - the number of bytes written
+	 */
+	final int putVarString(int at, String s) {
+		int base = offset + at;
+		int length = s.length();
+		boolean ascii = length <= 0xFFFF;
+		for (int i = 0; i < length && ascii; i++)
+			ascii = s.charAt(i) < 0x80;
+		if (ascii) {
+			buffer.putShort(base, (short) length);
+			for (int i = 0; i < length; i++)
+				buffer.put(base + 2 + i, (byte) s.charAt(i));
+			return 2 + length;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) throw new IllegalArgumentException("String longer than 65535 bytes");
+		buffer.putShort(base, (short) bytes.length);
+		for (int i = 0; i < bytes.length; i++)
+			buffer.put(base + 2 + i, bytes[i]);
+		return 2 + bytes.length;
+	}
+
+	final int varStringLength(int at) {
+		return 2 + (buffer.getShort(offset + at) & 0xFFFF);
+	}
+
+	final String getVarString(int at) {
+		int base = offset + at;
+		int length = buffer.getShort(base) & 0xFFFF;
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = buffer.get(base + 2 + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
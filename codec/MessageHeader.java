@@ -0,0 +1,78 @@
+package codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *The eight bytes in front of every encoded message: the length of the
+ *message's fixed block, which message it is, and the schema and version
+ *it was encoded with.  A decoder that knows an older version of a message
+ *uses the block length to step over fields it does not know about.
+ ***************************************************************************/
+public final class MessageHeader {
+
+	public static final int ENCODED_LENGTH = 8;
+	public static final int SCHEMA_ID = 1;
+	public static final int SCHEMA_VERSION = 1;
+
+	private static final int BLOCK_LENGTH_OFFSET = 0;
+	private static final int TEMPLATE_ID_OFFSET = 2;
+	private static final int SCHEMA_ID_OFFSET = 4;
+	private static final int VERSION_OFFSET = 6;
+
+	private ByteBuffer buffer;
+	private int offset;
+
+	public MessageHeader wrap(ByteBuffer b, int off) {
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		buffer = b;
+		offset = off;
+		return this;
+	}
+
+	/**
+	 * Fill the header in for a message about to be encoded after it
+	 */
+	public MessageHeader encode(Flyweight message) {
+		return blockLength(message.blockLength()).templateId(message.templateId())
+				.schemaId(SCHEMA_ID).version(SCHEMA_VERSION);
+	}
+
+	public int blockLength() {
+		return buffer.getShort(offset + BLOCK_LENGTH_OFFSET) & 0xFFFF;
+	}
+
+	public MessageHeader blockLength(int length) {
+		buffer.putShort(offset + BLOCK_LENGTH_OFFSET, (short) length);
+		return this;
+	}
+
+	public int templateId() {
+		return buffer.getShort(offset + TEMPLATE_ID_OFFSET) & 0xFFFF;
+	}
+
+	public MessageHeader templateId(int id) {
+		buffer.putShort(offset + TEMPLATE_ID_OFFSET, (short) id);
+		return this;
+	}
+
+	public int schemaId() {
+		return buffer.getShort(offset + SCHEMA_ID_OFFSET) & 0xFFFF;
+	}
+
+	public MessageHeader schemaId(int id) {
+		buffer.putShort(offset + SCHEMA_ID_OFFSET, (short) id);
+		return this;
+	}
+
+	public int version() {
+		return buffer.getShort(offset + VERSION_OFFSET) & 0xFFFF;
+	}
+
+	public MessageHeader version(int v) {
+		buffer.putShort(offset + VERSION_OFFSET, (short) v);
+		return this;
+	}
+}
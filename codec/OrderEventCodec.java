@@ -0,0 +1,110 @@
+package codec;
+
+import price.Price;
+import tradable.Side;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Layout shared by the fill and cancel flyweights, which carry the same
+ *fields as the FillMessage and CancelMessage they encode.  The fixed block
+ *holds the product, price, volume and side; the user, the order or quote
+ *id and the details follow as variable-length fields, and are written all
+ *at once by strings(...).
+ ***************************************************************************/
+public abstract class OrderEventCodec extends Flyweight {
+
+	public static final int BLOCK_LENGTH = 21;
+
+	private static final int SYMBOL_OFFSET = 0;
+	private static final int PRICE_OFFSET = 8;
+	private static final int VOLUME_OFFSET = 16;
+	private static final int SIDE_OFFSET = 20;
+
+	OrderEventCodec() {
+	}
+
+	public int blockLength() {
+		return BLOCK_LENGTH;
+	}
+
+	public int encodedLength() {
+		int at = actingBlockLength;
+		at += varStringLength(at);
+		at += varStringLength(at);
+		return at + varStringLength(at);
+	}
+
+	public String symbol() {
+		return getSymbol(SYMBOL_OFFSET);
+	}
+
+	public boolean symbolEquals(String symbol) {
+		return symbolEquals(SYMBOL_OFFSET, symbol);
+	}
+
+	public OrderEventCodec symbol(String symbol) {
+		putSymbol(SYMBOL_OFFSET, symbol);
+		return this;
+	}
+
+	public Price price() {
+		return getPrice(PRICE_OFFSET);
+	}
+
+	/**
+	 * @return - the price in cents, or MARKET_PRICE
+	 */
+	public long priceValue() {
+		return getPriceValue(PRICE_OFFSET);
+	}
+
+	public OrderEventCodec price(Price p) {
+		putPrice(PRICE_OFFSET, p);
+		return this;
+	}
+
+	public int volume() {
+		return buffer.getInt(offset + VOLUME_OFFSET);
+	}
+
+	public OrderEventCodec volume(int volume) {
+		buffer.putInt(offset + VOLUME_OFFSET, volume);
+		return this;
+	}
+
+	public Side side() {
+		return buffer.get(offset + SIDE_OFFSET) == 'B' ? Side.BUY : Side.SELL;
+	}
+
+	public OrderEventCodec side(Side side) {
+		buffer.put(offset + SIDE_OFFSET, (byte) (side == Side.BUY ? 'B' : 'S'));
+		return this;
+	}
+
+	/**
+	 * Write the variable-length fields, after the fixed block
+	 */
+	public OrderEventCodec strings(String user, String id, String details) {
+		int at = actingBlockLength;
+		at += putVarString(at, user);
+		at += putVarString(at, id);
+		putVarString(at, details);
+		return this;
+	}
+
+	public String user() {
+		return getVarString(actingBlockLength);
+	}
+
+	public String id() {
+		int at = actingBlockLength;
+		return getVarString(at + varStringLength(at));
+	}
+
+	public String details() {
+		int at = actingBlockLength;
+		at += varStringLength(at);
+		return getVarString(at + varStringLength(at));
+	}
+}
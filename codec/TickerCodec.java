@@ -0,0 +1,83 @@
+package codec;
+
+import java.nio.ByteBuffer;
+
+import price.Price;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Flyweight for a ticker update: a product's last sale price and which way
+ *it moved - the same characters the TickerPublisher hands to Users.
+ ***************************************************************************/
+public final class TickerCodec extends Flyweight {
+
+	public static final int TEMPLATE_ID = 3;
+	public static final int BLOCK_LENGTH = 18;
+
+	private static final int SYMBOL_OFFSET = 0;
+	private static final int PRICE_OFFSET = 8;
+	private static final int DIRECTION_OFFSET = 16;
+
+	/**
+	 * Wrap a buffer to encode a message at the given offset
+	 */
+	public TickerCodec wrap(ByteBuffer b, int off) {
+		wrapBuffer(b, off, BLOCK_LENGTH);
+		return this;
+	}
+
+	/**
+	 * Wrap an encoded message, whose header gave its block length
+	 */
+	public TickerCodec wrap(ByteBuffer b, int off, int blockLength) {
+		wrapBuffer(b, off, blockLength);
+		return this;
+	}
+
+	public int templateId() {
+		return TEMPLATE_ID;
+	}
+
+	public int blockLength() {
+		return BLOCK_LENGTH;
+	}
+
+	public String symbol() {
+		return getSymbol(SYMBOL_OFFSET);
+	}
+
+	public boolean symbolEquals(String symbol) {
+		return symbolEquals(SYMBOL_OFFSET, symbol);
+	}
+
+	public TickerCodec symbol(String symbol) {
+		putSymbol(SYMBOL_OFFSET, symbol);
+		return this;
+	}
+
+	public Price price() {
+		return getPrice(PRICE_OFFSET);
+	}
+
+	/**
+	 * @return - the price in cents, or MARKET_PRICE
+	 */
+	public long priceValue() {
+		return getPriceValue(PRICE_OFFSET);
+	}
+
+	public TickerCodec price(Price p) {
+		putPrice(PRICE_OFFSET, p);
+		return this;
+	}
+
+	public char direction() {
+		return buffer.getChar(offset + DIRECTION_OFFSET);
+	}
+
+	public TickerCodec direction(char direction) {
+		buffer.putChar(offset + DIRECTION_OFFSET, direction);
+		return this;
+	}
+}
@@ -0,0 +1,61 @@
+package driver;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+import codec.CancelCodec;
+import codec.CurrentMarketCodec;
+import codec.EventHandler;
+import codec.FillCodec;
+import codec.LastSaleCodec;
+import codec.TickerCodec;
+import feed.FeedSubscriber;
+
+/**
+ * Read-only market data consumer: subscribes to the UDP feed an exchange started with LoadGenerator -feed port sends,
+ * and reports every second how many events arrived and how many went missing, were recovered or were lost.
+ * <p>
+ * Run: java driver.FeedMonitor [-feed port] [-seconds s]
+ */
+public class FeedMonitor {
+
+    public static void main(String[] args) throws Exception {
+        int port = 20000;
+        int seconds = 30;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-feed": port = Integer.parseInt(args[i + 1]); break;
+                case "-seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        AtomicLong currentMarkets = new AtomicLong();
+        AtomicLong lastSales = new AtomicLong();
+        AtomicLong tickers = new AtomicLong();
+        EventHandler counter = new EventHandler() {
+            public void onCurrentMarket(CurrentMarketCodec c) { currentMarkets.incrementAndGet(); }
+            public void onLastSale(LastSaleCodec c) { lastSales.incrementAndGet(); }
+            public void onTicker(TickerCodec c) { tickers.incrementAndGet(); }
+            public void onFill(FillCodec c) { }
+            public void onCancel(CancelCodec c) { }
+        };
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        FeedSubscriber subscriber = new FeedSubscriber(new InetSocketAddress(loopback, port),
+                new InetSocketAddress(loopback, port + 1), counter);
+        subscriber.start();
+        System.out.println(String.format("Reading the market data feed on port %d for %ds", port, seconds));
+        long previous = 0;
+        for (int s = 1; s <= seconds; s++) {
+            Thread.sleep(1000);
+            long delivered = subscriber.getDelivered();
+            System.out.println(String.format("%3ds %8d events/s (%d current market, %d last sale, %d ticker) %d gaps, %d recovered, %d lost",
+                    s, delivered - previous, currentMarkets.get(), lastSales.get(), tickers.get(),
+                    subscriber.getGaps(), subscriber.getRecovered(), subscriber.getLost()));
+            previous = delivered;
+        }
+        subscriber.close();
+    }
+}
@@ -0,0 +1,280 @@
+package driver;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import benchmark.LatencyHistogram;
+import book.ProductService;
+import client.User;
+import client.UserImpl;
+import client.UserSim;
+import client.UserSimSettings;
+import feed.MarketDataFeed;
+import gateway.GatewayServer;
+import gateway.RemoteUser;
+import messages.MarketMessage.MarketState;
+import publishers.CurrentMarketPublisher;
+import publishers.Dispatcher;
+
+/**
+ * Headless load generator: drives simulated users with the UserSim event mix at a fixed target rate, with no display and
+ * no waits between events, and reports latency per event type.
+ * <p>
+ * Scheduling is open loop. Event n of the run is due at start + n / rate no matter how long earlier events took; events
+ * are dealt round-robin to the users, each on its own thread. An event's response time is measured from when it was due,
+ * not from when its user got round to it, so a stall shows up in the latency of every event queued behind it instead of
+ * quietly lowering the send rate (coordinated omission). Service time - from actual start to finish - is reported next to
+ * it; the gap between the two is time spent waiting behind earlier events.
+ * <p>
+ * Run: java driver.LoadGenerator [-rate eventsPerSecond] [-users n] [-seconds s] [-warmup s] [-mode SYNCHRONIZED|EVENT_LOOP]
+ * [-delivery SYNCHRONOUS|ASYNCHRONOUS] [-slowConsumer DROP|CONFLATE|DISCONNECT] [-marketDataRate updatesPerSecond]
+ * [-distribution]
+ * <p>
+ * To keep the exchange in a process of its own, start it with -serve port - it opens the market and takes users through
+ * a GatewayServer on that port until killed - and run the load from other processes with -connect host:port. The
+ * trading system options go to the serving process.
+ * <p>
+ * -feed port also sends the market data as a sequenced UDP feed to that loopback port, with retransmissions served on
+ * the port after it; driver.FeedMonitor reads it.
+ */
+public class LoadGenerator {
+
+    private int rate = 10000;
+    private int users = 10;
+    private int seconds = 30;
+    private int warmupSeconds = 5;
+    private boolean distribution = false;
+    private ProductService.ExecutionMode mode = ProductService.ExecutionMode.SYNCHRONIZED;
+    private Dispatcher.Mode delivery = Dispatcher.Mode.SYNCHRONOUS;
+    private Dispatcher.SlowConsumerPolicy slowConsumer = Dispatcher.SlowConsumerPolicy.CONFLATE;
+    private int marketDataRate = 0;
+    private int servePort = -1;
+    private int feedPort = -1;
+    private String connectHost;
+    private int connectPort;
+
+    private final AtomicLong errors = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        generator.parseArgs(args);
+        if (generator.servePort >= 0) generator.serve();
+        else generator.run();
+        System.exit(0);
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-distribution")) {
+                distribution = true;
+            } else if (i + 1 < args.length) {
+                String value = args[++i];
+                switch (arg) {
+                    case "-rate": rate = Integer.parseInt(value); break;
+                    case "-users": users = Integer.parseInt(value); break;
+                    case "-seconds": seconds = Integer.parseInt(value); break;
+                    case "-warmup": warmupSeconds = Integer.parseInt(value); break;
+                    case "-mode": mode = ProductService.ExecutionMode.valueOf(value.toUpperCase()); break;
+                    case "-delivery": delivery = Dispatcher.Mode.valueOf(value.toUpperCase()); break;
+                    case "-slowConsumer": slowConsumer = Dispatcher.SlowConsumerPolicy.valueOf(value.toUpperCase()); break;
+                    case "-marketDataRate": marketDataRate = Integer.parseInt(value); break;
+                    case "-serve": servePort = Integer.parseInt(value); break;
+                    case "-feed": feedPort = Integer.parseInt(value); break;
+                    case "-connect":
+                        int colon = value.lastIndexOf(':');
+                        connectHost = value.substring(0, colon);
+                        connectPort = Integer.parseInt(value.substring(colon + 1));
+                        break;
+                    default: throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            } else {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+        }
+    }
+
+    private void serve() throws Exception {
+        setupTradingSystem();
+        ProductService.getInstance().setMarketState(MarketState.PREOPEN);
+        ProductService.getInstance().setMarketState(MarketState.OPEN);
+        GatewayServer server = new GatewayServer(servePort);
+        System.out.println(String.format("Exchange listening on port %d (%s, %s delivery)", server.getPort(), mode, delivery));
+        server.run();
+    }
+
+    private void run() throws Exception {
+        boolean remote = connectHost != null;
+        if (remote) addProductData();
+        else setupTradingSystem();
+
+        ArrayList<SimUser> sims = new ArrayList<SimUser>();
+        for (int i = 0; i < users; i++) {
+            User u = remote ? new RemoteUser("LOAD" + (i + 1), connectHost, connectPort) : new UserImpl("LOAD" + (i + 1));
+            UserSim sim = new UserSim(0, u, false);
+            sim.connectAndSubscribe();
+            sims.add(new SimUser(sim, i));
+        }
+
+        if (!remote) {
+            ProductService.getInstance().setMarketState(MarketState.PREOPEN);
+            ProductService.getInstance().setMarketState(MarketState.OPEN);
+        }
+
+        if (remote) {
+            System.out.println(String.format("Offering %d events/s from %d users for %ds after a %ds warmup (exchange at %s:%d)",
+                    rate, users, seconds, warmupSeconds, connectHost, connectPort));
+        } else {
+            System.out.println(String.format("Offering %d events/s from %d users for %ds after a %ds warmup (%s, %s delivery)",
+                    rate, users, seconds, warmupSeconds, mode, delivery));
+        }
+        long interval = 1000000000L / rate;
+        long start = System.nanoTime() + 10000000L;
+        long measureFrom = start + warmupSeconds * 1000000000L;
+        long end = measureFrom + seconds * 1000000000L;
+
+        CountDownLatch done = new CountDownLatch(users);
+        for (SimUser s : sims) {
+            s.schedule(start, interval, measureFrom, end, done);
+            new Thread(s, "Load-" + s.sim.getUserName()).start();
+        }
+        done.await();
+        if (!remote) ProductService.getInstance().setMarketState(MarketState.CLOSED);
+
+        report(sims, seconds);
+    }
+
+    private void setupTradingSystem() throws Exception {
+        ProductService.getInstance().setExecutionMode(mode);
+        Dispatcher.getInstance().setSlowConsumerPolicy(slowConsumer);
+        Dispatcher.getInstance().setMode(delivery);
+        CurrentMarketPublisher.getInstance().setMaxUpdateRate(marketDataRate);
+        if (feedPort >= 0) {
+            InetAddress loopback = InetAddress.getLoopbackAddress();
+            new MarketDataFeed(new InetSocketAddress(loopback, feedPort), new InetSocketAddress(loopback, feedPort + 1)).start();
+        }
+        ProductService.getInstance().createProduct("IBM");
+        ProductService.getInstance().createProduct("CBOE");
+        ProductService.getInstance().createProduct("GOOG");
+        ProductService.getInstance().createProduct("AAPL");
+        ProductService.getInstance().createProduct("GE");
+        ProductService.getInstance().createProduct("T");
+        addProductData();
+    }
+
+    private void addProductData() {
+        UserSimSettings.addProductData("IBM", 189.40, 189.60, 200);
+        UserSimSettings.addProductData("CBOE", 28.00, 28.15, 300);
+        UserSimSettings.addProductData("GOOG", 608.00, 608.75, 500);
+        UserSimSettings.addProductData("AAPL", 600.00, 601.00, 350);
+        UserSimSettings.addProductData("GE", 19.55, 19.95, 100);
+        UserSimSettings.addProductData("T", 34.25, 34.65, 250);
+    }
+
+    private void report(ArrayList<SimUser> sims, int measuredSeconds) {
+        EnumMap<UserSim.Event, LatencyHistogram> response = new EnumMap<UserSim.Event, LatencyHistogram>(UserSim.Event.class);
+        EnumMap<UserSim.Event, LatencyHistogram> service = new EnumMap<UserSim.Event, LatencyHistogram>(UserSim.Event.class);
+        LatencyHistogram allResponse = new LatencyHistogram();
+        for (UserSim.Event e : UserSim.Event.values()) {
+            response.put(e, new LatencyHistogram());
+            service.put(e, new LatencyHistogram());
+        }
+        for (SimUser s : sims) {
+            for (UserSim.Event e : UserSim.Event.values()) {
+                response.get(e).add(s.response.get(e));
+                service.get(e).add(s.service.get(e));
+                allResponse.add(s.response.get(e));
+            }
+        }
+
+        System.out.println();
+        System.out.println(String.format("Completed %d events in %ds: %.0f events/s achieved of %d offered, %d errors",
+                allResponse.getCount(), measuredSeconds, (double) allResponse.getCount() / measuredSeconds, rate, errors.get()));
+        if (delivery == Dispatcher.Mode.ASYNCHRONOUS && connectHost == null) {
+            Dispatcher d = Dispatcher.getInstance();
+            System.out.println(String.format("Delivery (%s): %d dropped, %d conflated, %d users disconnected",
+                    slowConsumer, d.getDropped(), d.getConflated(), d.getDisconnected()));
+        }
+        System.out.println(String.format("%-14s %-9s %s", "ALL", "response", allResponse.summary()));
+        for (UserSim.Event e : UserSim.Event.values()) {
+            System.out.println(String.format("%-14s %-9s %s", e, "response", response.get(e).summary()));
+            System.out.println(String.format("%-14s %-9s %s", "", "service", service.get(e).summary()));
+        }
+        if (distribution) {
+            for (UserSim.Event e : UserSim.Event.values()) {
+                System.out.println();
+                System.out.println(e + " response time (us)");
+                response.get(e).outputPercentileDistribution(System.out, 1000.0);
+            }
+        }
+    }
+
+    /**
+     * One simulated user's thread: performs every users-th event of the schedule and records its latencies.
+     */
+    private final class SimUser implements Runnable {
+
+        private final UserSim sim;
+        private final int index;
+        private final EnumMap<UserSim.Event, LatencyHistogram> response = new EnumMap<UserSim.Event, LatencyHistogram>(UserSim.Event.class);
+        private final EnumMap<UserSim.Event, LatencyHistogram> service = new EnumMap<UserSim.Event, LatencyHistogram>(UserSim.Event.class);
+        private long start, interval, measureFrom, end;
+        private CountDownLatch done;
+
+        SimUser(UserSim s, int i) {
+            sim = s;
+            index = i;
+            for (UserSim.Event e : UserSim.Event.values()) {
+                response.put(e, new LatencyHistogram());
+                service.put(e, new LatencyHistogram());
+            }
+        }
+
+        void schedule(long startNanos, long intervalNanos, long measureFromNanos, long endNanos, CountDownLatch latch) {
+            start = startNanos;
+            interval = intervalNanos;
+            measureFrom = measureFromNanos;
+            end = endNanos;
+            done = latch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (long n = index; ; n += users) {
+                    long due = start + n * interval;
+                    if (due >= end) break;
+                    long now;
+                    while ((now = System.nanoTime()) < due) {
+                        long wait = due - now;
+                        if (wait > 100000) LockSupport.parkNanos(wait - 50000);
+                        else Thread.yield();
+                    }
+
+                    UserSim.Event event = UserSim.randomEvent();
+                    try {
+                        sim.doEvent(event);
+                    } catch (Exception ex) {
+                        if (errors.incrementAndGet() <= 10) {
+                            Logger.getLogger(LoadGenerator.class.getName()).log(Level.WARNING, null, ex);
+                        }
+                    }
+                    long finished = System.nanoTime();
+                    if (due >= measureFrom) {
+                        response.get(event).record(finished - due);
+                        service.get(event).record(finished - now);
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import client.UserImpl;
 import client.UserSim;
 import client.UserSimSettings;
 
+import java.io.File;
 import java.util.concurrent.CountDownLatch;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -14,6 +15,8 @@ import javax.swing.JOptionPane;
 import exceptions.DataValidationException;
 import book.ProductService;
 import messages.MarketMessage.MarketState;
+import publishers.CurrentMarketPublisher;
+import publishers.Dispatcher;
 
 public class MainAutomatedTest {
 
@@ -32,12 +35,31 @@ public class MainAutomatedTest {
 
     private static void setupTradingSystem() {
         try {
-            ProductService.getInstance().createProduct("IBM");
-            ProductService.getInstance().createProduct("CBOE");
-            ProductService.getInstance().createProduct("GOOG");
-            ProductService.getInstance().createProduct("AAPL");
-            ProductService.getInstance().createProduct("GE");
-            ProductService.getInstance().createProduct("T");
+            // -Dexchange.journal=<file> rebuilds the books from that journal and keeps journaling to it,
+            // -Dexchange.snapshots=<dir> also recovers from, and every minute writes, book snapshots there
+            // -Dexchange.delivery=ASYNCHRONOUS delivers market data and messages to users off the trading threads,
+            // -Dexchange.slowConsumer=DROP|CONFLATE|DISCONNECT says what happens when a user falls too far behind,
+            // -Dexchange.marketDataRate=<n> sends each product's current market at most n times a second
+            String slowConsumer = System.getProperty("exchange.slowConsumer");
+            if (slowConsumer != null) {
+                Dispatcher.getInstance().setSlowConsumerPolicy(Dispatcher.SlowConsumerPolicy.valueOf(slowConsumer.toUpperCase()));
+            }
+            Dispatcher.getInstance().setMode(Dispatcher.Mode.valueOf(
+                    System.getProperty("exchange.delivery", "SYNCHRONOUS").toUpperCase()));
+            CurrentMarketPublisher.getInstance().setMaxUpdateRate(Integer.getInteger("exchange.marketDataRate", 0));
+            String journal = System.getProperty("exchange.journal");
+            String snapshots = System.getProperty("exchange.snapshots");
+            if (journal != null) {
+                ProductService.getInstance().openJournal(new File(journal), snapshots == null ? null : new File(snapshots), true);
+                if (snapshots != null) {
+                    ProductService.getInstance().scheduleSnapshots(60000);
+                }
+            }
+            for (String product : new String[]{"IBM", "CBOE", "GOOG", "AAPL", "GE", "T"}) {
+                if (!ProductService.getInstance().getProductList().contains(product)) {
+                    ProductService.getInstance().createProduct(product);
+                }
+            }
         } catch (Exception ex) {
             Logger.getLogger(MainAutomatedTest.class.getName()).log(Level.SEVERE, null, ex);
         }
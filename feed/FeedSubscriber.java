@@ -0,0 +1,321 @@
+package feed;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import codec.EventDecoder;
+import codec.EventHandler;
+import codec.MessageHeader;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Reads a MarketDataFeed and hands each event, in sequence, to an
+ *EventHandler on a thread of its own.
+ *
+ *A datagram that arrives ahead of its turn is a gap: it is held, and the
+ *missing messages are asked for from the feed's retransmission port.  If
+ *they do not come within the recovery timeout, after a few requests, they
+ *are counted as lost and the subscriber carries on from what it holds.
+ *Snapshots bring a subscriber that joined late, or lost messages, up to
+ *date.  Every message is the latest value of one kind for one symbol, so
+ *a message is only handed on when it is newer than the last one of its
+ *kind and symbol - whether it came in sequence, retransmitted or in a
+ *snapshot.
+ ***************************************************************************/
+public final class FeedSubscriber implements Runnable {
+
+	private static final int REQUEST_ATTEMPTS = 3;
+
+	private final EventHandler handler;
+	private final DatagramChannel feed;
+	private final DatagramChannel requests;
+	private final Selector selector;
+	private final EventDecoder decoder = new EventDecoder();
+	private final ByteBuffer in = ByteBuffer.allocate(Packet.MAX_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer request = ByteBuffer.allocate(Packet.REQUEST_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+
+	// touched only by the subscriber thread
+	private long session;
+	// next sequence number to hand on, 0 until the first datagram
+	private long expected;
+	// datagrams that arrived ahead of expected, by first sequence number
+	private final TreeMap<Long, ByteBuffer> held = new TreeMap<Long, ByteBuffer>();
+	private long requestDeadline;
+	// requests sent for the current gap, 0 when there is none
+	private int requestsSent;
+	// sequence number the current gap's requests ask up to
+	private long requestedTo;
+	// symbol, as the long its 8 bytes make, to the sequence number of the last message of each template handed on
+	private final HashMap<Long, long[]> lastSeqs = new HashMap<Long, long[]>();
+
+	private volatile long recoveryTimeout = TimeUnit.MILLISECONDS.toNanos(100);
+	private volatile boolean running = true;
+	private Thread thread;
+
+	private volatile long delivered;
+	private volatile long gaps;
+	private volatile long recovered;
+	private volatile long lost;
+
+	/**
+	 * @param feedAddress - multicast group or address the feed is sent to
+	 * @param retransmission - the feed's retransmission address
+	 * @param h - receives the events
+	 * @throws IOException
+	 */
+	public FeedSubscriber(InetSocketAddress feedAddress, InetSocketAddress retransmission, EventHandler h) throws IOException {
+		handler = h;
+		InetAddress address = feedAddress.getAddress();
+		if (address.isMulticastAddress()) {
+			feed = DatagramChannel.open(address instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+			feed.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			feed.bind(new InetSocketAddress(feedAddress.getPort()));
+			NetworkInterface nif = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+			feed.join(address, nif);
+		} else {
+			feed = DatagramChannel.open().bind(feedAddress);
+		}
+		feed.configureBlocking(false);
+		requests = DatagramChannel.open().connect(retransmission);
+		requests.configureBlocking(false);
+		selector = Selector.open();
+		feed.register(selector, SelectionKey.OP_READ);
+		requests.register(selector, SelectionKey.OP_READ);
+	}
+
+	/**
+	 * @param millis - how long to wait for a retransmission before asking again, and in the end giving up
+	 */
+	public void setRecoveryTimeout(long millis) {
+		recoveryTimeout = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	public long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * @return - times messages went missing
+	 */
+	public long getGaps() {
+		return gaps;
+	}
+
+	/**
+	 * @return - missing messages that were retransmitted
+	 */
+	public long getRecovered() {
+		return recovered;
+	}
+
+	/**
+	 * @return - missing messages given up on
+	 */
+	public long getLost() {
+		return lost;
+	}
+
+	public synchronized void start() {
+		if (thread != null) return;
+		thread = new Thread(this, "MarketData-Subscriber");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void close() throws InterruptedException {
+		running = false;
+		selector.wakeup();
+		Thread t = thread;
+		if (t != null) t.join();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				long wait = requestsSent == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(requestDeadline - System.nanoTime()));
+				selector.select(wait);
+				selector.selectedKeys().clear();
+				while (receive(feed) | receive(requests))
+					;
+				if (requestsSent > 0 && System.nanoTime() - requestDeadline >= 0) recoveryTimedOut();
+			}
+		} catch (IOException ex) {
+			Logger.getLogger(FeedSubscriber.class.getName()).log(Level.SEVERE, "Market data subscriber stopped", ex);
+		} finally {
+			try {
+				feed.close();
+				requests.close();
+				selector.close();
+			} catch (IOException ex) {
+				Logger.getLogger(FeedSubscriber.class.getName()).log(Level.WARNING, null, ex);
+			}
+		}
+	}
+
+	// Take one datagram from a channel, returning whether there was one
+	private boolean receive(DatagramChannel c) throws IOException {
+		in.clear();
+		if (c.receive(in) == null) return false;
+		in.flip();
+		if (in.remaining() < Packet.HEADER_LENGTH) return true;
+		long packetSession = in.getLong(Packet.SESSION_OFFSET);
+		if (packetSession != session) {
+			if (packetSession < session) return true; // left over from an earlier run of the feed
+			reset(packetSession);
+		}
+		byte type = in.get(Packet.TYPE_OFFSET);
+		if (type == Packet.SNAPSHOT) snapshot(in);
+		else sequenced(in, type == Packet.RETRANSMISSION);
+		return true;
+	}
+
+	// The feed restarted, and its sequence numbers with it
+	private void reset(long newSession) {
+		session = newSession;
+		expected = 0;
+		held.clear();
+		requestsSent = 0;
+		lastSeqs.clear();
+	}
+
+	private void sequenced(ByteBuffer p, boolean retransmitted) {
+		long first = p.getLong(Packet.SEQUENCE_OFFSET);
+		int count = p.getShort(Packet.COUNT_OFFSET) & 0xFFFF;
+		if (expected == 0) expected = first;
+		if (first + count <= expected && count > 0) return; // seen already
+		if (first > expected) {
+			if (retransmitted && requestsSent > 0) {
+				// the feed no longer holds the messages before first
+				lost += first - expected;
+				expected = first;
+			} else {
+				hold(p, first, count);
+				if (requestsSent == 0) {
+					gaps++;
+					requestMissing();
+				}
+				return;
+			}
+		}
+		deliverFrom(p, first, count, retransmitted);
+		drainHeld();
+	}
+
+	// Hand on the messages of a datagram from expected onwards
+	private void deliverFrom(ByteBuffer p, long first, int count, boolean retransmitted) {
+		int at = Packet.HEADER_LENGTH;
+		for (int i = 0; i < count; i++) {
+			int length = p.getShort(at) & 0xFFFF;
+			long seq = first + i;
+			if (seq >= expected) {
+				deliver(p, at + 2, seq);
+				if (retransmitted) recovered++;
+				expected = seq + 1;
+			}
+			at += 2 + length;
+		}
+		if (count == 0 && first > expected) expected = first;
+	}
+
+	// Carry on with held datagrams that are now in turn
+	private void drainHeld() {
+		while (!held.isEmpty() && held.firstKey() <= expected) {
+			Map.Entry<Long, ByteBuffer> e = held.pollFirstEntry();
+			ByteBuffer p = e.getValue();
+			deliverFrom(p, e.getKey(), p.getShort(Packet.COUNT_OFFSET) & 0xFFFF, false);
+		}
+		if (held.isEmpty()) {
+			requestsSent = 0;
+		} else if (held.firstKey() > expected && (requestsSent == 0 || expected >= requestedTo)) {
+			// another gap, further on
+			gaps++;
+			requestsSent = 0;
+			requestMissing();
+		}
+	}
+
+	private void hold(ByteBuffer p, long first, int count) {
+		ByteBuffer existing = held.get(first);
+		// a heartbeat shares its sequence number with the datagram after it
+		if (existing != null && (existing.getShort(Packet.COUNT_OFFSET) & 0xFFFF) >= count) return;
+		ByteBuffer copy = ByteBuffer.allocate(p.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+		copy.put(p.duplicate()).flip();
+		held.put(first, copy);
+	}
+
+	private void requestMissing() {
+		long missing = Math.min(held.firstKey() - expected, Packet.MAX_REQUEST);
+		requestedTo = expected + missing;
+		request.clear();
+		request.putLong(session).putLong(expected).putShort((short) missing).flip();
+		try {
+			requests.write(request);
+		} catch (IOException ex) {
+			Logger.getLogger(FeedSubscriber.class.getName()).log(Level.WARNING, "Retransmission request failed", ex);
+		}
+		requestsSent++;
+		requestDeadline = System.nanoTime() + recoveryTimeout;
+	}
+
+	private void recoveryTimedOut() {
+		if (held.isEmpty()) {
+			requestsSent = 0;
+			return;
+		}
+		if (requestsSent < REQUEST_ATTEMPTS) {
+			requestMissing();
+			return;
+		}
+		long next = held.firstKey();
+		lost += next - expected;
+		expected = next;
+		requestsSent = 0;
+		drainHeld();
+	}
+
+	private void snapshot(ByteBuffer p) {
+		long next = p.getLong(Packet.SEQUENCE_OFFSET);
+		int count = p.getShort(Packet.COUNT_OFFSET) & 0xFFFF;
+		int at = Packet.HEADER_LENGTH;
+		for (int i = 0; i < count; i++) {
+			long seq = p.getLong(at);
+			int length = p.getShort(at + 8) & 0xFFFF;
+			deliver(p, at + 10, seq);
+			at += 10 + length;
+		}
+		// a subscriber that has seen nothing else starts from the snapshot
+		if (expected == 0) expected = next;
+	}
+
+	// Hand on one message unless a newer one of its template and symbol has been already
+	private void deliver(ByteBuffer p, int at, long seq) {
+		int template = p.getShort(at + 2) & 0xFFFF;
+		Long symbol = p.getLong(at + MessageHeader.ENCODED_LENGTH);
+		long[] forSymbol = lastSeqs.get(symbol);
+		if (forSymbol == null) {
+			forSymbol = new long[4];
+			lastSeqs.put(symbol, forSymbol);
+		}
+		if (template >= forSymbol.length || seq <= forSymbol[template]) return;
+		forSymbol[template] = seq;
+		if (decoder.decode(p, at, handler) > 0) delivered++;
+	}
+}
@@ -0,0 +1,378 @@
+package feed;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import codec.EventSink;
+import codec.MessageHeader;
+import publishers.CurrentMarketPublisher;
+import publishers.LastSalePublisher;
+import publishers.Publisher;
+import publishers.TickerPublisher;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Sends the current market, last sale and ticker events of every product
+ *as sequenced UDP datagrams, laid out as described in Packet, to a
+ *multicast group or a single address.  Any number of FeedSubscribers can
+ *read a multicast feed without the exchange doing any more work.
+ *
+ *The publishing thread only numbers each event and copies it into a ring
+ *of the latest messages; a sender thread of the feed's own packs them
+ *into datagrams and sends them.  The same ring answers retransmission
+ *requests for lost datagrams, sent to a UDP port of the feed's.  The
+ *sender also keeps the latest message of each kind for every symbol and
+ *sends them all as a snapshot every snapshot interval, so a subscriber
+ *that joins late, or loses messages the ring no longer holds, can catch up.
+ ***************************************************************************/
+public final class MarketDataFeed implements EventSink, Runnable {
+
+	// every market data event fits a slot
+	private static final int SLOT = 64;
+	private static final long HEARTBEAT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+
+	private final long session = System.currentTimeMillis();
+	private final InetSocketAddress destination;
+	private final DatagramChannel out;
+	private final DatagramChannel requests;
+	private final Selector selector;
+
+	// the ring: message with sequence number s is in slot s & mask, guarded by lock
+	private final Object lock = new Object();
+	private final int capacity;
+	private final int mask;
+	private final byte[] ring;
+	private final int[] lengths;
+	// next sequence number to give out, written under lock
+	private volatile long published = 1;
+
+	// touched only by the sender thread
+	private long sent = 1;
+	private final ByteBuffer packet = ByteBuffer.allocate(Packet.MAX_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer request = ByteBuffer.allocate(Packet.REQUEST_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+	// symbol, as the long its 8 bytes make, to the latest message of each template
+	private final HashMap<Long, Latest[]> latest = new HashMap<Long, Latest[]>();
+
+	private volatile long snapshotInterval = TimeUnit.SECONDS.toNanos(1);
+	// the sender thread is about to wait and wants waking for new messages
+	private volatile boolean sleeping;
+	private volatile boolean running = true;
+	private Thread thread;
+
+	private volatile long overruns;
+	private volatile long retransmitted;
+	private volatile long snapshots;
+
+	/**
+	 * @param destination - multicast group or address to send the feed to
+	 * @param retransmission - where to listen for retransmission requests
+	 * @throws IOException
+	 */
+	public MarketDataFeed(InetSocketAddress destination, InetSocketAddress retransmission) throws IOException {
+		this(destination, retransmission, 1 << 16);
+	}
+
+	/**
+	 * @param destination - multicast group or address to send the feed to
+	 * @param retransmission - where to listen for retransmission requests
+	 * @param messages - how many of the latest messages are held for retransmission, a power of 2
+	 * @throws IOException
+	 */
+	public MarketDataFeed(InetSocketAddress destination, InetSocketAddress retransmission, int messages) throws IOException {
+		if (messages < 1 || Integer.bitCount(messages) != 1)
+			throw new IllegalArgumentException("Message capacity must be a power of 2: " + messages);
+		this.destination = destination;
+		capacity = messages;
+		mask = messages - 1;
+		ring = new byte[messages * SLOT];
+		lengths = new int[messages];
+		out = DatagramChannel.open();
+		if (destination.getAddress().isMulticastAddress())
+			out.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+		requests = DatagramChannel.open().bind(retransmission);
+		requests.configureBlocking(false);
+		selector = Selector.open();
+		requests.register(selector, SelectionKey.OP_READ);
+	}
+
+	public InetSocketAddress getRetransmissionAddress() throws IOException {
+		return (InetSocketAddress) requests.getLocalAddress();
+	}
+
+	/**
+	 * @param millis - time between snapshots
+	 */
+	public void setSnapshotInterval(long millis) {
+		snapshotInterval = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * @return - messages published so far
+	 */
+	public long getPublished() {
+		return published - 1;
+	}
+
+	/**
+	 * @return - messages overwritten in the ring before the sender could send them
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	public long getRetransmitted() {
+		return retransmitted;
+	}
+
+	public long getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * Start the sender thread and take events from the market data Publishers
+	 */
+	public synchronized void start() {
+		if (thread != null) return;
+		thread = new Thread(this, "MarketData-Feed");
+		thread.setDaemon(true);
+		thread.start();
+		for (Publisher p : publishers())
+			p.addEventSink(this);
+	}
+
+	/**
+	 * Stop taking events and stop the sender thread
+	 */
+	public void close() throws InterruptedException {
+		for (Publisher p : publishers())
+			p.removeEventSink(this);
+		running = false;
+		selector.wakeup();
+		Thread t = thread;
+		if (t != null) t.join();
+	}
+
+	private static Publisher[] publishers() {
+		return new Publisher[] { CurrentMarketPublisher.getInstance(), LastSalePublisher.getInstance(),
+				TickerPublisher.getInstance() };
+	}
+
+	// On the publishing thread - number the event and copy it, nothing more
+	@Override
+	public void onEvent(ByteBuffer buffer, int offset, int length) {
+		if (length > SLOT) {
+			Logger.getLogger(MarketDataFeed.class.getName()).log(Level.WARNING,
+					"Event of " + length + " bytes is too long for the feed");
+			return;
+		}
+		synchronized (lock) {
+			long seq = published;
+			int slot = (int) (seq & mask);
+			buffer.get(offset, ring, slot * SLOT, length);
+			lengths[slot] = length;
+			published = seq + 1;
+		}
+		if (sleeping) {
+			sleeping = false;
+			selector.wakeup();
+		}
+	}
+
+	//SENDER THREAD--------------------//
+
+	@Override
+	public void run() {
+		long lastSnapshot = System.nanoTime();
+		long lastSend = lastSnapshot;
+		try {
+			while (running) {
+				boolean worked = sendPublished();
+				worked |= serveRequests();
+				long now = System.nanoTime();
+				if (now - lastSnapshot >= snapshotInterval) {
+					sendSnapshot();
+					lastSnapshot = now;
+				}
+				if (worked) {
+					lastSend = now;
+					continue;
+				}
+				if (now - lastSend >= HEARTBEAT_INTERVAL) {
+					sendHeader(Packet.INCREMENTAL, sent, destination);
+					lastSend = now;
+				}
+				long wait = Math.min(lastSend + HEARTBEAT_INTERVAL, lastSnapshot + snapshotInterval) - now;
+				sleeping = true;
+				if (published == sent) selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+				sleeping = false;
+				selector.selectedKeys().clear();
+			}
+		} catch (IOException ex) {
+			Logger.getLogger(MarketDataFeed.class.getName()).log(Level.SEVERE, "Market data feed stopped", ex);
+		} finally {
+			try {
+				out.close();
+				requests.close();
+				selector.close();
+			} catch (IOException ex) {
+				Logger.getLogger(MarketDataFeed.class.getName()).log(Level.WARNING, null, ex);
+			}
+		}
+	}
+
+	// Send everything published since the last call, returning whether there was anything
+	private boolean sendPublished() throws IOException {
+		long end = published;
+		if (sent == end) return false;
+		while (sent < end) {
+			beginPacket(Packet.INCREMENTAL);
+			long first;
+			int count;
+			synchronized (lock) {
+				long oldest = published - capacity;
+				if (sent < oldest) {
+					overruns += oldest - sent;
+					sent = oldest;
+				}
+				first = sent;
+				count = copyMessages(first, end);
+			}
+			endPacket(first, count);
+			out.send(packet, destination);
+			rememberLatest(count, first);
+			sent = first + count;
+		}
+		return true;
+	}
+
+	// Copy messages from first on into the packet until end or a full packet, under lock
+	private int copyMessages(long first, long end) {
+		int count = 0;
+		for (long s = first; s < end; s++) {
+			int slot = (int) (s & mask);
+			int length = lengths[slot];
+			if (packet.remaining() < 2 + length) break;
+			packet.putShort((short) length).put(ring, slot * SLOT, length);
+			count++;
+		}
+		return count;
+	}
+
+	private void beginPacket(byte type) {
+		packet.clear();
+		packet.putLong(Packet.SESSION_OFFSET, session).put(Packet.TYPE_OFFSET, type).put(Packet.TYPE_OFFSET + 1, (byte) 0);
+		packet.position(Packet.HEADER_LENGTH);
+	}
+
+	private void endPacket(long first, int count) {
+		packet.putLong(Packet.SEQUENCE_OFFSET, first).putShort(Packet.COUNT_OFFSET, (short) count);
+		packet.flip();
+	}
+
+	private void sendHeader(byte type, long first, SocketAddress to) throws IOException {
+		beginPacket(type);
+		endPacket(first, 0);
+		out.send(packet, to);
+	}
+
+	// Keep a copy of the latest message of each template for every symbol in the packet just sent
+	private void rememberLatest(int count, long first) {
+		int at = Packet.HEADER_LENGTH;
+		for (int i = 0; i < count; i++) {
+			int length = packet.getShort(at) & 0xFFFF;
+			int message = at + 2;
+			int template = packet.getShort(message + 2) & 0xFFFF;
+			Long symbol = packet.getLong(message + MessageHeader.ENCODED_LENGTH);
+			Latest[] forSymbol = latest.get(symbol);
+			if (forSymbol == null) {
+				forSymbol = new Latest[4];
+				latest.put(symbol, forSymbol);
+			}
+			if (template < forSymbol.length) {
+				if (forSymbol[template] == null) forSymbol[template] = new Latest();
+				Latest l = forSymbol[template];
+				l.seq = first + i;
+				l.length = length;
+				packet.get(message, l.bytes, 0, length);
+			}
+			at = message + length;
+		}
+	}
+
+	private void sendSnapshot() throws IOException {
+		beginPacket(Packet.SNAPSHOT);
+		int count = 0;
+		for (Latest[] forSymbol : latest.values()) {
+			for (Latest l : forSymbol) {
+				if (l == null) continue;
+				if (packet.remaining() < 10 + l.length) {
+					endPacket(sent, count);
+					out.send(packet, destination);
+					beginPacket(Packet.SNAPSHOT);
+					count = 0;
+				}
+				packet.putLong(l.seq).putShort((short) l.length).put(l.bytes, 0, l.length);
+				count++;
+			}
+		}
+		if (count > 0) {
+			endPacket(sent, count);
+			out.send(packet, destination);
+		}
+		snapshots++;
+	}
+
+	// Answer every retransmission request waiting, returning whether there were any
+	private boolean serveRequests() throws IOException {
+		boolean worked = false;
+		while (true) {
+			request.clear();
+			SocketAddress from = requests.receive(request);
+			if (from == null) return worked;
+			worked = true;
+			if (request.position() < Packet.REQUEST_LENGTH || request.getLong(0) != session) continue;
+			retransmit(request.getLong(8), request.getShort(16) & 0xFFFF, from);
+		}
+	}
+
+	// Resend what the ring still holds of count messages from first - only what was sent already
+	private void retransmit(long first, int count, SocketAddress to) throws IOException {
+		long end = Math.min(first + count, sent);
+		long s = first;
+		do {
+			beginPacket(Packet.RETRANSMISSION);
+			int n;
+			synchronized (lock) {
+				long oldest = Math.max(1, published - capacity);
+				if (s < oldest) s = oldest;
+				n = copyMessages(s, end);
+			}
+			endPacket(s, n);
+			// from the port the request went to, so a subscriber may connect its request channel
+			requests.send(packet, to);
+			retransmitted += n;
+			s += n;
+		} while (s < end);
+	}
+
+	/********************************************************
+	 * The latest message of one template for one symbol
+	 ********************************************************/
+	private static final class Latest {
+		private final byte[] bytes = new byte[SLOT];
+		private int length;
+		private long seq;
+	}
+}
@@ -0,0 +1,51 @@
+package feed;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Layout of the datagrams between a MarketDataFeed and its FeedSubscribers.
+ *Every feed datagram starts with a little-endian header:
+ *
+ *   long session - chosen when the feed starts, sequences restart with it
+ *   long sequence - of the first message in the datagram
+ *   u16 count - messages in the datagram
+ *   byte type - INCREMENTAL, RETRANSMISSION or SNAPSHOT
+ *   byte - unused
+ *
+ *Messages are events encoded by the codec package, header included.  In
+ *INCREMENTAL and RETRANSMISSION datagrams each is preceded by its u16
+ *length and they carry the sequence numbers from the header's onwards.
+ *An INCREMENTAL datagram with no messages is a heartbeat, telling an idle
+ *subscriber which sequence number comes next.  A RETRANSMISSION whose
+ *first sequence is past the one asked for means the messages in between
+ *are no longer held.
+ *
+ *A SNAPSHOT carries the latest message of each kind for every symbol.
+ *Each is preceded by the long sequence number it was first sent with and
+ *its u16 length; the header's sequence is the next one the feed will send.
+ *
+ *A retransmission request is session, first sequence wanted and u16 count.
+ ***************************************************************************/
+final class Packet {
+
+	static final int SESSION_OFFSET = 0;
+	static final int SEQUENCE_OFFSET = 8;
+	static final int COUNT_OFFSET = 16;
+	static final int TYPE_OFFSET = 18;
+	static final int HEADER_LENGTH = 20;
+
+	static final byte INCREMENTAL = 0;
+	static final byte RETRANSMISSION = 1;
+	static final byte SNAPSHOT = 2;
+
+	// fits an Ethernet frame with room for IP and UDP headers
+	static final int MAX_LENGTH = 1400;
+
+	static final int REQUEST_LENGTH = 18;
+
+	// most messages one retransmission request may ask for
+	static final int MAX_REQUEST = 0xFFFF;
+
+	private Packet() {
+	}
+}
@@ -0,0 +1,586 @@
+package gateway;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import client.CommandService;
+import client.Subscriber;
+import codec.CancelCodec;
+import codec.CurrentMarketCodec;
+import codec.EventDecoder;
+import codec.EventHandler;
+import codec.FillCodec;
+import codec.LastSaleCodec;
+import codec.TickerCodec;
+import exceptions.AlreadySubscribedException;
+import exceptions.ConnectionException;
+import exceptions.DataValidationException;
+import exceptions.InvalidMarketStateException;
+import exceptions.InvalidMessageException;
+import exceptions.InvalidPriceException;
+import exceptions.InvalidVolumeException;
+import exceptions.NoSuchProductException;
+import exceptions.NotSubscribedException;
+import exceptions.OrderNotFoundException;
+import messages.CancelMessage;
+import messages.FillMessage;
+import price.Price;
+import tradable.Side;
+import tradable.TradableDTO;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Sends one User's commands to a GatewayServer and hands the User the
+ *market data and messages the server pushes back, on a reader thread of
+ *its own.  Exceptions the exchange throws are thrown again here, as the
+ *same exception where the command declares it and otherwise as a
+ *ConnectionException.
+ *
+ *The blocking CommandService methods wait for their reply.  The Async
+ *methods only send the request, so a caller can pipeline as many as it
+ *likes and collect the replies afterwards.  With autoFlush off they are
+ *not even written until flush is called, and the whole batch goes out in
+ *one write; requests sent by several threads while a write is in
+ *progress go out together in the next one either way.
+ ***************************************************************************/
+public class GatewayClient implements CommandService {
+
+	private static final int INITIAL_BUFFER = 1 << 16;
+
+	private static final ThreadLocal<Protocol.FrameWriter> writers = ThreadLocal.withInitial(Protocol.FrameWriter::new);
+
+	private final SocketChannel channel;
+	private final Thread reader;
+	private final AtomicInteger nextRequestId = new AtomicInteger();
+	private final ConcurrentHashMap<Integer, Pending<?>> pending = new ConcurrentHashMap<Integer, Pending<?>>();
+	// requests waiting to be written, guarded by this
+	private ByteBuffer queued = ByteBuffer.allocate(INITIAL_BUFFER);
+	// the requests being written, guarded by writeLock
+	private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER);
+	private final Object writeLock = new Object();
+	private volatile Subscriber user;
+	private volatile boolean closed;
+	private volatile boolean autoFlush = true;
+
+	/**
+	 * Connect to a GatewayServer
+	 *
+	 * @param host - where the server runs
+	 * @param port - port it listens on
+	 * @throws ConnectionException - the server cannot be reached
+	 */
+	public GatewayClient(String host, int port) throws ConnectionException {
+		try {
+			channel = SocketChannel.open(new InetSocketAddress(host, port));
+			channel.socket().setTcpNoDelay(true);
+		} catch (IOException ex) {
+			throw new ConnectionException("Cannot reach exchange at " + host + ":" + port, ex);
+		}
+		reader = new Thread(this::read, "Gateway-Reader-" + port);
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Close the connection; the server disconnects the User
+	 */
+	public void close() {
+		closed = true;
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			Logger.getLogger(GatewayClient.class.getName()).log(Level.FINE, null, ex);
+		}
+	}
+
+	//COMMANDS--------------------//
+
+	@Override
+	public long connect(Subscriber u) throws ConnectionException {
+		user = u;
+		try {
+			return await(request(Protocol.CONNECT, f -> f.putString(u.getUserName()), ByteBuffer::getLong));
+		} catch (Failure f) {
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public void disConnect(String userName, long connId) throws ConnectionException {
+		try {
+			await(request(Protocol.DISCONNECT, connId, f -> {}, NO_RESULT));
+		} catch (Failure f) {
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public String[][] getBookDepth(String userName, long connId, String product) throws ConnectionException, NoSuchProductException {
+		try {
+			return await(getBookDepthAsync(connId, product));
+		} catch (Failure f) {
+			f.rethrow(NoSuchProductException.class);
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public String getMarketState(String userName, long connId) throws ConnectionException {
+		try {
+			return await(request(Protocol.GET_MARKET_STATE, connId, f -> {}, Protocol::getString));
+		} catch (Failure f) {
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public ArrayList<TradableDTO> getOrdersWithRemainingQty(String userName, long connId, String product) throws ConnectionException {
+		try {
+			return await(request(Protocol.GET_ORDERS_WITH_REMAINING_QTY, connId, f -> f.putString(product), b -> {
+				int n = b.getInt();
+				ArrayList<TradableDTO> orders = new ArrayList<TradableDTO>(n);
+				for (int i = 0; i < n; i++) {
+					orders.add(new TradableDTO(Protocol.getString(b), Protocol.getPrice(b), b.getInt(), b.getInt(), b.getInt(),
+							Protocol.getString(b), Protocol.getSide(b), b.get() != 0, Protocol.getString(b)));
+				}
+				return orders;
+			}));
+		} catch (Failure f) {
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public ArrayList<String> getProducts(String userName, long connId) throws ConnectionException {
+		try {
+			return await(request(Protocol.GET_PRODUCTS, connId, f -> {}, b -> {
+				int n = b.getInt();
+				ArrayList<String> products = new ArrayList<String>(n);
+				for (int i = 0; i < n; i++)
+					products.add(Protocol.getString(b));
+				return products;
+			}));
+		} catch (Failure f) {
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public String submitOrder(String userName, long connId, String product, Price price, int volume, Side side) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException {
+		try {
+			return await(submitOrderAsync(connId, product, price, volume, side));
+		} catch (Failure f) {
+			f.rethrow(InvalidVolumeException.class);
+			f.rethrow(InvalidMarketStateException.class);
+			f.rethrow(NoSuchProductException.class);
+			f.rethrow(DataValidationException.class);
+			f.rethrow(InvalidMessageException.class);
+			f.rethrow(InvalidPriceException.class);
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public void submitOrderCancel(String userName, long connId, String product, Side side, String orderId) throws InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException, OrderNotFoundException, ConnectionException {
+		try {
+			await(submitOrderCancelAsync(connId, product, side, orderId));
+		} catch (Failure f) {
+			f.rethrow(InvalidMarketStateException.class);
+			f.rethrow(NoSuchProductException.class);
+			f.rethrow(InvalidMessageException.class);
+			f.rethrow(InvalidVolumeException.class);
+			f.rethrow(InvalidPriceException.class);
+			f.rethrow(OrderNotFoundException.class);
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public void submitQuote(String userName, long connId, String product, Price bPrice, int bVolume, Price sPrice, int sVolume) throws ConnectionException, InvalidVolumeException, InvalidMarketStateException, NoSuchProductException, DataValidationException, InvalidMessageException, InvalidPriceException {
+		try {
+			await(submitQuoteAsync(connId, product, bPrice, bVolume, sPrice, sVolume));
+		} catch (Failure f) {
+			f.rethrow(InvalidVolumeException.class);
+			f.rethrow(InvalidMarketStateException.class);
+			f.rethrow(NoSuchProductException.class);
+			f.rethrow(DataValidationException.class);
+			f.rethrow(InvalidMessageException.class);
+			f.rethrow(InvalidPriceException.class);
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public void submitQuoteCancel(String userName, long connId, String product) throws ConnectionException, InvalidMarketStateException, NoSuchProductException, InvalidMessageException, InvalidVolumeException, InvalidPriceException {
+		try {
+			await(submitQuoteCancelAsync(connId, product));
+		} catch (Failure f) {
+			f.rethrow(InvalidMarketStateException.class);
+			f.rethrow(NoSuchProductException.class);
+			f.rethrow(InvalidMessageException.class);
+			f.rethrow(InvalidVolumeException.class);
+			f.rethrow(InvalidPriceException.class);
+			throw f.asConnectionException();
+		}
+	}
+
+	@Override
+	public void subscribeCurrentMarket(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException {
+		subscribe(Protocol.SUBSCRIBE_CURRENT_MARKET, connId, product);
+	}
+
+	@Override
+	public void subscribeLastSale(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException {
+		subscribe(Protocol.SUBSCRIBE_LAST_SALE, connId, product);
+	}
+
+	@Override
+	public void subscribeMessages(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException {
+		subscribe(Protocol.SUBSCRIBE_MESSAGES, connId, product);
+	}
+
+	@Override
+	public void subscribeTicker(String userName, long connId, String product) throws ConnectionException, AlreadySubscribedException {
+		subscribe(Protocol.SUBSCRIBE_TICKER, connId, product);
+	}
+
+	@Override
+	public void unSubscribeCurrentMarket(String userName, long connId, String product) throws ConnectionException, NotSubscribedException {
+		unSubscribe(Protocol.UNSUBSCRIBE_CURRENT_MARKET, connId, product);
+	}
+
+	@Override
+	public void unSubscribeLastSale(String userName, long connId, String product) throws ConnectionException, NotSubscribedException {
+		unSubscribe(Protocol.UNSUBSCRIBE_LAST_SALE, connId, product);
+	}
+
+	@Override
+	public void unSubscribeMessages(String userName, long connId, String product) throws ConnectionException, NotSubscribedException {
+		unSubscribe(Protocol.UNSUBSCRIBE_MESSAGES, connId, product);
+	}
+
+	@Override
+	public void unSubscribeTicker(String userName, long connId, String product) throws ConnectionException, NotSubscribedException {
+		unSubscribe(Protocol.UNSUBSCRIBE_TICKER, connId, product);
+	}
+
+	private void subscribe(byte type, long connId, String product) throws ConnectionException, AlreadySubscribedException {
+		try {
+			await(request(type, connId, f -> f.putString(product), NO_RESULT));
+		} catch (Failure f) {
+			f.rethrow(AlreadySubscribedException.class);
+			throw f.asConnectionException();
+		}
+	}
+
+	private void unSubscribe(byte type, long connId, String product) throws ConnectionException, NotSubscribedException {
+		try {
+			await(request(type, connId, f -> f.putString(product), NO_RESULT));
+		} catch (Failure f) {
+			f.rethrow(NotSubscribedException.class);
+			throw f.asConnectionException();
+		}
+	}
+
+	//PIPELINED COMMANDS--------------------//
+
+	/**
+	 * @return - completes with the order id, or with the exception the exchange threw
+	 */
+	public CompletableFuture<String> submitOrderAsync(long connId, String product, Price price, int volume, Side side) {
+		return request(Protocol.SUBMIT_ORDER, connId,
+				f -> f.putString(product).putPrice(price).putInt(volume).putSide(side), Protocol::getString);
+	}
+
+	public CompletableFuture<Void> submitOrderCancelAsync(long connId, String product, Side side, String orderId) {
+		return request(Protocol.SUBMIT_ORDER_CANCEL, connId,
+				f -> f.putString(product).putSide(side).putString(orderId), NO_RESULT);
+	}
+
+	public CompletableFuture<Void> submitQuoteAsync(long connId, String product, Price bPrice, int bVolume, Price sPrice, int sVolume) {
+		return request(Protocol.SUBMIT_QUOTE, connId,
+				f -> f.putString(product).putPrice(bPrice).putInt(bVolume).putPrice(sPrice).putInt(sVolume), NO_RESULT);
+	}
+
+	public CompletableFuture<Void> submitQuoteCancelAsync(long connId, String product) {
+		return request(Protocol.SUBMIT_QUOTE_CANCEL, connId, f -> f.putString(product), NO_RESULT);
+	}
+
+	public CompletableFuture<String[][]> getBookDepthAsync(long connId, String product) {
+		return request(Protocol.GET_BOOK_DEPTH, connId, f -> f.putString(product), b -> {
+			String[][] depth = new String[b.getInt()][];
+			for (int i = 0; i < depth.length; i++) {
+				depth[i] = new String[b.getInt()];
+				for (int j = 0; j < depth[i].length; j++)
+					depth[i][j] = Protocol.getString(b);
+			}
+			return depth;
+		});
+	}
+
+	//REQUESTS AND REPLIES--------------------//
+
+	private interface Payload {
+		void write(Protocol.FrameWriter f);
+	}
+
+	private interface Result<T> {
+		T read(ByteBuffer b);
+	}
+
+	private static final Result<Void> NO_RESULT = b -> null;
+
+	private static final class Pending<T> {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		final Result<T> result;
+
+		Pending(Result<T> r) {
+			result = r;
+		}
+
+		void complete(ByteBuffer b) {
+			future.complete(result.read(b));
+		}
+	}
+
+	// every request but connect starts with the connection id
+	private <T> CompletableFuture<T> request(byte type, long connId, Payload payload, Result<T> result) {
+		return request(type, f -> payload.write(f.putLong(connId)), result);
+	}
+
+	private <T> CompletableFuture<T> request(byte type, Payload payload, Result<T> result) {
+		int id = nextRequestId.incrementAndGet();
+		Pending<T> p = new Pending<T>(result);
+		pending.put(id, p);
+		// the reader sets closed before failing what is pending, so one of the two catches this request
+		if (closed) {
+			if (pending.remove(id) != null) p.future.completeExceptionally(new ConnectionException("Connection to exchange closed"));
+			return p.future;
+		}
+		boolean full;
+		try {
+			Protocol.FrameWriter f = writers.get().begin(type, id);
+			payload.write(f);
+			full = queue(f.finish());
+		} catch (RuntimeException ex) {
+			pending.remove(id);
+			p.future.completeExceptionally(ex);
+			return p.future;
+		}
+		if (autoFlush || full) flush();
+		return p.future;
+	}
+
+	// @return - true when enough is queued that it should be written whether or not autoFlush is on
+	private synchronized boolean queue(ByteBuffer frame) {
+		if (queued.remaining() < frame.remaining()) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(queued.capacity() * 2, queued.position() + frame.remaining()));
+			queued.flip();
+			bigger.put(queued);
+			queued = bigger;
+		}
+		queued.put(frame);
+		return queued.position() >= INITIAL_BUFFER;
+	}
+
+	/**
+	 * Write every request sent so far.  A failed write closes the connection, which fails the requests waiting for
+	 * replies.
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			synchronized (this) {
+				if (queued.position() == 0) return; // a write in progress took it
+				ByteBuffer b = writing;
+				writing = queued;
+				queued = b;
+			}
+			writing.flip();
+			try {
+				while (writing.hasRemaining())
+					channel.write(writing);
+			} catch (IOException ex) {
+				if (!closed) Logger.getLogger(GatewayClient.class.getName()).log(Level.WARNING, "Lost connection to exchange", ex);
+				close();
+			} finally {
+				writing.clear();
+			}
+		}
+	}
+
+	/**
+	 * @param on - true, the default, to write each request as it is sent; false to hold requests until flush is called,
+	 * so a batch of them goes out in one write - a blocking command flushes whatever is held before waiting
+	 */
+	public void setAutoFlush(boolean on) {
+		autoFlush = on;
+	}
+
+	private <T> T await(CompletableFuture<T> future) throws Failure {
+		flush();
+		try {
+			return future.get();
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			throw new Failure(cause instanceof Exception ? (Exception) cause : new ConnectionException(cause.toString(), cause));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new Failure(new ConnectionException("Interrupted waiting for the exchange", ex));
+		}
+	}
+
+	/*******************************************************
+	 * A request that failed, carrying what to throw for it
+	 *******************************************************/
+	private static final class Failure extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		Failure(Exception cause) {
+			super(cause);
+		}
+
+		<E extends Exception> void rethrow(Class<E> type) throws E {
+			if (type.isInstance(getCause())) throw type.cast(getCause());
+		}
+
+		ConnectionException asConnectionException() {
+			Throwable cause = getCause();
+			if (cause instanceof ConnectionException) return (ConnectionException) cause;
+			return new ConnectionException(cause.getClass().getSimpleName() + ": " + cause.getMessage(), cause);
+		}
+	}
+
+	// The exchange's exceptions all have a message constructor; anything else becomes a ConnectionException
+	private static Exception remoteException(String className, String message) {
+		try {
+			Class<?> c = Class.forName("exceptions." + className);
+			if (Exception.class.isAssignableFrom(c))
+				return (Exception) c.getConstructor(String.class).newInstance(message);
+		} catch (ReflectiveOperationException ex) {
+			// not one of the exchange's exceptions
+		}
+		return new ConnectionException(className + ": " + message);
+	}
+
+	//READER THREAD--------------------//
+
+	private void read() {
+		ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+		EventDecoder decoder = new EventDecoder();
+		Events events = new Events();
+		try {
+			while (channel.read(in) >= 0) {
+				in.flip();
+				while (in.remaining() >= 4) {
+					int start = in.position();
+					int length = in.getInt(start);
+					if (length < Protocol.FRAME_HEADER - 4 || length > Protocol.MAX_FRAME)
+						throw new IOException("Bad frame length " + length);
+					if (in.remaining() < 4 + length) break;
+					int end = start + 4 + length;
+					int limit = in.limit();
+					in.position(start + Protocol.FRAME_HEADER).limit(end);
+					frame(in.get(start + 4), in.getInt(start + 5), in, decoder, events);
+					in.limit(limit).position(end);
+				}
+				if (in.remaining() >= 4 && in.getInt(in.position()) + 4 > in.capacity()) {
+					ByteBuffer bigger = ByteBuffer.allocate(in.getInt(in.position()) + 4).order(ByteOrder.LITTLE_ENDIAN);
+					bigger.put(in);
+					in = bigger;
+				} else {
+					in.compact();
+				}
+			}
+		} catch (IOException ex) {
+			if (!closed) Logger.getLogger(GatewayClient.class.getName()).log(Level.WARNING, "Lost connection to exchange", ex);
+		} finally {
+			closed = true;
+			for (Integer id : pending.keySet()) {
+				Pending<?> p = pending.remove(id);
+				if (p != null) p.future.completeExceptionally(new ConnectionException("Connection to exchange closed"));
+			}
+		}
+	}
+
+	private void frame(byte type, int requestId, ByteBuffer b, EventDecoder decoder, Events events) {
+		switch (type) {
+		case Protocol.OK:
+		case Protocol.ERROR:
+			Pending<?> p = pending.remove(requestId);
+			if (p == null) return;
+			try {
+				if (type == Protocol.OK) p.complete(b);
+				else p.future.completeExceptionally(remoteException(Protocol.getString(b), Protocol.getString(b)));
+			} catch (RuntimeException ex) {
+				p.future.completeExceptionally(new ConnectionException("Bad reply from exchange", ex));
+			}
+			break;
+		case Protocol.EVENT:
+			decoder.decode(b, b.position(), events);
+			break;
+		case Protocol.MARKET_MESSAGE:
+			Subscriber u = user;
+			if (u != null) u.acceptMarketMessage(Protocol.getString(b));
+			break;
+		default:
+			// newer server, unknown frame
+		}
+	}
+
+	/*******************************************************
+	 * Hands decoded events to the connected User
+	 *******************************************************/
+	private final class Events implements EventHandler {
+
+		@Override
+		public void onCurrentMarket(CurrentMarketCodec c) {
+			Subscriber u = user;
+			if (u != null) u.acceptCurrentMarket(c.symbol(), c.buyPrice(), c.buyVolume(), c.sellPrice(), c.sellVolume());
+		}
+
+		@Override
+		public void onLastSale(LastSaleCodec c) {
+			Subscriber u = user;
+			if (u != null) u.acceptLastSale(c.symbol(), c.price(), c.volume());
+		}
+
+		@Override
+		public void onTicker(TickerCodec c) {
+			Subscriber u = user;
+			if (u != null) u.acceptTicker(c.symbol(), c.price(), c.direction());
+		}
+
+		@Override
+		public void onFill(FillCodec c) {
+			Subscriber u = user;
+			if (u == null) return;
+			try {
+				u.acceptMessage(new FillMessage(c.user(), c.symbol(), c.price(), c.volume(), c.details(), c.side(), c.id()));
+			} catch (Exception ex) {
+				Logger.getLogger(GatewayClient.class.getName()).log(Level.WARNING, "Bad fill from exchange", ex);
+			}
+		}
+
+		@Override
+		public void onCancel(CancelCodec c) {
+			Subscriber u = user;
+			if (u == null) return;
+			try {
+				u.acceptMessage(new CancelMessage(c.user(), c.symbol(), c.price(), c.volume(), c.details(), c.side(), c.id()));
+			} catch (Exception ex) {
+				Logger.getLogger(GatewayClient.class.getName()).log(Level.WARNING, "Bad cancel from exchange", ex);
+			}
+		}
+	}
+}
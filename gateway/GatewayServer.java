@@ -0,0 +1,155 @@
+package gateway;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Lets Users in other processes trade through UserCommandService over TCP,
+ *using the frames described in Protocol.  One selector thread accepts
+ *connections, reads requests and hands them on, and writes replies and
+ *events, so a connection never needs a thread of its own.  It never waits
+ *for a product's book: those requests are answered when the book has
+ *carried them out.  Replies that are ready together go out in one write,
+ *which is what makes pipelining requests pay.
+ *
+ *The protocol has no authentication, so by default the server only
+ *listens on the loopback address.
+ ***************************************************************************/
+public final class GatewayServer implements Runnable {
+
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	// sessions with something to write, added from any thread
+	private final ConcurrentLinkedQueue<GatewaySession> flushes = new ConcurrentLinkedQueue<GatewaySession>();
+	// touched only by the selector thread
+	private final Protocol.FrameWriter reply = new Protocol.FrameWriter();
+	private volatile Thread thread;
+	private volatile boolean running = true;
+
+	/**
+	 * @param port - port to listen on the loopback address, 0 for any free port
+	 * @throws IOException
+	 */
+	public GatewayServer(int port) throws IOException {
+		this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	public GatewayServer(InetSocketAddress address) throws IOException {
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(address);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Start the selector thread, or call run to make the calling thread the selector thread
+	 */
+	public synchronized void start() {
+		if (thread != null) return;
+		thread = new Thread(this, "Gateway-Selector");
+		thread.start();
+	}
+
+	/**
+	 * Stop the selector thread and close every connection, disconnecting their Users
+	 */
+	public void close() throws InterruptedException {
+		running = false;
+		selector.wakeup();
+		Thread t = thread;
+		if (t != null) t.join();
+	}
+
+	Protocol.FrameWriter replyWriter() {
+		return reply;
+	}
+
+	/**
+	 * Have the selector thread write out a session's outbound buffer
+	 */
+	void requestFlush(GatewaySession s) {
+		flushes.add(s);
+		if (Thread.currentThread() != thread) selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		thread = Thread.currentThread();
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) continue;
+					if (key.isAcceptable()) accept();
+					else handle(key);
+				}
+				GatewaySession s;
+				while ((s = flushes.poll()) != null)
+					flush(s);
+			}
+		} catch (IOException ex) {
+			Logger.getLogger(GatewayServer.class.getName()).log(Level.SEVERE, "Gateway stopped", ex);
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() != null) ((GatewaySession) key.attachment()).close();
+			}
+			try {
+				serverChannel.close();
+				selector.close();
+			} catch (IOException ex) {
+				Logger.getLogger(GatewayServer.class.getName()).log(Level.WARNING, null, ex);
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel c = serverChannel.accept();
+		if (c == null) return;
+		c.configureBlocking(false);
+		c.socket().setTcpNoDelay(true);
+		SelectionKey key = c.register(selector, SelectionKey.OP_READ);
+		key.attach(new GatewaySession(this, c, key));
+	}
+
+	private void handle(SelectionKey key) {
+		GatewaySession s = (GatewaySession) key.attachment();
+		try {
+			if (key.isWritable() && !s.flush()) {
+				s.close();
+				return;
+			}
+			if (key.isValid() && key.isReadable() && !s.onReadable()) s.close();
+		} catch (IOException ex) {
+			Logger.getLogger(GatewayServer.class.getName()).log(Level.FINE, "Closing " + s, ex);
+			s.close();
+		}
+	}
+
+	private void flush(GatewaySession s) {
+		try {
+			if (!s.flush()) s.close();
+		} catch (IOException ex) {
+			Logger.getLogger(GatewayServer.class.getName()).log(Level.FINE, "Closing " + s, ex);
+			s.close();
+		}
+	}
+}
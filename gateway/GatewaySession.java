@@ -0,0 +1,385 @@
+package gateway;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import client.Subscriber;
+import client.UserCommandService;
+import codec.EventEncoder;
+import exceptions.ConnectionException;
+import messages.CancelMessage;
+import messages.FillMessage;
+import price.Price;
+import publishers.CurrentMarketPublisher;
+import publishers.LastSalePublisher;
+import publishers.MessagePublisher;
+import publishers.Publisher;
+import publishers.TickerPublisher;
+import tradable.TradableDTO;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *One client connection to the GatewayServer.  Once the client connects a
+ *user it stands in for that User inside the exchange: UserCommandService
+ *and the Publishers see it as the User's Subscriber, and everything they
+ *hand it is encoded straight into the connection's outbound buffer.
+ *
+ *Requests are read on the server's selector thread and handed on in the
+ *order they arrive.  Those that need a product's book use the Async
+ *commands, so the selector thread never waits for a book or for the
+ *journal; their replies are sent from whichever thread completes them,
+ *and may overtake each other - the client matches replies by request id.
+ *Replies and events are added to the outbound buffer on any thread and
+ *written out by the selector thread, so nothing waits on the network.  A
+ *client that lets more than MAX_OUTBOUND bytes pile up is disconnected.
+ ***************************************************************************/
+final class GatewaySession implements Subscriber {
+
+	private static final int INITIAL_BUFFER = 1 << 16;
+	private static final int MAX_OUTBOUND = 1 << 24;
+
+	// events are encoded after the frame header, so the frame can be copied out in one piece
+	private static final ThreadLocal<EventEncoder> encoders = ThreadLocal.withInitial(EventEncoder::new);
+	private static final ThreadLocal<Protocol.FrameWriter> writers = ThreadLocal.withInitial(Protocol.FrameWriter::new);
+
+	/*******************************************************
+	 * Writes a completed command's result into its reply
+	 *******************************************************/
+	private interface Reply<T> {
+		void write(Protocol.FrameWriter f, T result);
+	}
+
+	private static final Reply<Object> NO_RESULT = (f, result) -> {};
+
+	private final GatewayServer server;
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	// touched only by the selector thread
+	private ByteBuffer inbound = ByteBuffer.allocate(INITIAL_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+	private ByteBuffer outbound = ByteBuffer.allocate(INITIAL_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+	// guarded by this: the session is waiting in the server's flush queue
+	private boolean flushQueued;
+	// guarded by this: the outbound buffer overflowed and the session is to be closed
+	private boolean overflowed;
+	private volatile boolean closed;
+	private volatile String userName;
+	private long connectionId;
+
+	GatewaySession(GatewayServer s, SocketChannel c, SelectionKey k) {
+		server = s;
+		channel = c;
+		key = k;
+	}
+
+	@Override
+	public String getUserName() {
+		return userName;
+	}
+
+	@Override
+	public String toString() {
+		return userName == null ? String.valueOf(channel) : userName;
+	}
+
+	//REQUESTS--------------------//
+
+	/**
+	 * Read what the client has sent and carry out every complete request in it
+	 *
+	 * @return - false when the client has closed the connection
+	 */
+	boolean onReadable() throws IOException {
+		if (channel.read(inbound) < 0) return false;
+		inbound.flip();
+		while (inbound.remaining() >= 4) {
+			int start = inbound.position();
+			int length = inbound.getInt(start);
+			if (length < Protocol.FRAME_HEADER - 4 || length > Protocol.MAX_FRAME)
+				throw new IOException("Bad frame length " + length + " from " + this);
+			if (inbound.remaining() < 4 + length) break;
+			int end = start + 4 + length;
+			int limit = inbound.limit();
+			byte type = inbound.get(start + 4);
+			int requestId = inbound.getInt(start + 5);
+			inbound.position(start + Protocol.FRAME_HEADER).limit(end);
+			try {
+				handle(type, requestId, inbound);
+			} catch (BufferUnderflowException ex) {
+				throw new IOException("Truncated request from " + this, ex);
+			}
+			inbound.limit(limit).position(end);
+		}
+		if (inbound.remaining() >= 4 && inbound.getInt(inbound.position()) + 4 > inbound.capacity()) {
+			ByteBuffer bigger = ByteBuffer.allocate(inbound.getInt(inbound.position()) + 4).order(ByteOrder.LITTLE_ENDIAN);
+			bigger.put(inbound);
+			inbound = bigger;
+		} else {
+			inbound.compact();
+		}
+		return true;
+	}
+
+	private void handle(byte type, int requestId, ByteBuffer in) {
+		UserCommandService service = UserCommandService.getInstance();
+		// not this thread's event writer, a request may publish a market message to this session
+		Protocol.FrameWriter reply = server.replyWriter().begin(Protocol.OK, requestId);
+		try {
+			if (type == Protocol.CONNECT) {
+				connect(Protocol.getString(in));
+				reply.putLong(connectionId);
+				send(reply.finish());
+				return;
+			}
+			long connId = in.getLong();
+			switch (type) {
+			case Protocol.DISCONNECT:
+				service.disConnect(userName, connId);
+				break;
+			case Protocol.GET_BOOK_DEPTH:
+				replyWhenDone(requestId, service.getBookDepthAsync(userName, connId, Protocol.getString(in)), (f, depth) -> {
+					f.putInt(depth.length);
+					for (String[] side : depth) {
+						f.putInt(side.length);
+						for (String entry : side)
+							f.putString(entry);
+					}
+				});
+				return;
+			case Protocol.GET_MARKET_STATE:
+				reply.putString(service.getMarketState(userName, connId));
+				break;
+			case Protocol.GET_ORDERS_WITH_REMAINING_QTY:
+				replyWhenDone(requestId, service.getOrdersWithRemainingQtyAsync(userName, connId, Protocol.getString(in)), (f, orders) -> {
+					f.putInt(orders.size());
+					for (TradableDTO t : orders) {
+						f.putString(t.getSymbol()).putPrice(t.getOrdPrice()).putInt(t.getOrigVolume())
+								.putInt(t.getRemVolume()).putInt(t.getCanVolume()).putString(t.getUser())
+								.putSide(t.getBuyOrSell()).putByte(t.isQuote() ? 1 : 0).putString(t.getId());
+					}
+				});
+				return;
+			case Protocol.GET_PRODUCTS:
+				ArrayList<String> products = service.getProducts(userName, connId);
+				reply.putInt(products.size());
+				for (String p : products)
+					reply.putString(p);
+				break;
+			case Protocol.SUBMIT_ORDER:
+				replyWhenDone(requestId, service.submitOrderAsync(userName, connId, Protocol.getString(in), Protocol.getPrice(in),
+						in.getInt(), Protocol.getSide(in)), (f, orderId) -> f.putString(orderId));
+				return;
+			case Protocol.SUBMIT_ORDER_CANCEL:
+				replyWhenDone(requestId, service.submitOrderCancelAsync(userName, connId, Protocol.getString(in), Protocol.getSide(in),
+						Protocol.getString(in)), NO_RESULT);
+				return;
+			case Protocol.SUBMIT_QUOTE:
+				replyWhenDone(requestId, service.submitQuoteAsync(userName, connId, Protocol.getString(in), Protocol.getPrice(in), in.getInt(),
+						Protocol.getPrice(in), in.getInt()), NO_RESULT);
+				return;
+			case Protocol.SUBMIT_QUOTE_CANCEL:
+				replyWhenDone(requestId, service.submitQuoteCancelAsync(userName, connId, Protocol.getString(in)), NO_RESULT);
+				return;
+			case Protocol.SUBSCRIBE_CURRENT_MARKET:
+				service.subscribeCurrentMarket(userName, connId, Protocol.getString(in));
+				break;
+			case Protocol.SUBSCRIBE_LAST_SALE:
+				service.subscribeLastSale(userName, connId, Protocol.getString(in));
+				break;
+			case Protocol.SUBSCRIBE_MESSAGES:
+				service.subscribeMessages(userName, connId, Protocol.getString(in));
+				break;
+			case Protocol.SUBSCRIBE_TICKER:
+				service.subscribeTicker(userName, connId, Protocol.getString(in));
+				break;
+			case Protocol.UNSUBSCRIBE_CURRENT_MARKET:
+				service.unSubscribeCurrentMarket(userName, connId, Protocol.getString(in));
+				break;
+			case Protocol.UNSUBSCRIBE_LAST_SALE:
+				service.unSubscribeLastSale(userName, connId, Protocol.getString(in));
+				break;
+			case Protocol.UNSUBSCRIBE_MESSAGES:
+				service.unSubscribeMessages(userName, connId, Protocol.getString(in));
+				break;
+			case Protocol.UNSUBSCRIBE_TICKER:
+				service.unSubscribeTicker(userName, connId, Protocol.getString(in));
+				break;
+			default:
+				throw new ConnectionException("Unknown request type " + type);
+			}
+			send(reply.finish());
+		} catch (BufferUnderflowException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			sendError(reply, requestId, ex);
+		}
+	}
+
+	/**
+	 * Send a command's reply once it completes, from the thread that completes it
+	 */
+	private <T> void replyWhenDone(final int requestId, CompletableFuture<T> result, final Reply<? super T> body) {
+		result.whenComplete((value, failure) -> {
+			Protocol.FrameWriter reply = writers.get();
+			if (failure != null) {
+				sendError(reply, requestId, failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+				return;
+			}
+			reply.begin(Protocol.OK, requestId);
+			body.write(reply, value);
+			send(reply.finish());
+		});
+	}
+
+	private void sendError(Protocol.FrameWriter reply, int requestId, Throwable ex) {
+		send(reply.begin(Protocol.ERROR, requestId).putString(ex.getClass().getSimpleName())
+				.putString(ex.getMessage()).finish());
+	}
+
+	private void connect(String name) throws ConnectionException {
+		if (userName != null) throw new ConnectionException("Connection already used by " + userName);
+		if (name == null || name.isEmpty()) throw new ConnectionException("User name cannot be empty or null");
+		userName = name;
+		try {
+			connectionId = UserCommandService.getInstance().connect(this);
+		} catch (ConnectionException ex) {
+			userName = null;
+			throw ex;
+		}
+	}
+
+	//EVENTS--------------------//
+
+	@Override
+	public void acceptCurrentMarket(String product, Price bp, int bv, Price sp, int sv) {
+		EventEncoder e = encoders.get();
+		sendEvent(e, e.encodeCurrentMarket(Protocol.FRAME_HEADER, product, bp, bv, sp, sv));
+	}
+
+	@Override
+	public void acceptLastSale(String product, Price p, int v) {
+		EventEncoder e = encoders.get();
+		sendEvent(e, e.encodeLastSale(Protocol.FRAME_HEADER, product, p, v));
+	}
+
+	@Override
+	public void acceptTicker(String product, Price p, char direction) {
+		EventEncoder e = encoders.get();
+		sendEvent(e, e.encodeTicker(Protocol.FRAME_HEADER, product, p, direction));
+	}
+
+	@Override
+	public void acceptMessage(FillMessage fm) {
+		EventEncoder e = encoders.get();
+		sendEvent(e, e.encodeFill(Protocol.FRAME_HEADER, fm));
+	}
+
+	@Override
+	public void acceptMessage(CancelMessage cm) {
+		EventEncoder e = encoders.get();
+		sendEvent(e, e.encodeCancel(Protocol.FRAME_HEADER, cm));
+	}
+
+	@Override
+	public void acceptMarketMessage(String message) {
+		send(writers.get().begin(Protocol.MARKET_MESSAGE, 0).putString(message).finish());
+	}
+
+	// The encoder's buffer sets the event's byte order, which the codec makes little-endian
+	private void sendEvent(EventEncoder e, int length) {
+		ByteBuffer b = e.buffer();
+		b.putInt(0, Protocol.FRAME_HEADER - 4 + length);
+		b.put(4, Protocol.EVENT);
+		b.putInt(5, 0);
+		append(b, 0, Protocol.FRAME_HEADER + length);
+	}
+
+	private void send(ByteBuffer frame) {
+		append(frame, frame.position(), frame.remaining());
+	}
+
+	//OUTBOUND--------------------//
+
+	private void append(ByteBuffer src, int offset, int length) {
+		synchronized (this) {
+			if (closed || overflowed) return;
+			if (outbound.remaining() < length && !grow(length)) {
+				overflowed = true;
+				Logger.getLogger(GatewaySession.class.getName()).log(Level.WARNING,
+						"Disconnecting " + this + ", more than " + MAX_OUTBOUND + " bytes waiting to be sent");
+			} else {
+				outbound.put(outbound.position(), src, offset, length);
+				outbound.position(outbound.position() + length);
+			}
+			if (flushQueued) return;
+			flushQueued = true;
+		}
+		server.requestFlush(this);
+	}
+
+	private boolean grow(int length) {
+		int needed = outbound.position() + length;
+		if (needed > MAX_OUTBOUND) return false;
+		int capacity = outbound.capacity();
+		while (capacity < needed)
+			capacity *= 2;
+		ByteBuffer bigger = ByteBuffer.allocate(Math.min(capacity, MAX_OUTBOUND)).order(ByteOrder.LITTLE_ENDIAN);
+		outbound.flip();
+		bigger.put(outbound);
+		outbound = bigger;
+		return true;
+	}
+
+	/**
+	 * Write out as much of the outbound buffer as the socket takes, on the selector thread
+	 *
+	 * @return - false when the session has to be closed
+	 */
+	boolean flush() throws IOException {
+		synchronized (this) {
+			flushQueued = false;
+			if (overflowed) return false;
+			if (outbound.position() == 0) return true;
+			outbound.flip();
+			channel.write(outbound);
+			boolean pending = outbound.hasRemaining();
+			outbound.compact();
+			if (key.isValid())
+				key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+			return true;
+		}
+	}
+
+	/**
+	 * Close the connection and take the User it stood in for out of the exchange
+	 */
+	void close() {
+		if (closed) return;
+		closed = true;
+		key.cancel();
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			Logger.getLogger(GatewaySession.class.getName()).log(Level.FINE, null, ex);
+		}
+		if (userName == null) return;
+		Publisher[] publishers = { CurrentMarketPublisher.getInstance(), LastSalePublisher.getInstance(),
+				TickerPublisher.getInstance(), MessagePublisher.getInstance() };
+		for (Publisher p : publishers)
+			p.unSubscribeAll(this);
+		try {
+			UserCommandService.getInstance().disConnect(userName, connectionId);
+		} catch (ConnectionException ex) {
+			// already disconnected by the client
+		}
+	}
+}
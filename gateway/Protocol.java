@@ -0,0 +1,171 @@
+package gateway;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import codec.Flyweight;
+import price.Price;
+import price.PriceFactory;
+import tradable.Side;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *The wire format between a GatewayClient and the GatewayServer.  Everything
+ *sent either way is a little-endian frame:
+ *
+ *   int length - of the rest of the frame
+ *   byte type - which command, reply or event it is
+ *   int request id - chosen by the client, echoed in the reply, 0 on events
+ *   payload
+ *
+ *A client may send any number of requests without waiting for replies; the
+ *server carries out each connection's requests in the order they arrive
+ *and replies in the same order.  Events - market data and order messages -
+ *are the codec package's encoding of them, header included, and arrive in
+ *between replies whenever they are published.
+ *
+ *Payload Strings are an unsigned 16 bit length followed by UTF-8 bytes, a
+ *length of 0xFFFF standing for null.  Prices are longs, with
+ *Flyweight.MARKET_PRICE standing for MKT.  Sides are a byte, 'B' or 'S',
+ *so they can be read back as the String constants the book compares.
+ ***************************************************************************/
+final class Protocol {
+
+	// length and type and request id
+	static final int FRAME_HEADER = 9;
+	// longest frame either side accepts
+	static final int MAX_FRAME = 1 << 20;
+
+	//REQUESTS--------------------//
+	static final byte CONNECT = 1;
+	static final byte DISCONNECT = 2;
+	static final byte GET_BOOK_DEPTH = 3;
+	static final byte GET_MARKET_STATE = 4;
+	static final byte GET_ORDERS_WITH_REMAINING_QTY = 5;
+	static final byte GET_PRODUCTS = 6;
+	static final byte SUBMIT_ORDER = 7;
+	static final byte SUBMIT_ORDER_CANCEL = 8;
+	static final byte SUBMIT_QUOTE = 9;
+	static final byte SUBMIT_QUOTE_CANCEL = 10;
+	static final byte SUBSCRIBE_CURRENT_MARKET = 11;
+	static final byte SUBSCRIBE_LAST_SALE = 12;
+	static final byte SUBSCRIBE_MESSAGES = 13;
+	static final byte SUBSCRIBE_TICKER = 14;
+	static final byte UNSUBSCRIBE_CURRENT_MARKET = 15;
+	static final byte UNSUBSCRIBE_LAST_SALE = 16;
+	static final byte UNSUBSCRIBE_MESSAGES = 17;
+	static final byte UNSUBSCRIBE_TICKER = 18;
+
+	//REPLIES AND EVENTS--------------------//
+	// the request succeeded, payload is its result if it has one
+	static final byte OK = 64;
+	// the request failed, payload is the simple class name and the message of the exception
+	static final byte ERROR = 65;
+	// payload is an event encoded by codec.EventEncoder
+	static final byte EVENT = 66;
+	// payload is a market message String
+	static final byte MARKET_MESSAGE = 67;
+
+	private static final int NULL_STRING = 0xFFFF;
+
+	private Protocol() {
+	}
+
+	static String getString(ByteBuffer b) {
+		int length = b.getShort() & 0xFFFF;
+		if (length == NULL_STRING) return null;
+		String s = new String(b.array(), b.arrayOffset() + b.position(), length, StandardCharsets.UTF_8);
+		b.position(b.position() + length);
+		return s;
+	}
+
+	/**
+	 * @return - the Side, null for anything else so the exchange rejects it
+	 */
+	static Side getSide(ByteBuffer b) {
+		byte side = b.get();
+		return side == 'B' ? Side.BUY : side == 'S' ? Side.SELL : null;
+	}
+
+	static Price getPrice(ByteBuffer b) {
+		long value = b.getLong();
+		return value == Flyweight.MARKET_PRICE ? PriceFactory.makeMarketPrice() : PriceFactory.makeLimitPrice(value);
+	}
+
+	/***************************************************************************
+	 * Builds one frame at a time in a buffer it grows as needed.  Not thread
+	 * safe: each sending thread needs its own.
+	 ***************************************************************************/
+	static final class FrameWriter {
+
+		private ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+
+		FrameWriter begin(byte type, int requestId) {
+			buffer.clear();
+			buffer.putInt(0).put(type).putInt(requestId);
+			return this;
+		}
+
+		FrameWriter putByte(int b) {
+			ensure(1);
+			buffer.put((byte) b);
+			return this;
+		}
+
+		FrameWriter putInt(int i) {
+			ensure(4);
+			buffer.putInt(i);
+			return this;
+		}
+
+		FrameWriter putLong(long l) {
+			ensure(8);
+			buffer.putLong(l);
+			return this;
+		}
+
+		FrameWriter putPrice(Price p) {
+			return putLong(p.getIsMarket() ? Flyweight.MARKET_PRICE : p.getPrice());
+		}
+
+		FrameWriter putSide(Side side) {
+			return putByte(side == Side.BUY ? 'B' : side == Side.SELL ? 'S' : 0);
+		}
+
+		FrameWriter putString(String s) {
+			if (s == null) {
+				ensure(2);
+				buffer.putShort((short) NULL_STRING);
+				return this;
+			}
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length >= NULL_STRING) throw new IllegalArgumentException("String longer than 65534 bytes");
+			ensure(2 + bytes.length);
+			buffer.putShort((short) bytes.length).put(bytes);
+			return this;
+		}
+
+		/**
+		 * @return - the finished frame, from its position to its limit
+		 */
+		ByteBuffer finish() {
+			buffer.putInt(0, buffer.position() - 4);
+			buffer.flip();
+			return buffer;
+		}
+
+		private void ensure(int n) {
+			if (buffer.remaining() >= n) return;
+			if (buffer.position() + n - 4 > MAX_FRAME) throw new IllegalArgumentException("Frame longer than " + MAX_FRAME + " bytes");
+			int capacity = buffer.capacity();
+			while (capacity - buffer.position() < n)
+				capacity *= 2;
+			ByteBuffer bigger = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.flip();
+			bigger.put(buffer);
+			buffer = bigger;
+		}
+	}
+}
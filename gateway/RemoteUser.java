@@ -0,0 +1,46 @@
+package gateway;
+
+import client.UserImpl;
+import exceptions.ConnectionException;
+import exceptions.DataValidationException;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *A User trading on an exchange in another process, through a
+ *GatewayServer.  It keeps its position and display like any UserImpl;
+ *only its commands travel, over a GatewayClient of its own.  Requests
+ *can be pipelined through getClient(), with getConnectionId() once
+ *connected.
+ ***************************************************************************/
+public class RemoteUser extends UserImpl {
+
+	private final GatewayClient client;
+
+	/**
+	 * @param userName - name to trade under
+	 * @param host - where the GatewayServer runs
+	 * @param port - port it listens on
+	 * @throws DataValidationException
+	 * @throws ConnectionException - the server cannot be reached
+	 */
+	public RemoteUser(String userName, String host, int port) throws DataValidationException, ConnectionException {
+		this(userName, new GatewayClient(host, port));
+	}
+
+	private RemoteUser(String userName, GatewayClient c) throws DataValidationException {
+		super(userName, c);
+		client = c;
+	}
+
+	public GatewayClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Close the connection to the exchange, which disconnects this User there
+	 */
+	public void close() {
+		client.close();
+	}
+}
@@ -7,6 +7,7 @@ package gui;
 import javax.swing.JOptionPane;
 import price.Price;
 import price.PriceFactory;
+import tradable.Side;
 import book.*;
 import messages.MarketMessage.MarketState;
 
@@ -213,7 +214,7 @@ public class OrderEntryDisplay extends javax.swing.JFrame {
                 JOptionPane.showMessageDialog(this, "Invalid Numeric value for " + field + " field: " + value, "Invalid Numeric Data", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            String side = (buyRadio.isSelected() ? "BUY" : "SELL");  // This should match your format for storing a side - enum, String, etc
+            Side side = (buyRadio.isSelected() ? Side.BUY : Side.SELL);
 
             Price price = mktCheck.isSelected() ? PriceFactory.makeMarketPrice() : PriceFactory.makeLimitPrice(buyPrice);
             marketDisplay.getUser().submitOrder(product, price, v, side);
@@ -0,0 +1,378 @@
+package journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+import messages.MarketMessage.MarketState;
+import price.Price;
+import tradable.Order;
+import tradable.Quote;
+import tradable.QuoteSide;
+import tradable.Side;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *An append-only, sequenced write-ahead log of the commands accepted by the
+ *ProductService.  Each record is
+ *
+ *	[int bodyLength][int crc32(body)][long seq][byte type][payload]
+ *
+ *Appends copy the record into an in-memory buffer and return at once with
+ *a future; a single flusher thread writes whatever has accumulated through
+ *the FileChannel and forces it to disk, completing every future covered by
+ *that force (group commit).  One disk sync is shared by all the commands
+ *that arrived while the previous one was in progress.
+ ***************************************************************************/
+public final class Journal implements Closeable {
+
+	static final int HEADER_SIZE = 8;
+	static final int MAX_BODY_SIZE = 1 << 19;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final ThreadLocal<Encoder> ENCODER = new ThreadLocal<Encoder>() {
+		protected Encoder initialValue() {
+			return new Encoder();
+		}
+	};
+
+	private final FileChannel channel;
+	private final boolean force;
+	private final Thread flusher;
+	private final CRC32 crc = new CRC32();
+
+	// Guarded by this: appends fill pending while the flusher drains writing
+	private ByteBuffer pending = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private ByteBuffer writing = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private ArrayList<CompletableFuture<Void>> pendingWaiters = new ArrayList<CompletableFuture<Void>>();
+	private ArrayList<CompletableFuture<Void>> writingWaiters = new ArrayList<CompletableFuture<Void>>();
+	private long lastSeq;
+	private long length;
+	private long durableSeq;
+	private boolean closed;
+	private boolean stopped;
+	private IOException failure;
+
+	//CONSTRUCTOR --------//
+	private Journal(FileChannel ch, long last, long len, boolean forceToDisk) {
+		channel = ch;
+		lastSeq = last;
+		durableSeq = last;
+		length = len;
+		force = forceToDisk;
+		flusher = new Thread(new Runnable() {
+			public void run() {
+				flushLoop();
+			}
+		}, "JournalFlusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**********************************************************
+	 * Replay every intact record of the journal file into the
+	 * handler, discard any torn record at its tail, and open
+	 * the file for appending after the last intact record.
+	 *
+	 * @param file - journal file, created if it does not exist
+	 * @param handler - receives the replayed records, may be null
+	 * @param forceToDisk - false to skip the disk sync and rely on the OS page cache
+	 * @return - the open Journal
+	 * @throws IOException
+	 **********************************************************/
+	public static Journal open(File file, JournalHandler handler, boolean forceToDisk) throws IOException {
+		return open(file, Position.START, handler, forceToDisk);
+	}
+
+	/**********************************************************
+	 * As open(file, handler, forceToDisk), but replay only the
+	 * records after the given position - typically the one
+	 * stored with a snapshot.
+	 *
+	 * @param file - journal file, created if it does not exist
+	 * @param from - position of the last record not to replay
+	 * @param handler - receives the replayed records, may be null
+	 * @param forceToDisk - false to skip the disk sync and rely on the OS page cache
+	 * @return - the open Journal
+	 * @throws IOException
+	 **********************************************************/
+	public static Journal open(File file, Position from, JournalHandler handler, boolean forceToDisk) throws IOException {
+		FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (ch.size() < from.offset)
+				throw new IOException("Journal " + file + " ends before offset " + from.offset);
+			JournalReader reader = new JournalReader(ch);
+			long last = reader.replay(handler, from.offset, from.seq);
+			ch.truncate(reader.getValidLength());
+			ch.position(reader.getValidLength());
+			return new Journal(ch, last, reader.getValidLength(), forceToDisk);
+		} catch (IOException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return - sequence number of the last record appended
+	 */
+	public synchronized long getLastSeq() {
+		return lastSeq;
+	}
+
+	/**
+	 * @return - the last record appended and the file offset just past it
+	 */
+	public synchronized Position getPosition() {
+		return new Position(lastSeq, length);
+	}
+
+	/**********************************************************
+	 * Block until every record up to and including seq is on
+	 * disk
+	 *
+	 * @param seq
+	 * @throws IOException - if the journal could not be written
+	 * @throws InterruptedException
+	 **********************************************************/
+	public synchronized void awaitDurable(long seq) throws IOException, InterruptedException {
+		while (durableSeq < seq) {
+			if (failure != null) throw failure;
+			if (stopped) throw new IOException("Journal is closed");
+			wait();
+		}
+	}
+
+	/**************************************************
+	 * Record Appends - each future completes once the
+	 * record is durable
+	 **************************************************/
+
+	public CompletableFuture<Void> appendCreateProduct(String symbol, String algorithm, int productIndex) {
+		return append(RecordType.PRODUCT, encoder().putString(symbol).putString(algorithm).putInt(productIndex));
+	}
+
+	public CompletableFuture<Void> appendMarketState(MarketState state) {
+		return append(RecordType.MARKET_STATE, encoder().putByte(state.ordinal()));
+	}
+
+	public CompletableFuture<Void> appendOpenBook(String symbol) {
+		return append(RecordType.OPEN_BOOK, encoder().putString(symbol));
+	}
+
+	public CompletableFuture<Void> appendCloseBook(String symbol) {
+		return append(RecordType.CLOSE_BOOK, encoder().putString(symbol));
+	}
+
+	public CompletableFuture<Void> appendOrder(Order o) {
+		return append(RecordType.ORDER, encoder().putString(o.getUser()).putString(o.getProduct())
+				.putPrice(o.getPrice()).putInt(o.getOriginalVolume()).putString(o.getSide().name()).putLong(o.getOrderId()));
+	}
+
+	public CompletableFuture<Void> appendQuote(Quote q) {
+		QuoteSide buy = q.getQuoteSide(Side.BUY);
+		QuoteSide sell = q.getQuoteSide(Side.SELL);
+		return append(RecordType.QUOTE, encoder().putString(q.getUserName()).putString(q.getProductSymbol())
+				.putPrice(buy.getPrice()).putInt(buy.getOriginalVolume()).putLong(buy.getOrderId())
+				.putPrice(sell.getPrice()).putInt(sell.getOriginalVolume()).putLong(sell.getOrderId()));
+	}
+
+	public CompletableFuture<Void> appendOrderCancel(String symbol, Side side, String orderId) {
+		return append(RecordType.ORDER_CANCEL, encoder().putString(symbol).putString(side.name()).putString(orderId));
+	}
+
+	public CompletableFuture<Void> appendQuoteCancel(String user, String symbol) {
+		return append(RecordType.QUOTE_CANCEL, encoder().putString(user).putString(symbol));
+	}
+
+	/**********************************************************
+	 * Stop accepting records, flush everything appended so far
+	 * and close the file
+	 **********************************************************/
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+			notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+
+	private static Encoder encoder() {
+		Encoder e = ENCODER.get();
+		e.buf.clear();
+		return e;
+	}
+
+	private synchronized CompletableFuture<Void> append(RecordType type, Encoder payload) {
+		CompletableFuture<Void> durable = new CompletableFuture<Void>();
+		if (closed || failure != null) {
+			durable.completeExceptionally(failure != null ? failure : new IOException("Journal is closed"));
+			return durable;
+		}
+		int bodySize = 9 + payload.buf.position();
+		if (bodySize > MAX_BODY_SIZE) {
+			durable.completeExceptionally(new IOException("Journal record too large: " + bodySize + " bytes"));
+			return durable;
+		}
+		while (pending.remaining() < HEADER_SIZE + bodySize) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				durable.completeExceptionally(e);
+				return durable;
+			}
+		}
+		if (pending.position() == 0) notifyAll();
+
+		int start = pending.position();
+		pending.putInt(bodySize);
+		pending.putInt(0);
+		pending.putLong(++lastSeq);
+		pending.put(type.getCode());
+		payload.buf.flip();
+		pending.put(payload.buf);
+
+		ByteBuffer body = pending.duplicate();
+		body.limit(start + HEADER_SIZE + bodySize).position(start + HEADER_SIZE);
+		crc.reset();
+		crc.update(body);
+		pending.putInt(start + 4, (int) crc.getValue());
+		length += HEADER_SIZE + bodySize;
+
+		pendingWaiters.add(durable);
+		return durable;
+	}
+
+	private void flushLoop() {
+		while (true) {
+			ByteBuffer buf;
+			ArrayList<CompletableFuture<Void>> waiters;
+			long upTo;
+			synchronized (this) {
+				while (pending.position() == 0 && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// only close() ends the flusher
+					}
+				}
+				if (pending.position() == 0) {
+					stopped = true;
+					notifyAll();
+					return;
+				}
+				buf = pending;
+				pending = writing;
+				writing = buf;
+				waiters = pendingWaiters;
+				pendingWaiters = writingWaiters;
+				writingWaiters = waiters;
+				upTo = lastSeq;
+				// appends waiting for room can use the emptied buffer
+				notifyAll();
+			}
+
+			IOException error = null;
+			try {
+				buf.flip();
+				while (buf.hasRemaining()) channel.write(buf);
+				if (force) channel.force(false);
+			} catch (IOException e) {
+				error = e;
+			}
+			buf.clear();
+
+			synchronized (this) {
+				if (error == null) durableSeq = upTo;
+				else failure = error;
+				notifyAll();
+			}
+			for (CompletableFuture<Void> f : waiters) {
+				if (error == null) f.complete(null);
+				else f.completeExceptionally(error);
+			}
+			waiters.clear();
+		}
+	}
+
+	/********************************************************
+	 * A point in the journal: the sequence number of a 
+	 * record and the file offset just past it
+	 ********************************************************/
+	public static final class Position {
+		public static final Position START = new Position(0, 0);
+
+		public final long seq;
+		public final long offset;
+
+		public Position(long seq, long offset) {
+			this.seq = seq;
+			this.offset = offset;
+		}
+	}
+
+	/********************************************************
+	 * Builds a record payload on the appending thread,
+	 * outside of the Journal lock
+	 ********************************************************/
+	private static final class Encoder {
+		private ByteBuffer buf = ByteBuffer.allocate(256);
+
+		private void ensure(int n) {
+			if (buf.remaining() >= n) return;
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n));
+			buf.flip();
+			bigger.put(buf);
+			buf = bigger;
+		}
+
+		Encoder putByte(int b) {
+			ensure(1);
+			buf.put((byte) b);
+			return this;
+		}
+
+		Encoder putInt(int i) {
+			ensure(4);
+			buf.putInt(i);
+			return this;
+		}
+
+		Encoder putLong(long l) {
+			ensure(8);
+			buf.putLong(l);
+			return this;
+		}
+
+		Encoder putPrice(Price p) {
+			ensure(9);
+			buf.put((byte) (p.getIsMarket() ? 1 : 0));
+			buf.putLong(p.getPrice());
+			return this;
+		}
+
+		Encoder putString(String s) {
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			if (b.length > 0xFFFF) throw new IllegalArgumentException("String too long for the journal: " + b.length + " bytes");
+			ensure(2 + b.length);
+			buf.putShort((short) b.length);
+			buf.put(b);
+			return this;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package journal;
+
+import messages.MarketMessage.MarketState;
+import price.Price;
+import tradable.Side;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Receives each record read back from a Journal, in sequence order.
+ *Every call carries the record's sequence number.
+ ***************************************************************************/
+public interface JournalHandler {
+
+	// algorithm is registered with TradeProcessorFactory; productIndex is the one its ids carry - see OrderId
+	void createProduct(long seq, String symbol, String algorithm, int productIndex);
+
+	void marketState(long seq, MarketState state);
+
+	void openBook(long seq, String symbol);
+
+	void closeBook(long seq, String symbol);
+
+	// ids are the numeric form of the Tradable's id - see OrderId
+	void order(long seq, String user, String symbol, Price price, int volume, Side side, long id);
+
+	void quote(long seq, String user, String symbol, Price buyPrice, int buyVolume, long buyId,
+			Price sellPrice, int sellVolume, long sellId);
+
+	void orderCancel(long seq, String symbol, Side side, String orderId);
+
+	void quoteCancel(long seq, String user, String symbol);
+}
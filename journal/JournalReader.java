@@ -0,0 +1,149 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import messages.MarketMessage.MarketState;
+import price.Price;
+import price.PriceFactory;
+import tradable.Side;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Reads Journal records from a record boundary - the start of the file or a
+ *snapshot's position - and hands each one to a JournalHandler.  Reading
+ *stops at the first record that is incomplete or fails its checksum - a
+ *write torn by a crash - and everything from there on is treated as never
+ *written.
+ ***************************************************************************/
+final class JournalReader {
+
+	private static final MarketState[] STATES = MarketState.values();
+
+	private final FileChannel channel;
+	private final CRC32 crc = new CRC32();
+	private ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+	private long validLength;
+	private boolean eof;
+
+	JournalReader(FileChannel ch) {
+		channel = ch;
+	}
+
+	/**
+	 * @return - length of the file up to the end of the last intact record
+	 */
+	long getValidLength() {
+		return validLength;
+	}
+
+	/**********************************************************
+	 * @param handler - receives every intact record, may be null
+	 * @param offset - where to start reading, on a record boundary
+	 * @param seq - sequence number of the record just before offset
+	 * @return - sequence number of the last intact record
+	 * @throws IOException
+	 **********************************************************/
+	long replay(JournalHandler handler, long offset, long seq) throws IOException {
+		channel.position(offset);
+		buf.clear().flip();
+		eof = false;
+		long position = offset;
+		long lastSeq = seq;
+
+		while (fill(Journal.HEADER_SIZE)) {
+			int bodySize = buf.getInt();
+			int checksum = buf.getInt();
+			if (bodySize < 9 || bodySize > Journal.MAX_BODY_SIZE || !fill(bodySize)) break;
+
+			ByteBuffer body = buf.slice();
+			body.limit(bodySize);
+			crc.reset();
+			crc.update(body.duplicate());
+			if ((int) crc.getValue() != checksum) break;
+			buf.position(buf.position() + bodySize);
+
+			long recordSeq = body.getLong();
+			if (recordSeq != lastSeq + 1)
+				throw new IOException("Journal record " + recordSeq + " at offset " + position + " does not follow " + lastSeq);
+			RecordType type = RecordType.fromCode(body.get());
+			if (type == null) throw new IOException("Unknown journal record type at offset " + position);
+			if (handler != null) dispatch(recordSeq, type, body, handler);
+
+			position += Journal.HEADER_SIZE + bodySize;
+			lastSeq = recordSeq;
+		}
+		validLength = position;
+		return lastSeq;
+	}
+
+	private void dispatch(long seq, RecordType type, ByteBuffer b, JournalHandler handler) {
+		switch (type) {
+		case PRODUCT:
+			handler.createProduct(seq, getString(b), getString(b), b.getInt());
+			break;
+		case MARKET_STATE:
+			handler.marketState(seq, STATES[b.get()]);
+			break;
+		case OPEN_BOOK:
+			handler.openBook(seq, getString(b));
+			break;
+		case CLOSE_BOOK:
+			handler.closeBook(seq, getString(b));
+			break;
+		case ORDER:
+			handler.order(seq, getString(b), getString(b), getPrice(b), b.getInt(), getSide(b), b.getLong());
+			break;
+		case QUOTE:
+			handler.quote(seq, getString(b), getString(b), getPrice(b), b.getInt(), b.getLong(),
+					getPrice(b), b.getInt(), b.getLong());
+			break;
+		case ORDER_CANCEL:
+			handler.orderCancel(seq, getString(b), getSide(b), getString(b));
+			break;
+		case QUOTE_CANCEL:
+			handler.quoteCancel(seq, getString(b), getString(b));
+			break;
+		}
+	}
+
+	// Strings are interned: parts of the book still compare user names by reference
+	private static String getString(ByteBuffer b) {
+		int length = b.getShort() & 0xFFFF;
+		String s = new String(b.array(), b.arrayOffset() + b.position(), length, StandardCharsets.UTF_8);
+		b.position(b.position() + length);
+		return s.intern();
+	}
+
+	// Sides are written by name
+	private static Side getSide(ByteBuffer b) {
+		return Side.parse(getString(b));
+	}
+
+	private static Price getPrice(ByteBuffer b) {
+		boolean market = b.get() != 0;
+		long value = b.getLong();
+		return market ? PriceFactory.makeMarketPrice() : PriceFactory.makeLimitPrice(value);
+	}
+
+	// Make at least n bytes readable in buf, reading more of the file as needed
+	private boolean fill(int n) throws IOException {
+		if (buf.remaining() >= n) return true;
+		if (buf.capacity() < n) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(n, buf.capacity() * 2));
+			bigger.put(buf);
+			buf = bigger;
+		} else {
+			buf.compact();
+		}
+		while (buf.position() < n && !eof) {
+			if (channel.read(buf) < 0) eof = true;
+		}
+		buf.flip();
+		return buf.remaining() >= n;
+	}
+}
@@ -0,0 +1,42 @@
+package journal;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *The kinds of record held in the Journal.  The code is the single byte
+ *written in each record, so existing codes must never be renumbered.
+ ***************************************************************************/
+public enum RecordType {
+	PRODUCT(1),
+	MARKET_STATE(2),
+	OPEN_BOOK(3),
+	CLOSE_BOOK(4),
+	ORDER(5),
+	QUOTE(6),
+	ORDER_CANCEL(7),
+	QUOTE_CANCEL(8);
+
+	private static final RecordType[] BY_CODE = new RecordType[9];
+	static {
+		for (RecordType t : values()) BY_CODE[t.code] = t;
+	}
+
+	private final byte code;
+
+	RecordType(int c) {
+		code = (byte) c;
+	}
+
+	public byte getCode() {
+		return code;
+	}
+
+	/**
+	 * @param code
+	 * @return - the RecordType written with that code, or null if the code is unknown
+	 */
+	public static RecordType fromCode(byte code) {
+		if (code < 0 || code >= BY_CODE.length) return null;
+		return BY_CODE[code];
+	}
+}
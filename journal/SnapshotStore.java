@@ -0,0 +1,167 @@
+package journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import messages.MarketMessage.MarketState;
+
+/***************************************************************************
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ *
+ *Keeps snapshot files in a directory, one file per snapshot named after
+ *the journal sequence number it was taken at.  A snapshot holds the journal
+ *Position that recovery resumes from, the market state at that position,
+ *and one opaque image per product book.  Files are written to a temporary
+ *name, synced and then renamed, so a crash never leaves a partial snapshot
+ *under a real name; a trailing checksum catches anything else.
+ ***************************************************************************/
+public final class SnapshotStore {
+
+	private static final int MAGIC = 0x534E4150; // "SNAP"
+	private static final int VERSION = 1;
+	private static final String PREFIX = "snapshot-";
+	private static final String SUFFIX = ".bin";
+	// older snapshots are kept in case the newest one turns out to be unreadable
+	private static final int KEEP = 2;
+
+	private static final MarketState[] STATES = MarketState.values();
+
+	private final File dir;
+
+	public SnapshotStore(File directory) throws IOException {
+		dir = directory;
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create snapshot directory " + dir);
+	}
+
+	/**********************************************************
+	 * Write a snapshot and remove the ones it supersedes
+	 *
+	 * @param position - journal position recovery resumes from
+	 * @param state - market state at that position
+	 * @param books - one image per product book
+	 * @throws IOException
+	 **********************************************************/
+	public void write(Journal.Position position, MarketState state, List<byte[]> books) throws IOException {
+		File target = new File(dir, String.format("%s%020d%s", PREFIX, position.seq, SUFFIX));
+		File temp = new File(dir, target.getName() + ".tmp");
+
+		FileOutputStream file = new FileOutputStream(temp);
+		try {
+			CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(position.seq);
+			out.writeLong(position.offset);
+			out.writeByte(state.ordinal());
+			out.writeInt(books.size());
+			for (byte[] image : books) {
+				out.writeInt(image.length);
+				out.write(image);
+			}
+			out.flush();
+			new DataOutputStream(file).writeLong(checked.getChecksum().getValue());
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+		List<File> all = list();
+		for (int i = KEEP; i < all.size(); i++)
+			all.get(i).delete();
+	}
+
+	/**********************************************************
+	 * @return - the newest readable snapshot, or null if there is none
+	 **********************************************************/
+	public Snapshot readLatest() {
+		for (File f : list()) {
+			try {
+				return read(f);
+			} catch (IOException e) {
+				Logger.getLogger(SnapshotStore.class.getName()).log(Level.WARNING, "Skipping unreadable snapshot " + f, e);
+			}
+		}
+		return null;
+	}
+
+	private static Snapshot read(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+		try {
+			CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+			DataInputStream body = new DataInputStream(checked);
+			if (body.readInt() != MAGIC || body.readInt() != VERSION)
+				throw new IOException("not a snapshot file");
+			Journal.Position position = new Journal.Position(body.readLong(), body.readLong());
+			MarketState state = STATES[body.readByte()];
+			int count = body.readInt();
+			ArrayList<byte[]> books = new ArrayList<byte[]>(count);
+			for (int i = 0; i < count; i++) {
+				byte[] image = new byte[body.readInt()];
+				body.readFully(image);
+				books.add(image);
+			}
+			long expected = checked.getChecksum().getValue();
+			if (in.readLong() != expected)
+				throw new IOException("checksum mismatch");
+			return new Snapshot(position, state, books);
+		} finally {
+			in.close();
+		}
+	}
+
+	// Snapshot files, newest first
+	private List<File> list() {
+		File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+		if (files == null) return new ArrayList<File>();
+		List<File> sorted = new ArrayList<File>(Arrays.asList(files));
+		Collections.sort(sorted, Collections.reverseOrder());
+		return sorted;
+	}
+
+	/********************************************************
+	 * A snapshot read back from disk
+	 ********************************************************/
+	public static final class Snapshot {
+		private final Journal.Position position;
+		private final MarketState state;
+		private final List<byte[]> books;
+
+		private Snapshot(Journal.Position p, MarketState s, List<byte[]> b) {
+			position = p;
+			state = s;
+			books = b;
+		}
+
+		public Journal.Position getPosition() {
+			return position;
+		}
+
+		public MarketState getMarketState() {
+			return state;
+		}
+
+		public List<byte[]> getBooks() {
+			return books;
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package messages;
 
 import price.Price;
+import tradable.Order;
+import tradable.QuoteSide;
+import tradable.Side;
+import tradable.Tradable;
 import exceptions.*;
 
 
@@ -8,11 +12,21 @@ import exceptions.*;
  * @author Steven Mcrae, Briant Belcote, Tom Meier 
  * 
  *  Encapsulates data related to the cancellation of an order or
- *  quote-side by a user, or by the trading system. CancelMessage objects
- *  are immutable
+ *  quote-side by a user, or by the trading system.  A cancel of a
+ *  booked Tradable keeps the volumes its description needs and only
+ *  makes the description when getDetails() is called.  When the
+ *  MessagePublisher reuses messages, a CancelMessage handed to a
+ *  subscriber is only good until its callback returns and must not be
+ *  changed - copy() one to keep it
  *******************************************************/
 public class CancelMessage extends Message implements Comparable<CancelMessage> {
 
+	// the details describe a cancelled Tradable, from the fields below, rather than being given as text
+	private boolean describesTradable;
+	private boolean quote;
+	private int originalVolume;
+	private int cancelledVolume;
+
 	/***************************************************************************
 	 * @param user  The String username of the user whose order or quote-side is being cancelled
 	 * @param product The string stock symbol that the cancelled order or quote-side was submitted for 
@@ -25,10 +39,73 @@ public class CancelMessage extends Message implements Comparable<CancelMessage>
 	 * @throws InvalidVolumeException
 	 * @throws InvalidPriceException
 	 ***************************************************************************/
-	public CancelMessage(String user, String product, Price price, int volume, String details, String side, String id)
+	public CancelMessage(String user, String product, Price price, int volume, String details, Side side, String id)
 			throws InvalidMessageException, InvalidVolumeException,InvalidPriceException {
 			super(user, product, price, volume, details, side, id);
 		}
+
+	/***************************************************************************
+	 * The cancel of a booked Tradable's remaining volume, described the way
+	 * the Tradable's toString() would have been when it was cancelled
+	 * 
+	 * @param t - the Tradable being cancelled
+	 * @throws InvalidMessageException
+	 * @throws InvalidVolumeException
+	 * @throws InvalidPriceException
+	 ***************************************************************************/
+	public CancelMessage(Tradable t) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException {
+		super(t.getUser(), t.getProduct(), t.getPrice(), t.getRemainingVolume(), null, t.getSide(), t.getId());
+		describe(t);
+	}
+
+	private CancelMessage(CancelMessage cm) {
+		super(cm);
+		describesTradable = cm.describesTradable;
+		quote = cm.quote;
+		originalVolume = cm.originalVolume;
+		cancelledVolume = cm.cancelledVolume;
+	}
+
+	private void describe(Tradable t) {
+		describesTradable = true;
+		quote = t.isQuote();
+		originalVolume = t.getOriginalVolume();
+		cancelledVolume = t.getCancelledVolume();
+	}
+
+	@Override
+	protected String formatDetails() {
+		if (!describesTradable) return null;
+		if (quote) return QuoteSide.describe(getPrice(), originalVolume, cancelledVolume, getId());
+		return Order.describe(getUser(), getSide(), getVolume(), getProduct(), getPrice(), originalVolume, cancelledVolume, getId());
+	}
+
+	/**
+	 * @return - a CancelMessage of its own with the same content, safe to keep
+	 */
+	public CancelMessage copy() {
+		return new CancelMessage(this);
+	}
+
+	/**
+	 * Reuse this CancelMessage for another cancel, see Message.reset
+	 * @return - this CancelMessage
+	 */
+	public CancelMessage reset(String user, String product, Price price, int volume, String details, Side side, String id) {
+		super.reset(user, product, price, volume, details, side, id);
+		describesTradable = false;
+		return this;
+	}
+
+	/**
+	 * Reuse this CancelMessage for the cancel of another booked Tradable
+	 * @return - this CancelMessage
+	 */
+	public CancelMessage reset(Tradable t) {
+		super.reset(t.getUser(), t.getProduct(), t.getPrice(), t.getRemainingVolume(), null, t.getSide(), t.getId());
+		describe(t);
+		return this;
+	}
 	
 	public int compareTo(CancelMessage cm)   {
 		return getPrice().compareTo(cm.getPrice());
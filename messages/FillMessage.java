@@ -1,6 +1,7 @@
 package messages;
 
 import price.Price;
+import tradable.Side;
 import exceptions.InvalidMessageException;
 import exceptions.InvalidPriceException;
 import exceptions.InvalidVolumeException;
@@ -8,10 +9,17 @@ import exceptions.InvalidVolumeException;
 
 /*****************************************************************
  *  @author Steven Mcrae, Briant Belcote, Tom Meier 
- *   encapsulates data related to the fill (trade) of an order or quote-side. FillMessages are immutable
+ *   encapsulates data related to the fill (trade) of an order or quote-side.  Fills the
+ *   engine makes carry the volume left rather than details text, which is only made when
+ *   getDetails() is called.  When the
+ *   MessagePublisher reuses messages, a FillMessage handed to a subscriber is only good
+ *   until its callback returns and must not be changed - copy() one to keep it
  *****************************************************************/
 public class FillMessage extends Message implements Comparable<FillMessage> {
 
+	// volume left after the fill, the details when they are not given as text, -1 when they are
+	private int leaving = -1;
+
 	/***************************************************************************
 	 * @param user The String username of the user whose order or quote-side was filled
 	 * @param product  The string stock symbol that the filled order or quote-side was submitted for 
@@ -24,10 +32,61 @@ public class FillMessage extends Message implements Comparable<FillMessage> {
 	 * @throws InvalidVolumeException
 	 * @throws InvalidPriceException
 	 ***************************************************************************/
-	public FillMessage(String user, String product, Price price, int volume, String details, String side, String id)
+	public FillMessage(String user, String product, Price price, int volume, String details, Side side, String id)
 			throws InvalidMessageException, InvalidVolumeException,InvalidPriceException {
 		super(user, product, price, volume, details, side, id);
 	}
+
+	/***************************************************************************
+	 * A FillMessage whose details are "leaving " and the volume left
+	 * 
+	 * @param leaving - the volume of the order or quote-side left after the fill
+	 * @throws InvalidMessageException
+	 * @throws InvalidVolumeException
+	 * @throws InvalidPriceException
+	 ***************************************************************************/
+	public FillMessage(String user, String product, Price price, int volume, int leaving, Side side, String id)
+			throws InvalidMessageException, InvalidVolumeException,InvalidPriceException {
+		super(user, product, price, volume, null, side, id);
+		this.leaving = leaving;
+	}
+
+	private FillMessage(FillMessage fm) {
+		super(fm);
+		leaving = fm.leaving;
+	}
+
+	@Override
+	protected String formatDetails() {
+		return leaving < 0 ? null : "leaving " + leaving;
+	}
+
+	/**
+	 * @return - a FillMessage of its own with the same content, safe to keep
+	 */
+	public FillMessage copy() {
+		return new FillMessage(this);
+	}
+
+	/**
+	 * Reuse this FillMessage for another fill, see Message.reset
+	 * @return - this FillMessage
+	 */
+	public FillMessage reset(String user, String product, Price price, int volume, String details, Side side, String id) {
+		super.reset(user, product, price, volume, details, side, id);
+		leaving = -1;
+		return this;
+	}
+
+	/**
+	 * Reuse this FillMessage for another fill, with the volume left as its details
+	 * @return - this FillMessage
+	 */
+	public FillMessage reset(String user, String product, Price price, int volume, int leaving, Side side, String id) {
+		super.reset(user, product, price, volume, null, side, id);
+		this.leaving = leaving;
+		return this;
+	}
 	
 	public int compareTo(FillMessage fm) {
 		return getPrice().compareTo(fm.getPrice());
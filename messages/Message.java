@@ -5,10 +5,13 @@ import exceptions.InvalidPriceException;
 import exceptions.InvalidVolumeException;
 
 import price.Price;
+import tradable.Side;
 
 /*********************************************************************
  * @author Steven Mcrae, Briant Belcote, Tom Meier 
- *  Abstract class to define common data of CancelMessage and FillMessage 
+ *  Abstract class to define common data of CancelMessage and FillMessage.
+ *  Subscribers only read a Message - the engine alone changes one, through
+ *  reset, and only while no subscriber is being handed it
  *********************************************************************/
 public class Message  {
 	private String user; 
@@ -16,8 +19,8 @@ public class Message  {
 	private Price price; 	
 	private int volume; 
 	private String details; 	
-	private String side;
-	public String id;
+	private Side side;
+	private String id;
 
 	/********************************************
 	 * @param user user name of the user 					 
@@ -32,7 +35,7 @@ public class Message  {
 	 * @throws InvalidPriceException
 	 *********************************************/
 	public Message(String user, String product, Price price, int volume,
-			String details, String side, String id) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException {
+			String details, Side side, String id) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException {
 		
 		setUser(user);
 		setProduct(product);
@@ -42,6 +45,33 @@ public class Message  {
 		setSide(side);
 		setId(id);
 	}
+
+	/********************************************
+	 * Copy a Message, for a subscriber that keeps
+	 * one past its callback
+	 * @param m - the Message to copy
+	 *********************************************/
+	protected Message(Message m) {
+		reset(m.user, m.product, m.price, m.volume, m.details, m.side, m.id);
+	}
+
+	/********************************************
+	 * Overwrite every field of a Message the engine
+	 * reuses.  Nothing is validated again - the
+	 * fields come from Tradables that already were
+	 * @return - this Message
+	 *********************************************/
+	protected Message reset(String user, String product, Price price, int volume,
+			String details, Side side, String id) {
+		this.user = user;
+		this.product = product;
+		this.price = price;
+		this.volume = volume;
+		this.details = details;
+		this.side = side;
+		this.id = id;
+		return this;
+	}
 	
 	//GETTERS -----------------//
 	public String getUser() {
@@ -60,11 +90,23 @@ public class Message  {
 		return volume;
 	}
 
+	/**
+	 * @return - the text description, made from the Message's fields the first time it is asked for
+	 * when it was not given as text
+	 */
 	public String getDetails() {
+		if (details == null) details = formatDetails();
 		return details;
 	}
+
+	/**
+	 * @return - the text description of a Message whose details were not given as text, null if there is none
+	 */
+	protected String formatDetails() {
+		return null;
+	}
 	
-	public String getSide() {
+	public Side getSide() {
 		return side;
 	}
 	
@@ -88,18 +130,18 @@ public class Message  {
 		this.price = price;
 	}
 
-	public void setVolume(int volume) throws InvalidVolumeException {
+	private void setVolume(int volume) throws InvalidVolumeException {
 		if (volume < 0) throw new InvalidVolumeException("Volume must be zero or greater");
 		this.volume = volume;
 	}
 
-	public void setDetails(String details) throws InvalidMessageException  {
+	private void setDetails(String details) throws InvalidMessageException  {
 		if(user == null) throw new InvalidMessageException("Details cannot be null");
 		this.details = details;
 	}
 
-	private void setSide(String side)  throws InvalidMessageException  {
-		if(side != "BUY" && side != "SELL") throw new InvalidMessageException("Side must be BUY or SELL");
+	private void setSide(Side side)  throws InvalidMessageException  {
+		if(side == null) throw new InvalidMessageException("Side must be BUY or SELL");
 		this.side = side;
 	}
 
@@ -2,14 +2,14 @@
 
 package price;
 
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 
 import exceptions.InvalidPriceException;
 
 /**
  * Immutable object that defines currency/value (or nonvalue for MKT prices) for tradeable objects.
- * Values are stored in long form - the two places furthest to the right represent cents - decimal notation is provided in the stringPrice variable.
+ * Values are stored in long form - the two places furthest to the right represent cents - decimal notation is provided in the stringPrice variable,
+ * which is formatted on first use.
  * Prices may be limit Prices (standard value based Price) or Market Price
  * <p>
  * Market prices are nonvalue representations - used to indicate an order should process immediately.  These objects are constructed without a long value
@@ -27,21 +27,20 @@ import exceptions.InvalidPriceException;
  *@version 1.1 April 23 2015
  */
 public class Price implements Comparable<Price> {
-	private long price;
+	private final long price;
 	private String stringPrice;
-	private boolean isMarket;
+	private final boolean isMarket;
 	
 	//CONSTRUCTORS---------------//
 	//Constructor package visible to support Flyweight pattern with PriceFactory in same package
 	Price(){
+		this.price = 0;
 		this.stringPrice = "MKT";
 		this.isMarket = true;
 	}
 	//Constructor package visible to support Flyweight pattern with PriceFactory in same package
 	Price (long price){
 		this.price = price;
-		DecimalFormat a = new DecimalFormat("$#,##0.00;$-#,##0.00");
-		this.stringPrice = a.format(price/100.0).toString();
 		this.isMarket = false;
 	}
 	
@@ -55,7 +54,12 @@ public class Price implements Comparable<Price> {
 	}
 	
 	public String getString(){
-		return stringPrice;
+		String s = stringPrice;
+		if (s == null) {
+			s = PriceFormat.format(price);
+			stringPrice = s;
+		}
+		return s;
 	}
 	
 	//UTILITIES ----------//
@@ -102,8 +106,19 @@ public class Price implements Comparable<Price> {
 		return (getIsMarket() == false && (this.getPrice() < p.getPrice()));
 	}
 	
-	public boolean equals (Price p) {
-		return (!getIsMarket() && this.getPrice() == p.getPrice());
+	//Value equality, the one rule for every Price - a MKT Price equals a MKT Price.  Prices past the PriceFactory
+	//cache limit are not shared instances, so Prices are never compared by reference
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof Price)) return false;
+		Price p = (Price) o;
+		return isMarket == p.isMarket && price == p.price;
+	}
+	
+	@Override
+	public int hashCode() {
+		return isMarket ? -1 : Long.hashCode(price);
 	}
 	
 	public boolean isMarket() throws InvalidPriceException {
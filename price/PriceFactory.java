@@ -1,40 +1,40 @@
 package price;
 
-import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Globally accessible class based on the flyweight design pattern to control the creation of duplicate Price objects.  
  * <p>
- * PriceFactory utilizes a static variable marketPrice as the single Price object for Market Prices and a HashMap for 
- * inventorying and controlling the creation of tradeable objects.
+ * PriceFactory utilizes a static variable marketPrice as the single Price object for Market Prices, a tick ladder for 
+ * inventorying the Prices that trading normally uses, and a PriceTable for any other value.  Both are keyed on the 
+ * primitive long value and are safe to use from any number of threads.
  * <p>
- * HashMap <K, V> 
- * K = (key) Long value of Price object.
- * V = (value) Price object.
+ * TICK LADDER - array indexed by the long value (in cents) for values 0 to LADDER_TICKS - 1.  Slots are filled on first
+ * use with a compare-and-set so lookups never lock.
+ * <p>
+ * PRICE TABLE - open addressing table for negative values and values above the ladder (account costs, position values).
+ * Bounded to TABLE_MAX_SIZE entries.
  *<p>
  *LIMIT PRICE constructors Generates a new Price from a string or long argument with a call to newPrice 
  *<p>
  *MARKET PRICE constructors  Generates a nonvalue Price object for immediate trading.  
  *Each call to makeMarketPrice returns the initiated Price from the static variable marketPrice
  *<p>
- *NEW PRICE method Tests if a Price has already been created, if so -return provides the Price object stored in the HashMap pricetable
- *Otherwise creates a new Price, adds it to the HashMap pricetable, and returns the new Price.
+ *NEW PRICE method Tests if a Price has already been created, if so -return provides the Price object stored in the tick
+ *ladder or PriceTable.  Otherwise creates a new Price, adds it to the ladder or PriceTable, and returns the new Price.
  *@author Team "Write Once - Run Everywhere"Steven McRae, Thomas Meier, Briant Becote 
  *@version 1.1 April 23 2015
  */
 public class PriceFactory {
-	private static HashMap <Long, Price> pricetable = new HashMap<Long, Price>();
+	static final int LADDER_TICKS = 1 << 17; // $0.00 to $1,310.71
+	static final int TABLE_MAX_SIZE = 1 << 16;
+	final private static AtomicReferenceArray<Price> ladder = new AtomicReferenceArray<Price>(LADDER_TICKS);
+	final private static PriceTable pricetable = new PriceTable(1024, TABLE_MAX_SIZE);
 	final private static Price marketPrice = new Price();
 
 	//LIMIT PRICES ----------------//
 	public static Price makeLimitPrice(String value){
-		int decLocation = value.indexOf(".");
-		if (decLocation == -1 ) value += "00";
-		else if (decLocation == value.length() - 1)  value += "00";
-		else if (decLocation == value.length() - 2)  value += "0";
-		value = value.replaceAll("[$,.]", ""); 
-		double decimalPrice = Double.parseDouble(value);
-		return newPrice((long)(decimalPrice));
+		return newPrice(PriceFormat.parse(value));
 	}
 	public static Price makeLimitPrice(long value){
 		return newPrice(value);
@@ -47,10 +47,13 @@ public class PriceFactory {
 	
 	//FACTORY METHOD ----------//
 	public static Price newPrice(long value){
-		Long valueLong = (Long) value;
-		if (pricetable.containsKey(valueLong)) return pricetable.get(valueLong);
-		Price a = new Price(value); 
-		pricetable.put(valueLong, a);
-		return a;
+		if (value < 0 || value >= LADDER_TICKS) return pricetable.get(value);
+		
+		int tick = (int) value;
+		Price a = ladder.get(tick);
+		if (a != null) return a;
+		a = new Price(value); 
+		if (ladder.compareAndSet(tick, null, a)) return a;
+		return ladder.get(tick);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package price;
+
+import java.text.DecimalFormat;
+
+/**
+ * Fixed point conversions between long cent values and their dollar String forms, used by Price and PriceFactory in
+ * place of DecimalFormat and regular expression parsing.
+ * <p>
+ * FORMAT - produces the same text as DecimalFormat("$#,##0.00;$-#,##0.00") applied to value/100.0, written right to 
+ * left into a per-thread char buffer so the only allocation is the resulting String.
+ * <p>
+ * PARSE - produces the same long value as the original PriceFactory parser: the digits left after removing '$', ',' and '.' 
+ * are read as whole cents, padded with zeros when the text has fewer than two digits after its first '.'. Text that is not a 
+ * plain signed digit string (exponents, whitespace, more than 15 digits) is passed to the original parser so results and 
+ * exceptions stay identical.
+ *@author Team "Write Once - Run Everywhere"Steven McRae, Thomas Meier, Briant Becote 
+ *@version 1.1 April 23 2015
+ */
+public final class PriceFormat {
+	// Beyond this many cents value/100.0 no longer formats back to exact cents
+	private static final long MAX_EXACT = 1L << 46;
+	private static final int MAX_FAST_DIGITS = 15;
+	private static final ThreadLocal<char[]> buffer = new ThreadLocal<char[]>() {
+		protected char[] initialValue() {
+			return new char[32];
+		}
+	};
+	
+	private PriceFormat() {}
+	
+	//FORMAT-------------------//
+	public static String format(long value) {
+		if (value <= -MAX_EXACT || value >= MAX_EXACT) return formatSlow(value);
+		
+		char[] buf = buffer.get();
+		int pos = buf.length;
+		long cents = value < 0 ? -value : value;
+		
+		buf[--pos] = (char) ('0' + cents % 10);
+		cents /= 10;
+		buf[--pos] = (char) ('0' + cents % 10);
+		cents /= 10;
+		buf[--pos] = '.';
+		int digits = 0;
+		do {
+			if (digits > 0 && digits % 3 == 0) buf[--pos] = ',';
+			buf[--pos] = (char) ('0' + cents % 10);
+			cents /= 10;
+			digits++;
+		} while (cents > 0);
+		if (value < 0) buf[--pos] = '-';
+		buf[--pos] = '$';
+		return new String(buf, pos, buf.length - pos);
+	}
+	
+	static String formatSlow(long value) {
+		DecimalFormat a = new DecimalFormat("$#,##0.00;$-#,##0.00");
+		return a.format(value/100.0);
+	}
+	
+	//PARSE--------------------//
+	public static long parse(String value) {
+		int length = value.length();
+		int decLocation = value.indexOf('.');
+		int padding = 0;
+		if (decLocation == -1 || decLocation == length - 1) padding = 2;
+		else if (decLocation == length - 2) padding = 1;
+		
+		boolean negative = false;
+		boolean signAllowed = true;
+		int digits = 0;
+		long cents = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c == '$' || c == ',' || c == '.') continue;
+			if (c >= '0' && c <= '9') {
+				cents = cents * 10 + (c - '0');
+				digits++;
+			} else if ((c == '-' || c == '+') && signAllowed) {
+				negative = c == '-';
+			} else {
+				return parseSlow(value);
+			}
+			signAllowed = false;
+		}
+		if (digits == 0 || digits + padding > MAX_FAST_DIGITS) return parseSlow(value);
+		
+		for (int i = 0; i < padding; i++) cents *= 10;
+		return negative ? -cents : cents;
+	}
+	
+	static long parseSlow(String value) {
+		int decLocation = value.indexOf(".");
+		if (decLocation == -1 ) value += "00";
+		else if (decLocation == value.length() - 1)  value += "00";
+		else if (decLocation == value.length() - 2)  value += "0";
+		value = value.replaceAll("[$,.]", ""); 
+		double decimalPrice = Double.parseDouble(value);
+		return (long)(decimalPrice);
+	}
+}
@@ -0,0 +1,82 @@
+package price;
+
+/**
+ * Open addressing hash table of limit Price objects keyed on their primitive long value, used by PriceFactory for 
+ * values that fall outside its tick ladder.
+ * <p>
+ * Slots hold the Price itself - the key is the Price's own long value, so no boxed key or separate key array is needed.
+ * Lookups read the current slot array without locking; inserts and resizes are synchronized and publish a new array 
+ * when the table grows.  A lookup that races with an insert simply misses and retries under the lock.
+ * <p>
+ * Once the table holds maxSize Prices it stops caching and callers receive new Price objects, so the table cannot grow
+ * without bound as running account values are created.
+ *@author Team "Write Once - Run Everywhere"Steven McRae, Thomas Meier, Briant Becote 
+ *@version 1.1 April 23 2015
+ */
+final class PriceTable {
+	private volatile Price[] slots;
+	private int size;
+	private final int maxSize;
+	
+	//CONSTRUCTOR---------------//
+	PriceTable(int initialCapacity, int maxSize) {
+		int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1;
+		this.slots = new Price[capacity];
+		this.maxSize = maxSize;
+	}
+	
+	//LOOKUP---------------------//
+	Price get(long value) {
+		Price p = find(slots, value);
+		if (p != null) return p;
+		return putIfAbsent(value);
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	private static Price find(Price[] table, long value) {
+		int mask = table.length - 1;
+		for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+			Price p = table[i];
+			if (p == null || p.getPrice() == value) return p;
+		}
+	}
+	
+	//INSERT---------------------//
+	private synchronized Price putIfAbsent(long value) {
+		Price[] table = slots;
+		Price p = find(table, value);
+		if (p != null) return p;
+		p = new Price(value);
+		if (size >= maxSize) return p;
+		if ((size + 1) * 2 > table.length) {
+			table = resize(table);
+		}
+		insert(table, p);
+		size++;
+		slots = table;
+		return p;
+	}
+	
+	private static Price[] resize(Price[] table) {
+		Price[] larger = new Price[table.length * 2];
+		for (Price p : table) {
+			if (p != null) insert(larger, p);
+		}
+		return larger;
+	}
+	
+	private static void insert(Price[] table, Price p) {
+		int mask = table.length - 1;
+		int i = hash(p.getPrice()) & mask;
+		while (table[i] != null) i = (i + 1) & mask;
+		table[i] = p;
+	}
+	
+	private static int hash(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
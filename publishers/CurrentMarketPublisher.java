@@ -1,11 +1,22 @@
 package publishers;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-import client.User;
+import client.Subscriber;
 
 public class CurrentMarketPublisher extends Publisher {
 	
+	// 0 publishes every change as it happens, otherwise the least time between two updates of one product
+	private volatile long minIntervalNanos;
+	// latest current market of each product while conflating
+	private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+	private ScheduledExecutorService conflator;
 	
 	//SINGLETON CONSTRUCTION--------------------//
 	private static final CurrentMarketPublisher instance = new CurrentMarketPublisher();	
@@ -13,16 +24,117 @@ public class CurrentMarketPublisher extends Publisher {
 			return instance;
 		}
 	
+	/*******************************************************************
+	 * Conflate current market updates.  Each product keeps only its 
+	 * latest current market, which is sent to subscribers at most the 
+	 * given number of times a second from a conflator thread rather than
+	 * from the thread trading the book.  A subscriber that falls behind
+	 * skips straight to the newest current market when it catches up.
+	 * 
+	 * @param maxUpdatesPerSecond - 0 to publish every change as it happens
+	 *******************************************************************/
+	public synchronized void setMaxUpdateRate(int maxUpdatesPerSecond) {
+		if (maxUpdatesPerSecond < 0) throw new IllegalArgumentException("Update rate cannot be negative: " + maxUpdatesPerSecond);
+		if (maxUpdatesPerSecond > 0 && conflator == null) {
+			conflator = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "CurrentMarket-Conflator");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		minIntervalNanos = maxUpdatesPerSecond == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / maxUpdatesPerSecond;
+	}
+	
 	//PUBLISH METHOD----------------// Subscribe and unsubscribe inherited from Publisher Class
 	/***********************************
 	 * @param md - Data Transfer Object
 	 ***********************************/
-	public synchronized void publishCurrentMarket(MarketDataDTO md) {
-		if (!getSubscriptionMap().containsKey(md.product)) return;
-		ArrayList<User> subUsers = getSubscriptionMap().get(md.product);
-		for (User subscribed : subUsers) {
-			subscribed.acceptCurrentMarket(md.product, md.buyPrice,
-					md.buyVolume, md.sellPrice, md.sellVolume);
+	public void publishCurrentMarket(MarketDataDTO md) {
+		long interval = minIntervalNanos;
+		if (interval == 0) {
+			publishNow(md);
+			return;
+		}
+		Slot slot = slots.get(md.product);
+		if (slot == null) {
+			Slot created = new Slot(md.product);
+			slot = slots.putIfAbsent(md.product, created);
+			if (slot == null) slot = created;
+		}
+		long delay = slot.update(md, interval);
+		if (delay >= 0) {
+			Slot s = slot;
+			conflator.schedule(() -> flush(s), delay, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	private void publishNow(MarketDataDTO md) {
+		emit(md);
+		List<Subscriber> subUsers = getSubscribers(md.product);
+		if (subUsers.isEmpty()) return;
+		Dispatcher.Delivery d = u -> u.acceptCurrentMarket(md.product, md.buyPrice,
+				md.buyVolume, md.sellPrice, md.sellVolume);
+		for (Subscriber subscribed : subUsers) {
+			deliver(subscribed, Dispatcher.Kind.CURRENT_MARKET, md.product, d);
+		}
+	}
+	
+	// Runs on the conflator thread: tell every subscriber there is a newer current market to fetch
+	private void flush(Slot slot) {
+		slot.flushed();
+		emit(slot.latest);
+		List<Subscriber> subUsers = getSubscribers(slot.product);
+		Dispatcher.Delivery d = slot::deliverLatest;
+		for (Subscriber subscribed : subUsers) {
+			deliver(subscribed, Dispatcher.Kind.CURRENT_MARKET, slot.product, d);
+		}
+	}
+	
+	private void emit(MarketDataDTO md) {
+		if (hasEventSinks())
+			emit(e -> e.encodeCurrentMarket(0, md.product, md.buyPrice, md.buyVolume, md.sellPrice, md.sellVolume));
+	}
+	
+	/********************************************************
+	 * The latest current market of one product
+	 ********************************************************/
+	private static final class Slot {
+		private final String product;
+		private volatile MarketDataDTO latest;
+		// when the last flush ran, if one has, and whether the next one is already scheduled
+		private long lastFlush;
+		private boolean flushedBefore;
+		private boolean flushPending;
+		// the current market each subscriber was last sent, so a stale notification sends nothing
+		private final Map<Subscriber, MarketDataDTO> sent = new WeakHashMap<Subscriber, MarketDataDTO>();
+		
+		Slot(String p) {
+			product = p;
+		}
+		
+		/**
+		 * @return - how long to wait before flushing, or -1 when a flush is already scheduled
+		 */
+		synchronized long update(MarketDataDTO md, long interval) {
+			latest = md;
+			if (flushPending) return -1;
+			flushPending = true;
+			return flushedBefore ? Math.max(0, lastFlush + interval - System.nanoTime()) : 0;
+		}
+		
+		synchronized void flushed() {
+			flushPending = false;
+			flushedBefore = true;
+			lastFlush = System.nanoTime();
+		}
+		
+		void deliverLatest(Subscriber u) {
+			MarketDataDTO md = latest;
+			synchronized (this) {
+				if (sent.get(u) == md) return;
+				sent.put(u, md);
+			}
+			u.acceptCurrentMarket(md.product, md.buyPrice, md.buyVolume, md.sellPrice, md.sellVolume);
 		}
 	}
 }
@@ -0,0 +1,308 @@
+package publishers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import client.Subscriber;
+
+/******************************************************
+ * Hands published messages to subscribed Users.
+ *
+ * SYNCHRONOUS delivery calls the User on the publishing
+ * thread, which is the thread trading the book.
+ * ASYNCHRONOUS delivery gives every User a bounded ring
+ * of pending messages that a pool of delivery threads
+ * drains, so a slow User only ever delays itself.  A
+ * User's messages are delivered one at a time in the
+ * order they were published, whichever Publisher sent
+ * them.  When a ring is full the SlowConsumerPolicy
+ * decides what market data gives.  A User's own fills
+ * and cancels are never dropped or conflated: the ring
+ * grows to hold them, and a User that lets it grow past
+ * MAX_GROWTH times its capacity is disconnected.
+ *
+ * Mode, policy, ring capacity and thread count are
+ * meant to be set before trading starts.
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ ******************************************************/
+public final class Dispatcher {
+
+	public enum Mode { SYNCHRONOUS, ASYNCHRONOUS }
+
+	public enum SlowConsumerPolicy {
+		DROP,       // discard new market data
+		CONFLATE,   // market data replaces the queued message of the same kind and product, or else is discarded
+		DISCONNECT  // discard everything queued and unsubscribe the User from every Publisher
+	}
+
+	// market data that a newer message of the same kind and product makes obsolete
+	public enum Kind { CURRENT_MARKET, LAST_SALE, TICKER }
+
+	/********************************************************
+	 * One message, shared by every User it is published to
+	 ********************************************************/
+	public interface Delivery {
+		void deliverTo(Subscriber u);
+	}
+
+	// messages a delivery thread hands to one User before giving the other Users a turn
+	private static final int BATCH = 64;
+	// times its capacity a ring may grow to hold a User's own messages before the User is disconnected
+	private static final int MAX_GROWTH = 16;
+
+	//SINGLETON CONSTRUCTION--------------------//
+	private static final Dispatcher instance = new Dispatcher();
+	public static Dispatcher getInstance() {
+		return instance;
+	}
+
+	private volatile Mode mode = Mode.SYNCHRONOUS;
+	private volatile SlowConsumerPolicy policy = SlowConsumerPolicy.CONFLATE;
+	private volatile int capacity = 1024;
+	// Users may block in their accept methods, so this is not tied to the number of processors
+	private int threads = 4;
+	private volatile ExecutorService executor;
+	private final ConcurrentHashMap<Subscriber, Channel> channels = new ConcurrentHashMap<Subscriber, Channel>();
+
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong conflated = new AtomicLong();
+	private final AtomicLong disconnected = new AtomicLong();
+
+	private Dispatcher() {
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public synchronized void setMode(Mode m) {
+		if (m == Mode.ASYNCHRONOUS && executor == null) {
+			AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(threads, r -> {
+				Thread t = new Thread(r, "Delivery-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		mode = m;
+	}
+
+	public SlowConsumerPolicy getSlowConsumerPolicy() {
+		return policy;
+	}
+
+	public void setSlowConsumerPolicy(SlowConsumerPolicy p) {
+		policy = p;
+	}
+
+	/**
+	 * @param messages - pending messages each User may have before the SlowConsumerPolicy applies
+	 * to market data; rings that already exist keep their size
+	 */
+	public void setCapacity(int messages) {
+		if (messages < 1) throw new IllegalArgumentException("Capacity must be positive: " + messages);
+		capacity = messages;
+	}
+
+	/**
+	 * @param n - number of delivery threads, takes effect when ASYNCHRONOUS mode is first set
+	 */
+	public synchronized void setThreads(int n) {
+		if (n < 1) throw new IllegalArgumentException("Thread count must be positive: " + n);
+		threads = n;
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getConflated() {
+		return conflated.get();
+	}
+
+	public long getDisconnected() {
+		return disconnected.get();
+	}
+
+	/****************************************************************
+	 * Deliver a message to a User now or queue it, depending on the mode
+	 *
+	 * @param u - User to deliver to
+	 * @param kind - what market data the message is, null if it must not be conflated
+	 * @param product - stock the message is about
+	 * @param d - the message
+	 ****************************************************************/
+	void deliver(Subscriber u, Kind kind, String product, Delivery d) {
+		if (mode == Mode.SYNCHRONOUS) {
+			d.deliverTo(u);
+			return;
+		}
+		Channel c = channels.get(u);
+		if (c == null) {
+			Channel created = new Channel(u, capacity);
+			c = channels.putIfAbsent(u, created);
+			if (c == null) c = created;
+		}
+		c.offer(kind, product, d);
+	}
+
+	// Runs on a delivery thread rather than the publishing one, which may hold another Publisher's lock
+	private void disconnect(Channel c) {
+		disconnected.incrementAndGet();
+		Logger.getLogger(Dispatcher.class.getName()).log(Level.WARNING,
+				"Disconnecting slow consumer " + c.user.getUserName());
+		Publisher[] publishers = { CurrentMarketPublisher.getInstance(), LastSalePublisher.getInstance(),
+				TickerPublisher.getInstance(), MessagePublisher.getInstance() };
+		for (Publisher p : publishers)
+			p.unSubscribeAll(c.user);
+		channels.remove(c.user, c);
+	}
+
+	/********************************************************
+	 * The pending messages of one User
+	 ********************************************************/
+	private final class Channel implements Runnable {
+		private final Subscriber user;
+		// pending messages past which the SlowConsumerPolicy applies to market data
+		private final int bound;
+		// most pending messages of the User's own the ring may grow to hold
+		private final int limit;
+		private Delivery[] items;
+		private Kind[] kinds;
+		private String[] products;
+		private int head;
+		private int size;
+		// a delivery thread has been asked to drain this channel
+		private boolean scheduled;
+		private boolean closed;
+		// touched only by the one delivery thread draining the channel
+		private final Delivery[] batch = new Delivery[BATCH];
+
+		Channel(Subscriber u, int capacity) {
+			user = u;
+			bound = capacity;
+			limit = capacity * MAX_GROWTH;
+			items = new Delivery[capacity];
+			kinds = new Kind[capacity];
+			products = new String[capacity];
+		}
+
+		void offer(Kind kind, String product, Delivery d) {
+			boolean schedule = false;
+			boolean disconnect = false;
+			synchronized (this) {
+				if (closed) {
+					dropped.incrementAndGet();
+					return;
+				}
+				boolean grows = kind == null && policy != SlowConsumerPolicy.DISCONNECT;
+				if (size >= (grows ? limit : bound)) {
+					// a User's own messages are never dropped - it is disconnected instead
+					switch (kind == null ? SlowConsumerPolicy.DISCONNECT : policy) {
+					case CONFLATE:
+						if (conflate(kind, product, d)) conflated.incrementAndGet();
+						else dropped.incrementAndGet();
+						return;
+					case DISCONNECT:
+						closed = true;
+						dropped.addAndGet(size + 1);
+						clear();
+						disconnect = true;
+						break;
+					default:
+						dropped.incrementAndGet();
+						return;
+					}
+				} else {
+					if (size == items.length) grow();
+					int tail = (head + size) % items.length;
+					items[tail] = d;
+					kinds[tail] = kind;
+					products[tail] = product;
+					size++;
+					schedule = !scheduled;
+					scheduled = true;
+				}
+			}
+			if (disconnect) executor.execute(() -> disconnect(this));
+			else if (schedule) executor.execute(this);
+		}
+
+		// Replace the newest queued message of the same kind and product
+		private boolean conflate(Kind kind, String product, Delivery d) {
+			for (int n = size - 1; n >= 0; n--) {
+				int i = (head + n) % items.length;
+				if (kinds[i] == kind && products[i].equals(product)) {
+					items[i] = d;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		// Double the ring, up to its limit, keeping the pending messages in order
+		private void grow() {
+			int length = Math.min(items.length * 2, limit);
+			Delivery[] newItems = new Delivery[length];
+			Kind[] newKinds = new Kind[length];
+			String[] newProducts = new String[length];
+			for (int n = 0; n < size; n++) {
+				int i = (head + n) % items.length;
+				newItems[n] = items[i];
+				newKinds[n] = kinds[i];
+				newProducts[n] = products[i];
+			}
+			items = newItems;
+			kinds = newKinds;
+			products = newProducts;
+			head = 0;
+		}
+
+		private void clear() {
+			for (int n = 0; n < size; n++) {
+				int i = (head + n) % items.length;
+				items[i] = null;
+				products[i] = null;
+			}
+			head = 0;
+			size = 0;
+		}
+
+		@Override
+		public void run() {
+			int n;
+			synchronized (this) {
+				n = Math.min(size, BATCH);
+				for (int k = 0; k < n; k++) {
+					batch[k] = items[head];
+					items[head] = null;
+					products[head] = null;
+					head = (head + 1) % items.length;
+				}
+				size -= n;
+			}
+			for (int k = 0; k < n; k++) {
+				try {
+					batch[k].deliverTo(user);
+				} catch (RuntimeException ex) {
+					Logger.getLogger(Dispatcher.class.getName()).log(Level.WARNING,
+							"Delivery to " + user.getUserName() + " failed", ex);
+				}
+				batch[k] = null;
+			}
+			synchronized (this) {
+				if (size == 0 || closed) {
+					scheduled = false;
+					return;
+				}
+			}
+			// more arrived meanwhile - go to the back of the line so other Users get a turn
+			executor.execute(this);
+		}
+	}
+}
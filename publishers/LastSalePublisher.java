@@ -1,10 +1,10 @@
 package publishers;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import price.Price;
 import price.PriceFactory;
-import client.User;
+import client.Subscriber;
 
 
 public class LastSalePublisher extends Publisher {
@@ -26,14 +26,18 @@ public class LastSalePublisher extends Publisher {
 	 * @param price of last sale
 	 * @param volume of last sale
 	 ******************************/
-	public synchronized void publishLastSale(String product, Price price, int volume){
+	public void publishLastSale(String product, Price price, int volume){
 				
-		if (!getSubscriptionMap().containsKey(product)) return;
-		ArrayList<User> subUsers = getSubscriptionMap().get(product);
-		
 		if (price == null) price = PriceFactory.newPrice(0);
-		for (User subscribed : subUsers){
-			subscribed.acceptLastSale(product, price, volume);
+		Price p = price;
+		if (hasEventSinks()) emit(e -> e.encodeLastSale(0, product, p, volume));
+		List<Subscriber> subUsers = getSubscribers(product);
+		
+		if (!subUsers.isEmpty()) {
+			Dispatcher.Delivery d = u -> u.acceptLastSale(product, p, volume);
+			for (Subscriber subscribed : subUsers){
+				deliver(subscribed, Dispatcher.Kind.LAST_SALE, product, d);
+			}
 		}
 		t.publishTicker(product,price);
 	}
@@ -1,17 +1,29 @@
 package publishers;
 
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 
 import messages.CancelMessage;
 import messages.FillMessage;
 import messages.MarketMessage;
-import client.User;
+import price.Price;
+import tradable.Side;
+import tradable.Tradable;
+import client.Subscriber;
+import exceptions.AlreadySubscribedException;
+import exceptions.InvalidMessageException;
+import exceptions.InvalidPriceException;
+import exceptions.InvalidVolumeException;
+import exceptions.NotSubscribedException;
 
 
 public class MessagePublisher extends Publisher {
 	
-	User canceledUser;
-	protected ArrayList<User> list;
+	// product -> user name -> subscribed User, so a fill or cancel goes straight to its owner
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, Subscriber>> recipients = new ConcurrentHashMap<String, ConcurrentHashMap<String, Subscriber>>();
+	// the engine reuses FillMessages and CancelMessages rather than making new ones
+	private volatile boolean reuseMessages;
+	// the CancelMessage each publishing thread reuses
+	private static final ThreadLocal<ReusedCancel> reusedCancels = ThreadLocal.withInitial(ReusedCancel::new);
 	
 
 	// SINGLETON CONSTRUCTION--------------------//
@@ -21,42 +33,162 @@ public class MessagePublisher extends Publisher {
 	}
 	
 
+	@Override
+	public synchronized void subscribe(Subscriber u, String product) throws AlreadySubscribedException {
+		super.subscribe(u, product);
+		ConcurrentHashMap<String, Subscriber> users = recipients.get(product);
+		if (users == null) {
+			users = new ConcurrentHashMap<String, Subscriber>();
+			recipients.put(product, users);
+		}
+		users.put(u.getUserName(), u);
+	}
+
+	@Override
+	public synchronized void unSubscribe(Subscriber u, String product) throws NotSubscribedException {
+		super.unSubscribe(u, product);
+		recipients.get(product).remove(u.getUserName(), u);
+	}
+
+	@Override
+	public synchronized void unSubscribeAll(Subscriber u) {
+		super.unSubscribeAll(u);
+		for (ConcurrentHashMap<String, Subscriber> users : recipients.values())
+			users.remove(u.getUserName(), u);
+	}
+
+	/****************************************************************
+	 * @param product - Stock the message is about
+	 * @param userName - owner of the order or quote
+	 * @return - that User if it subscribed to messages for the product, otherwise null
+	 ****************************************************************/
+	private Subscriber recipient(String product, String userName) {
+		ConcurrentHashMap<String, Subscriber> users = recipients.get(product);
+		return users == null ? null : users.get(userName);
+	}
+
+	/****************************************************************
+	 * @return - whether the engine reuses FillMessages and CancelMessages
+	 ****************************************************************/
+	public boolean getReuseMessages() {
+		return reuseMessages;
+	}
+
+	/****************************************************************
+	 * With reuse on, the fills and cancels a User is handed are only good
+	 * until its acceptMessage returns; a User that keeps one keeps a copy().
+	 * Messages queued by an ASYNCHRONOUS Dispatcher are copied for it.
+	 * Meant to be set before trading starts.
+	 * 
+	 * @param reuse - whether the engine reuses messages
+	 ****************************************************************/
+	public void setReuseMessages(boolean reuse) {
+		reuseMessages = reuse;
+	}
+
+	// a reused message must be copied if it will be delivered after publishing returns
+	private boolean queuesDeliveries() {
+		return reuseMessages && Dispatcher.getInstance().getMode() == Dispatcher.Mode.ASYNCHRONOUS;
+	}
 
 
 	// PUBLISH METHODS----------------// Subscribe and Unsubscribe inherited from Publisher Class
-	public synchronized void publishCancel(CancelMessage cm) {
+	public void publishCancel(CancelMessage cm) {
+		if (hasEventSinks()) emit(e -> e.encodeCancel(0, cm));
+		Subscriber u = recipient(cm.getProduct(), cm.getUser());
+		if (u == null)
+			return;
+		CancelMessage delivered = queuesDeliveries() ? cm.copy() : cm;
+		deliver(u, null, cm.getProduct(), subscribed -> subscribed.acceptMessage(delivered));
+	}
 
-		ArrayList<User> l = getSubscriptionMap().get(cm.getProduct());
-		if (l == null)
+	/****************************************************************
+	 * Publish a cancel, making no CancelMessage when nobody receives it
+	 * and reusing this thread's when messages are reused
+	 * 
+	 * @throws InvalidMessageException
+	 * @throws InvalidVolumeException
+	 * @throws InvalidPriceException
+	 ****************************************************************/
+	public void publishCancel(String user, String product, Price price, int volume, String details, Side side, String id)
+			throws InvalidMessageException, InvalidVolumeException, InvalidPriceException {
+		if (!hasEventSinks() && recipient(product, user) == null)
+			return;
+		ReusedCancel r = reusableCancel();
+		if (r == null) {
+			publishCancel(new CancelMessage(user, product, price, volume, details, side, id));
 			return;
-		for (User u : l) {
-			if (u.getUserName() == cm.getUser())
-				canceledUser = u;
 		}
-		canceledUser.acceptMessage(cm);
+		if (r.message == null) r.message = new CancelMessage(user, product, price, volume, details, side, id);
+		else r.message.reset(user, product, price, volume, details, side, id);
+		publishReused(r);
 	}
 
-	public synchronized void publishFill(FillMessage fm) {
-		ArrayList<User> l = getSubscriptionMap().get(fm.getProduct());
-		if (l == null)
+	/****************************************************************
+	 * Publish the cancel of a booked Tradable's remaining volume, like
+	 * publishCancel(String, ...), described by the Tradable as it is now
+	 * 
+	 * @param t - the Tradable being cancelled
+	 * @throws InvalidMessageException
+	 * @throws InvalidVolumeException
+	 * @throws InvalidPriceException
+	 ****************************************************************/
+	public void publishCancel(Tradable t) throws InvalidMessageException, InvalidVolumeException, InvalidPriceException {
+		if (!hasEventSinks() && recipient(t.getProduct(), t.getUser()) == null)
+			return;
+		ReusedCancel r = reusableCancel();
+		if (r == null) {
+			publishCancel(new CancelMessage(t));
 			return;
-		for (User u : l) {
-			if (u.getUserName() == fm.getUser())
-				canceledUser = u;
 		}
-		canceledUser.acceptMessage(fm);
+		if (r.message == null) r.message = new CancelMessage(t);
+		else r.message.reset(t);
+		publishReused(r);
 	}
 
-	public synchronized void publishMarketMessage(MarketMessage mm) {
-	
-		if(getSubscriptionMap().isEmpty()) return;
-		
-		ArrayList<User> userList = getList();
+	// this thread's reused CancelMessage, null when a new one must be made
+	private ReusedCancel reusableCancel() {
+		if (!reuseMessages) return null;
+		ReusedCancel r = reusedCancels.get();
+		// a User cancelling from inside its cancel callback gets a CancelMessage of its own
+		return r.inUse ? null : r;
+	}
+
+	private void publishReused(ReusedCancel r) {
+		r.inUse = true;
+		try {
+			publishCancel(r.message);
+		} finally {
+			r.inUse = false;
+		}
+	}
+
+	public void publishFill(FillMessage fm) {
+		if (hasEventSinks()) emit(e -> e.encodeFill(0, fm));
+		Subscriber u = recipient(fm.getProduct(), fm.getUser());
+		if (u == null)
+			return;
+		FillMessage delivered = queuesDeliveries() ? fm.copy() : fm;
+		deliver(u, null, fm.getProduct(), subscribed -> subscribed.acceptMessage(delivered));
+	}
+
+	// Market messages go to every User subscribed to messages for any product, once each
+	public void publishMarketMessage(MarketMessage mm) {
+		String message = mm.toString();
+		Dispatcher.Delivery d = subscribed -> subscribed.acceptMarketMessage(message);
 		
-		for(User u: userList) {
-			u.acceptMarketMessage(mm.toString());
+		for(Subscriber u: getAllSubscribers()) {
+			deliver(u, null, null, d);
 		}
 		
 	}
 
+	/********************************************************
+	 * A publishing thread's reused CancelMessage
+	 ********************************************************/
+	private static final class ReusedCancel {
+		private CancelMessage message;
+		// being delivered, so a cancel published meanwhile must not overwrite it
+		private boolean inUse;
+	}
 }
@@ -1,59 +1,146 @@
 package publishers;
 
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import client.User;
+import client.Subscriber;
+import codec.EventEncoder;
+import codec.EventSink;
 import exceptions.AlreadySubscribedException;
 import exceptions.NotSubscribedException;
 
 /******************************************************
- * Superclass Publishers will inherit from.  Synchronized to prevent multiple User threads from subscribing/unsubscribing at the same time
+ * Superclass Publishers will inherit from.  Subscriber lists are copy-on-write: subscribing and unsubscribing
+ * are synchronized and copy the list, publishing reads it without taking a lock
  * @author Steven Mcrae, Briant Belcote, Tom Meier 
  ******************************************************/
 public class Publisher {
 	
 
-	private ArrayList<User> list;
-	private HashMap <String, ArrayList<User>> subscriptionMap = new HashMap<String, ArrayList<User>>();
+	private final ConcurrentHashMap<String, CopyOnWriteArrayList<Subscriber>> subscriptionMap = new ConcurrentHashMap<String, CopyOnWriteArrayList<Subscriber>>();
+	// receivers of every published event in its binary encoding, whoever subscribed
+	private final CopyOnWriteArrayList<EventSink> sinks = new CopyOnWriteArrayList<EventSink>();
+	// events are encoded on the publishing thread, which may be any book's
+	private static final ThreadLocal<EventEncoder> encoders = ThreadLocal.withInitial(EventEncoder::new);
 	
 	/****************************************************************
 	 * @param u - User who wishes to subscribe
 	 * @param product - Stock user wants to subscribe to
 	 * @throws AlreadySubscribedException - Did the user already subscribe?
 	 ****************************************************************/
-	public synchronized void subscribe(User u, String product) throws AlreadySubscribedException {
-		
-		if(!subscriptionMap.containsKey(product)) {
-			list = new ArrayList<User>();
-			list.add(u);
-			subscriptionMap.put(product, list);
-			
-		}
-		else{
-			if(subscriptionMap.get(product).contains(u))throw new AlreadySubscribedException(); 
-			ArrayList<User> l = subscriptionMap.get(product);
-			l.add(u);
-			subscriptionMap.put(product, l);			
-			}
+	public synchronized void subscribe(Subscriber u, String product) throws AlreadySubscribedException {
+		CopyOnWriteArrayList<Subscriber> l = subscriptionMap.get(product);
+		if (l == null) {
+			l = new CopyOnWriteArrayList<Subscriber>();
+			subscriptionMap.put(product, l);
 		}
+		if (!l.addIfAbsent(u)) throw new AlreadySubscribedException();
+	}
 
 	/****************************************************************
 	 * @param u - User who wishes to unsubscribe
 	 * @param product - Stock user wants to unsubscribe from
 	 * @throws NotSubscribedException - Is the user not subscribed?
 	 ****************************************************************/
-	public synchronized void unSubscribe(User u, String product)throws NotSubscribedException {
-		if(!subscriptionMap.get(product).contains(u)) throw new NotSubscribedException();
-		subscriptionMap.get(product).remove(u);
+	public synchronized void unSubscribe(Subscriber u, String product)throws NotSubscribedException {
+		CopyOnWriteArrayList<Subscriber> l = subscriptionMap.get(product);
+		if (l == null || !l.remove(u)) throw new NotSubscribedException();
 	}
-	
-	public HashMap <String, ArrayList<User>> getSubscriptionMap() {
-		return subscriptionMap;
+
+	/****************************************************************
+	 * @param u - User to unsubscribe from every product
+	 ****************************************************************/
+	public synchronized void unSubscribeAll(Subscriber u) {
+		for (CopyOnWriteArrayList<Subscriber> l : subscriptionMap.values())
+			l.remove(u);
 	}
-	
-	public ArrayList<User> getList() {
-		return list;
+
+	/****************************************************************
+	 * @param product - Stock to look up
+	 * @return - the Users subscribed to it, empty if there are none
+	 ****************************************************************/
+	protected List<Subscriber> getSubscribers(String product) {
+		List<Subscriber> l = subscriptionMap.get(product);
+		return l == null ? Collections.<Subscriber>emptyList() : l;
+	}
+
+	/****************************************************************
+	 * @return - every User subscribed to at least one product
+	 ****************************************************************/
+	protected Set<Subscriber> getAllSubscribers() {
+		Set<Subscriber> all = new LinkedHashSet<Subscriber>();
+		for (List<Subscriber> l : subscriptionMap.values())
+			all.addAll(l);
+		return all;
+	}
+
+	/****************************************************************
+	 * @param s - receives every event this Publisher publishes, encoded
+	 ****************************************************************/
+	public void addEventSink(EventSink s) {
+		sinks.add(s);
+	}
+
+	public void removeEventSink(EventSink s) {
+		sinks.remove(s);
+	}
+
+	protected boolean hasEventSinks() {
+		return !sinks.isEmpty();
+	}
+
+	/****************************************************************
+	 * Encodes one event with the EventEncoder passed in
+	 ****************************************************************/
+	protected interface Encoding {
+		/**
+		 * @return - length of the event, header included
+		 */
+		int encode(EventEncoder e);
+	}
+
+	/****************************************************************
+	 * Encode an event with this thread's EventEncoder and hand it to every
+	 * sink.  Publishing runs inside the book update that made the event, so
+	 * an event that cannot be encoded, or a sink that fails, is logged and
+	 * never reaches the submitter
+	 * 
+	 * @param encoding - writes the event at offset 0
+	 ****************************************************************/
+	protected void emit(Encoding encoding) {
+		EventEncoder e = encoders.get();
+		int length;
+		try {
+			length = encoding.encode(e);
+		} catch (RuntimeException ex) {
+			Logger.getLogger(Publisher.class.getName()).log(Level.WARNING, "Event not encoded for the event sinks", ex);
+			return;
+		}
+		for (EventSink s : sinks) {
+			try {
+				s.onEvent(e.buffer(), 0, length);
+			} catch (RuntimeException ex) {
+				Logger.getLogger(Publisher.class.getName()).log(Level.WARNING, "Event sink failed", ex);
+			}
+		}
+	}
+
+	/****************************************************************
+	 * Hand a message to a subscribed User through the Dispatcher
+	 * 
+	 * @param u - User to deliver to
+	 * @param kind - market data kind for conflation, null for none
+	 * @param product - stock the message is about
+	 * @param d - the message
+	 ****************************************************************/
+	protected void deliver(Subscriber u, Dispatcher.Kind kind, String product, Dispatcher.Delivery d) {
+		Dispatcher.getInstance().deliver(u, kind, product, d);
 	}
 }
@@ -2,18 +2,18 @@ package publishers;
 
 import java.util.HashSet;
 
-import client.User;
+import client.Subscriber;
 
 @SuppressWarnings("serial")
-public class Subscriptions extends HashSet<User> {
-	private HashSet<User> subscribers; 
+public class Subscriptions extends HashSet<Subscriber> {
+	private HashSet<Subscriber> subscribers; 
 	
-	Subscriptions(User user){
-	subscribers = new HashSet<User>();
+	Subscriptions(Subscriber user){
+	subscribers = new HashSet<Subscriber>();
 	subscribers.add(user);
 	}
 	
-	public User get(User user){
+	public Subscriber get(Subscriber user){
 	if (this.contains(user)) return user;
 	else return null;
 	}
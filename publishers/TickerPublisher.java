@@ -1,16 +1,16 @@
 package publishers;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import price.Price;
 import price.PriceFactory;
-import client.User;
+import client.Subscriber;
 
 
 public class TickerPublisher extends Publisher {
 
-private static HashMap<String, Price> tickerCollection = new HashMap<String, Price>();
+private static ConcurrentHashMap<String, Price> tickerCollection = new ConcurrentHashMap<String, Price>();
 
 	//SINGLETON CONSTRUCTION--------------------//
 	private static TickerPublisher instance = new TickerPublisher();
@@ -19,48 +19,41 @@ private static HashMap<String, Price> tickerCollection = new HashMap<String, Pri
 	}
 
 	//PUBLISH METHOD----------------// Subscribe and Unsubscribe inherited from Publisher Class
-	public synchronized void publishTicker(String product, Price price){
+	public void publishTicker(String product, Price price){
 		
-		if (!getSubscriptionMap().containsKey(product)) return;
 		if (price == null) price = PriceFactory.newPrice(0);
 		
-		Price lastPrice;
-			
-		if(!tickerCollection.containsKey(product)) {
-			tickerCollection.put(product, price);
-			lastPrice = null;
-		} else {
-			lastPrice = tickerCollection.get(product);
-			tickerCollection.put(product, price);
-		}
-		
-		ArrayList<User> subUsers = getSubscriptionMap().get(product);
+		// null the first time the product trades
+		Price lastPrice = tickerCollection.put(product, price);
 		
+		char direction;
 		if (lastPrice == null){ 
-			for (User subscribed : subUsers){
-				subscribed.acceptTicker(product, price, ' ');
-			}
+			direction = ' ';
 		}
 		else {
 			int movement = lastPrice.compareTo(price);
 			switch (movement){
 			case -1: 
-				for (User subscribed : subUsers){
-					subscribed.acceptTicker(product, price, (char)8593);
-					}
+				direction = (char)8593;
 				break;
 			case 0: 
-				for (User subscribed : subUsers){
-					subscribed.acceptTicker(product, price, '=');
-					}
+				direction = '=';
 				break;
 			case 1: 
-				for (User subscribed : subUsers){
-					subscribed.acceptTicker(product, price, (char)8595);
-					}
+				direction = (char)8595;
 				break;
+			default:
+				return;
 			}
 		}
+		Price p = price;
+		if (hasEventSinks()) emit(e -> e.encodeTicker(0, product, p, direction));
+		List<Subscriber> subUsers = getSubscribers(product);
+		if (subUsers.isEmpty()) return;
+		Dispatcher.Delivery d = u -> u.acceptTicker(product, p, direction);
+		for (Subscriber subscribed : subUsers){
+			deliver(subscribed, Dispatcher.Kind.TICKER, product, d);
+		}
 	}
 }
 	
\ No newline at end of file
@@ -16,7 +16,10 @@ public class Order implements Tradable {
 	private String productSymbol; 
 	private Price orderPrice; 
 	final private int originalVolume;
-	private String buyOrSell;
+	private Side buyOrSell;
+	// 0 until the book of the product numbers the Order - see OrderId
+	private long orderId;
+	// String form of orderId, made the first time it is asked for
 	private String id;
 	private int remainingVolume;
 	private int cancelVolume;
@@ -24,22 +27,36 @@ public class Order implements Tradable {
 	
 	//CONSTRUCTOR-------------------//
 	public Order(String userName, String productSymbol, Price orderPrice,
-			int originalVolume, String side) throws InvalidVolumeException {
+			int originalVolume, Side side) throws InvalidVolumeException {
+		this(userName, productSymbol, orderPrice, originalVolume, side, 0);
+	}
+	
+	//Constructor for re-creating an Order that was previously assigned the provided id
+	public Order(String userName, String productSymbol, Price orderPrice,
+			int originalVolume, Side side, long orderId) throws InvalidVolumeException {
 		
 		if (originalVolume <= 0) throw new InvalidVolumeException("Invalid Order Volume: " + originalVolume);
 		this.userName = userName;
 		this.productSymbol = productSymbol;
 		this.orderPrice = orderPrice;
 		this.originalVolume = originalVolume;
-		this.id = userName + productSymbol + orderPrice + System.nanoTime();
+		this.orderId = orderId;
 		this.remainingVolume = originalVolume; 						
-		this.buyOrSell = side.toUpperCase();
+		this.buyOrSell = side;
 		this.cancelVolume = 0;
 	}
 
 	// UTILITIES----------------//
 	public String toString() {
-		return userName + " order: " + buyOrSell + " " + remainingVolume + " " + productSymbol + " at " + orderPrice + "(Original Vol: " + originalVolume + ", CXL'd Vol: " 
+		return describe(userName, buyOrSell, remainingVolume, productSymbol, orderPrice, originalVolume, cancelVolume, getId());
+	}
+
+	/**
+	 * The text toString gives for an Order with these fields, for messages that describe one later
+	 */
+	public static String describe(String userName, Side side, int remainingVolume, String productSymbol, Price orderPrice,
+			int originalVolume, int cancelVolume, String id) {
+		return userName + " order: " + side + " " + remainingVolume + " " + productSymbol + " at " + orderPrice + "(Original Vol: " + originalVolume + ", CXL'd Vol: " 
 				+ cancelVolume + "), ID: " + id;
 	}
 
@@ -64,7 +81,7 @@ public class Order implements Tradable {
 		return cancelVolume;
 	}
 
-	public String getSide() {
+	public Side getSide() {
 		return buyOrSell;
 	}
 
@@ -73,14 +90,24 @@ public class Order implements Tradable {
 	}
 
 	public String getId() {
+		if (id == null && orderId != 0) id = OrderId.toString(orderId);
 		return id;
 	}
+
+	public long getOrderId() {
+		return orderId;
+	}
+
+	public void setOrderId(long orderId) {
+		if (this.orderId != 0) throw new IllegalStateException("Order already has id " + this.orderId);
+		this.orderId = orderId;
+	}
 	
 	public String getUser() {
 		return userName;
 	}
 	
-	public String getSide(Order o) throws InvalidQuoteException {
+	public Side getSide(Order o) throws InvalidQuoteException {
 		if (isQuote) throw new InvalidQuoteException("Cannot retrieve the side of a Quote");
 		return getSide();
 	}
@@ -0,0 +1,77 @@
+package tradable;
+
+/**
+*Numeric ids for Orders and QuoteSides.  An id is a positive 64-bit value 
+*laid out as
+*<pre>
+*   bits 62-47  index of the product, given out by ProductService when the 
+*               product is created and kept in the journal and snapshots
+*   bit  46     set for the SELL side
+*   bits 45-0   sequence number, counting up from 1 for each product
+*</pre>
+*An Order or QuoteSide has no id (0) until the book of its product accepts 
+*it.  Each ProductBook numbers its own Tradables on the thread that owns the 
+*book, so ids for different products never contend and a symbol that is not 
+*a product never gets an index.  Ids stay numeric inside the books, journal 
+*and snapshots; the String form is made only for messages, DTOs and users.
+*<p>
+*@author Team "Write Once - Run Everywhere": Steven McRae, Thomas Meier, Briant Becote 
+*@version 1.1 April 23 2015
+*/
+public final class OrderId {
+	private static final int SEQUENCE_BITS = 46;
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+	private static final long SELL_BIT = 1L << SEQUENCE_BITS;
+	private static final int PRODUCT_SHIFT = SEQUENCE_BITS + 1;
+	public static final int MAX_PRODUCTS = 1 << 16;
+
+	private OrderId() {
+	}
+
+	/**
+	 * @param productIndex - index of the product, below MAX_PRODUCTS
+	 * @param sequence - the product's sequence number for the id, from 1
+	 * @param side
+	 * @return - the id
+	 */
+	public static long make(int productIndex, long sequence, Side side) {
+		long id = ((long) productIndex << PRODUCT_SHIFT) | sequence;
+		return side == Side.SELL ? id | SELL_BIT : id;
+	}
+
+	public static int getProductIndex(long id) {
+		return (int) (id >>> PRODUCT_SHIFT);
+	}
+
+	public static boolean isSell(long id) {
+		return (id & SELL_BIT) != 0;
+	}
+
+	public static long getSequence(long id) {
+		return id & SEQUENCE_MASK;
+	}
+
+	/**
+	 * @param id
+	 * @return - the String form of the id
+	 */
+	public static String toString(long id) {
+		return Long.toString(id);
+	}
+
+	/**
+	 * @param s - String form of an id
+	 * @return - the id, or 0 if s is not one
+	 */
+	public static long parse(String s) {
+		if (s == null || s.isEmpty() || s.length() > 19) return 0;
+		long id = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') return 0;
+			id = id * 10 + (c - '0');
+			if (id < 0) return 0;
+		}
+		return id;
+	}
+}
@@ -21,8 +21,19 @@ public class Quote {
 		if (buyVolume < 0) throw new InvalidVolumeException ("Invalid BUY-side Volume: " + buyVolume);
 		this.userName = userName; 
 		this.productSymbol = productSymbol;
-		this.buy = new QuoteSide(userName, productSymbol, buyPrice, buyVolume, "BUY", true); 
-		this.sell = new QuoteSide(userName, productSymbol, sellPrice, sellVolume, "SELL", true);
+		this.buy = new QuoteSide(userName, productSymbol, buyPrice, buyVolume, Side.BUY, true); 
+		this.sell = new QuoteSide(userName, productSymbol, sellPrice, sellVolume, Side.SELL, true);
+	}
+	
+	//Constructor for re-creating a Quote whose sides were previously assigned the provided ids
+	public Quote(String userName, String productSymbol, Price buyPrice, int buyVolume, long buyId, 
+			Price sellPrice, int sellVolume, long sellId) throws InvalidVolumeException {
+		if (sellVolume < 0) throw new InvalidVolumeException ("Invalid SELL-side Volume: " + sellVolume);
+		if (buyVolume < 0) throw new InvalidVolumeException ("Invalid BUY-side Volume: " + buyVolume);
+		this.userName = userName; 
+		this.productSymbol = productSymbol;
+		this.buy = new QuoteSide(userName, productSymbol, buyPrice, buyVolume, Side.BUY, true, buyId); 
+		this.sell = new QuoteSide(userName, productSymbol, sellPrice, sellVolume, Side.SELL, true, sellId);
 	}
 	
 	//UTILITIES----------------------//
@@ -42,12 +53,8 @@ public class Quote {
 		return productSymbol;
 	}
 
-	public QuoteSide getQuoteSide(String bookSide) { // UPDATED TO USE .EQUALS() AND REMOVED CREATION OF NEW BUY/SELL OBJECTS
-		bookSide = bookSide.toUpperCase(); 
-		try {
-		if (!bookSide.equals("BUY") && !bookSide.equals("SELL")) throw new InvalidQuoteException();
-		}catch (InvalidQuoteException e) {System.err.println("Bookside has invalid data");}
-		if (bookSide.equals("SELL")) return sell; 
+	public QuoteSide getQuoteSide(Side bookSide) {
+		if (bookSide == Side.SELL) return sell; 
 		return buy;
 	}
 }
@@ -15,7 +15,10 @@ public class QuoteSide implements Tradable {
 	private String symbol;
 	private Price orderPrice; 
 	private int originalVolume;
-	private String buyOrSell;
+	private Side buyOrSell;
+	// 0 until the book of the product numbers the QuoteSide - see OrderId
+	private long orderId;
+	// String form of orderId, made the first time it is asked for
 	private String id;
 	private int remainingVolume;
 	private int cancelVolume;
@@ -23,19 +26,18 @@ public class QuoteSide implements Tradable {
 
 	// CONSTRUCTORS ------------------//
 	public QuoteSide(String userName, String productSymbol, Price sidePrice,
-			int originalVolume, String side) {
-		id = userName + productSymbol + System.nanoTime();
+			int originalVolume, Side side) {
 		user = userName;
 		symbol = productSymbol;
 		orderPrice = sidePrice;
 		this.originalVolume = originalVolume;
 		remainingVolume = originalVolume;
-		buyOrSell = side.toUpperCase();
+		buyOrSell = side;
 		cancelVolume = 0;
 	}
 	
 	public QuoteSide(QuoteSide qs) {
-		id = qs.getId();
+		orderId = qs.getOrderId();
 		user = qs.getUser();
 		symbol = qs.getProduct();
 		this.originalVolume = qs.getOriginalVolume();
@@ -46,14 +48,20 @@ public class QuoteSide implements Tradable {
 	
 	//Constructor specifically for desiganting a QuoteSide object is part of a Quote
 	public QuoteSide(String userName, String productSymbol, Price sidePrice,
-			int originalVolume, String side, boolean isQuote) {
-		id = userName + productSymbol + System.nanoTime();
+			int originalVolume, Side side, boolean isQuote) {
+		this(userName, productSymbol, sidePrice, originalVolume, side, isQuote, 0);
+	}
+	
+	//Constructor for re-creating a QuoteSide that was previously assigned the provided id
+	public QuoteSide(String userName, String productSymbol, Price sidePrice,
+			int originalVolume, Side side, boolean isQuote, long orderId) {
+		this.orderId = orderId;
 		user = userName;
 		symbol = productSymbol;
 		orderPrice = sidePrice;
 		this.originalVolume = originalVolume;
 		remainingVolume = originalVolume;
-		buyOrSell = side.toUpperCase();
+		buyOrSell = side;
 		cancelVolume = 0;
 		this.isQuote = isQuote;
 	}
@@ -61,6 +69,13 @@ public class QuoteSide implements Tradable {
 	
 	//UTILITIES ------------------//
 	public String toString(){
+		return describe(orderPrice, originalVolume, cancelVolume, getId());
+	}
+
+	/**
+	 * The text toString gives for a QuoteSide with these fields, for messages that describe one later
+	 */
+	public static String describe(Price orderPrice, int originalVolume, int cancelVolume, String id) {
 		return orderPrice + " x " + originalVolume + " (Original Vol: " + originalVolume + ", CXL'D Vol: " + cancelVolume + ") [" + id + "]";
 	}
 
@@ -90,7 +105,7 @@ public class QuoteSide implements Tradable {
 		return user;
 	}
 
-	public String getSide() {
+	public Side getSide() {
 		return buyOrSell;
 	}
 
@@ -99,10 +114,20 @@ public class QuoteSide implements Tradable {
 	}
 
 	public String getId() {
+		if (id == null && orderId != 0) id = OrderId.toString(orderId);
 		return id;
 	}
 
-	public String getSide(Order o) throws InvalidQuoteException {
+	public long getOrderId() {
+		return orderId;
+	}
+
+	public void setOrderId(long orderId) {
+		if (this.orderId != 0) throw new IllegalStateException("QuoteSide already has id " + this.orderId);
+		this.orderId = orderId;
+	}
+
+	public Side getSide(Order o) throws InvalidQuoteException {
 		if (o.equals(null)) throw new InvalidQuoteException ("User passed null Order"); 
 		return buyOrSell;
 	}
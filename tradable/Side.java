@@ -0,0 +1,32 @@
+package tradable;
+
+/**
+*The side of the book an Order, QuoteSide or message is on.  Sides are 
+*compared by identity, and toString() gives the "BUY" and "SELL" Strings 
+*shown to users, so Strings are only needed where a side is typed in or 
+*read from text.
+*<p>
+*@author Team "Write Once - Run Everywhere": Steven McRae, Thomas Meier, Briant Becote 
+*@version 1.1 April 23 2015
+*/
+public enum Side {
+	BUY, SELL;
+
+	/**
+	 * @return - the side an entry on this side trades against
+	 */
+	public Side opposite() {
+		return this == BUY ? SELL : BUY;
+	}
+
+	/**
+	 * @param s - "BUY" or "SELL", in any case
+	 * @return - the Side, or null if s is neither
+	 */
+	public static Side parse(String s) {
+		if (s == null) return null;
+		if (s.equalsIgnoreCase("BUY")) return BUY;
+		if (s.equalsIgnoreCase("SELL")) return SELL;
+		return null;
+	}
+}
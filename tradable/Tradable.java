@@ -28,9 +28,16 @@ public interface Tradable {
 	
 	String getUser();
 	
-	String getSide();
+	Side getSide();
 	
 	boolean isQuote();
 	
+	// the id as handed to users and put in messages
 	String getId();
+	
+	// the id as used inside the books, see OrderId - 0 until the book numbers the Tradable
+	long getOrderId();
+	
+	// given once, by the book of the product
+	void setOrderId(long orderId);
 }
\ No newline at end of file
@@ -12,14 +12,14 @@ public class TradableDTO {
 	private String symbol; 
 	private Price ordPrice; 
 	private int origVolume; 
-	private String buyOrSell;
+	private Side buyOrSell;
 	private String id;
 	private int remVolume;
 	private int canVolume;
 	private boolean isQuote;
 	
 	//CONSTRUCTORS-----------------------//
-	public TradableDTO(String product, Price price, int originalVolume, int remainingVolume, int cancelledVolume, String user, String side, boolean quote, String id) {		
+	public TradableDTO(String product, Price price, int originalVolume, int remainingVolume, int cancelledVolume, String user, Side side, boolean quote, String id) {		
 		this.symbol = product;
 		this.ordPrice = price; 
 		this.origVolume = originalVolume;
@@ -81,11 +81,11 @@ public class TradableDTO {
 		this.origVolume = origVolume;
 	}
 
-	public String getBuyOrSell() {
+	public Side getBuyOrSell() {
 		return buyOrSell;
 	}
 
-	public void setBuyOrSell(String buyOrSell) {
+	public void setBuyOrSell(Side buyOrSell) {
 		this.buyOrSell = buyOrSell;
 	}
 
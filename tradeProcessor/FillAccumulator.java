@@ -0,0 +1,173 @@
+package tradeProcessor;
+
+import java.util.Arrays;
+
+import exceptions.InvalidMessageException;
+import exceptions.InvalidPriceException;
+import exceptions.InvalidVolumeException;
+import messages.FillMessage;
+import price.Price;
+import tradable.Tradable;
+
+/*******************************************************
+ * Collects the FillMessages made while one incoming
+ * Tradable trades against a book side, so they can be
+ * published together once the Tradable is done trading.
+ *
+ * Fills for resting entries are keyed by the sequence
+ * number the entry was booked under; the incoming
+ * Tradable gets one fill per Price it trades at.  Each
+ * book side owns one FillAccumulator and clears it for
+ * every incoming Tradable, so fills are kept in arrays
+ * that are only ever grown - never copied per price level.
+ * When messages are reused, the FillMessages themselves
+ * stay in the array for the next incoming Tradable, unless
+ * they are still being published.
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ ******************************************************/
+public final class FillAccumulator {
+
+	// fills in the order they were made
+	private FillMessage[] fills = new FillMessage[32];
+	private int size;
+	// open addressing table from resting entry sequence number to (position in fills + 1), 0 is a free slot
+	private long[] keys = new long[64];
+	private int[] slots = new int[64];
+	private int keyed;
+	// position in fills of the incoming Tradable's latest fill, -1 when there is none
+	private int lastIncoming = -1;
+	// the FillMessages in fills may be overwritten for later fills
+	private boolean reuse;
+	// the FillMessages in fills are being handed to subscribers
+	private boolean publishing;
+
+	/**
+	 * Forget every fill, ready for the next incoming Tradable
+	 *
+	 * @param reuseMessages - whether the next Tradable's fills may overwrite these FillMessages,
+	 * see MessagePublisher.setReuseMessages
+	 */
+	public void clear(boolean reuseMessages) {
+		// fills made without reuse may have been kept by their subscribers
+		if (!reuse || !reuseMessages) Arrays.fill(fills, 0, size, null);
+		reuse = reuseMessages;
+		if (keyed > 0) Arrays.fill(slots, 0);
+		size = 0;
+		keyed = 0;
+		lastIncoming = -1;
+	}
+
+	/**
+	 * @return - whether the fills are being published, so they must not be cleared or overwritten
+	 */
+	public boolean isPublishing() {
+		return publishing;
+	}
+
+	/**
+	 * @param publishing - whether the fills are being published
+	 */
+	public void setPublishing(boolean publishing) {
+		this.publishing = publishing;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i - position from 0, in the order the fills were made
+	 * @return - the FillMessage at that position
+	 */
+	public FillMessage get(int i) {
+		return fills[i];
+	}
+
+	/**
+	 * Record a fill of a resting entry, adding it to an earlier fill of the same entry if there is one
+	 *
+	 * @param seq - sequence number the entry was booked under
+	 * @param t - the resting entry
+	 * @param price - Price of the fill
+	 * @param volume - volume filled
+	 * @param leaving - volume of the entry left after the fill
+	 * @throws InvalidVolumeException
+	 * @throws InvalidMessageException
+	 * @throws InvalidPriceException
+	 */
+	public void addRestingFill(long seq, Tradable t, Price price, int volume, int leaving)
+			throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+		int mask = slots.length - 1;
+		int i = hash(seq) & mask;
+		while (slots[i] != 0) {
+			if (keys[i] == seq) {
+				merge(fills[slots[i] - 1], volume, leaving);
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = seq;
+		slots[i] = append(t, price, volume, leaving) + 1;
+		if (++keyed * 2 > slots.length) rehash();
+	}
+
+	/**
+	 * Record a fill of the incoming Tradable, adding it to its previous fill when both are at the same Price
+	 *
+	 * @param t - the incoming Tradable
+	 * @param price - Price of the fill
+	 * @param volume - volume filled
+	 * @param leaving - volume of the incoming Tradable left after the fill
+	 * @throws InvalidVolumeException
+	 * @throws InvalidMessageException
+	 * @throws InvalidPriceException
+	 */
+	public void addIncomingFill(Tradable t, Price price, int volume, int leaving)
+			throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+		if (lastIncoming >= 0 && fills[lastIncoming].getPrice().equals(price)) {
+			merge(fills[lastIncoming], volume, leaving);
+			return;
+		}
+		lastIncoming = append(t, price, volume, leaving);
+	}
+
+	private int append(Tradable t, Price price, int volume, int leaving)
+			throws InvalidVolumeException, InvalidMessageException, InvalidPriceException {
+		if (size == fills.length) fills = Arrays.copyOf(fills, size * 2);
+		FillMessage fm = reuse ? fills[size] : null;
+		if (fm == null) fills[size] = new FillMessage(t.getUser(), t.getProduct(), price, volume, leaving, t.getSide(), t.getId());
+		else fm.reset(t.getUser(), t.getProduct(), price, volume, leaving, t.getSide(), t.getId());
+		return size++;
+	}
+
+	// the FillMessage is not published yet, so no subscriber sees it change
+	private static void merge(FillMessage existing, int volume, int leaving) {
+		existing.reset(existing.getUser(), existing.getProduct(), existing.getPrice(), existing.getVolume() + volume,
+				leaving, existing.getSide(), existing.getId());
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldSlots = slots;
+		keys = new long[oldKeys.length * 2];
+		slots = new int[oldSlots.length * 2];
+		int mask = slots.length - 1;
+		for (int j = 0; j < oldSlots.length; j++) {
+			if (oldSlots[j] == 0) continue;
+			int i = hash(oldKeys[j]) & mask;
+			while (slots[i] != 0)
+				i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			slots[i] = oldSlots[j];
+		}
+	}
+
+	private static int hash(long seq) {
+		long h = seq * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
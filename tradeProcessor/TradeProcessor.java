@@ -3,12 +3,10 @@
  */
 package tradeProcessor;
 
-import java.util.HashMap;
 import tradable.Tradable;
 import exceptions.InvalidMessageException;
 import exceptions.InvalidPriceException;
 import exceptions.InvalidVolumeException;
-import messages.FillMessage;
 
 /*******************************************************
  *  * Defines functionality needed to execute
@@ -20,12 +18,14 @@ public interface TradeProcessor {
 
 	/**
 	 * Called when it has been determined that a Tradable
-	 *can trade against the content of the book
+	 *can trade against the content of the book.  Trades it against the
+	 *entries at the best price only; the book side calls again for each
+	 *further price level the Tradable can reach
 	 * @param trd
-	 * @return
+	 * @param fills - collects the fills made, for the book side to publish
 	 * @throws InvalidPriceException
 	 * @throws InvalidMessageException
 	 * @throws InvalidVolumeException
 	 */
-	public HashMap<String, FillMessage> doTrade(Tradable trd) throws InvalidPriceException, InvalidMessageException, InvalidVolumeException;
+	public void doTrade(Tradable trd, FillAccumulator fills) throws InvalidPriceException, InvalidMessageException, InvalidVolumeException;
 }
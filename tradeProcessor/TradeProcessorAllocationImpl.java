@@ -0,0 +1,86 @@
+package tradeProcessor;
+
+import java.util.Arrays;
+
+import book.LevelEntries;
+import book.ProductBookSide;
+import price.Price;
+import tradable.Tradable;
+import exceptions.InvalidMessageException;
+import exceptions.InvalidPriceException;
+import exceptions.InvalidVolumeException;
+
+/*******************************************************
+ * Base of the TradeProcessors that decide how much of
+ * an incoming Tradable each entry at the best price
+ * gets before trading any of it.  A subclass only
+ * allocates; the fills are then made in time order.
+ * The entries and allocations are kept in reusable
+ * arrays, so trading makes no garbage of its own.
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ ******************************************************/
+abstract class TradeProcessorAllocationImpl implements TradeProcessor {
+	private final ProductBookSide bookSide;
+	// reused for every price level traded against - a book side trades on one thread at a time
+	private final LevelEntries entriesAtPrice = new LevelEntries();
+	private int[] allocations = new int[16];
+
+	TradeProcessorAllocationImpl(ProductBookSide bookside) {
+		bookSide = bookside;
+	}
+
+	public ProductBookSide getBookSide() {
+		return bookSide;
+	}
+
+	/**
+	 * Share out volume that is less than the level holds.  Each allocation
+	 * must be no more than its entry's remaining volume and together they
+	 * must come to exactly the volume.
+	 * 
+	 * @param entries - the entries at the best price, in time order
+	 * @param volume - volume to share out
+	 * @param levelVolume - remaining volume of all the entries
+	 * @param allocations - zeroed, receives the volume each entry gets, by position in entries
+	 */
+	abstract void allocate(LevelEntries entries, int volume, int levelVolume, int[] allocations);
+
+	public void doTrade(Tradable trd, FillAccumulator fills) throws InvalidPriceException, InvalidMessageException, InvalidVolumeException {
+
+		bookSide.getEntriesAtTopOfBook(entriesAtPrice);
+		int n = entriesAtPrice.size();
+		if (n == 0) return;
+		if (allocations.length < n) allocations = new int[Math.max(n, allocations.length * 2)];
+
+		int levelVolume = 0;
+		for (int i = 0; i < n; i++)
+			levelVolume += entriesAtPrice.get(i).getRemainingVolume();
+
+		Arrays.fill(allocations, 0, n, 0);
+		if (trd.getRemainingVolume() >= levelVolume) {
+			for (int i = 0; i < n; i++)
+				allocations[i] = entriesAtPrice.get(i).getRemainingVolume();
+		} else allocate(entriesAtPrice, trd.getRemainingVolume(), levelVolume, allocations);
+
+		for (int i = 0; i < n; i++) {
+			int volume = allocations[i];
+			if (volume == 0) continue;
+			Tradable t = entriesAtPrice.get(i);
+			Price tPrice = t.getPrice().isMarket() ? trd.getPrice() : t.getPrice();
+			int leaving = t.getRemainingVolume() - volume;
+
+			fills.addRestingFill(entriesAtPrice.getSeq(i), t, tPrice, volume, leaving);
+			fills.addIncomingFill(trd, tPrice, volume, trd.getRemainingVolume() - volume);
+
+			trd.setRemainingVolume(trd.getRemainingVolume() - volume);
+			t.setRemainingVolume(leaving);
+			if (leaving == 0) bookSide.addOldEntry(t);
+			else bookSide.updateVolume(t);
+		}
+		if (trd.getRemainingVolume() == 0) bookSide.addOldEntry(trd);
+
+		for (int i = 0; i < n; i++) {
+			if (entriesAtPrice.get(i).getRemainingVolume() == 0) bookSide.removeTradable(entriesAtPrice.get(i));
+		}
+	}
+}
@@ -1,19 +1,55 @@
 package tradeProcessor;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
 import book.ProductBookSide;
 
 
+/*******************************************************
+ * Makes the TradeProcessor of each book side, using the
+ * matching algorithm its product was created with.
+ * Algorithms are registered by name; PRICE_TIME,
+ * PRO_RATA and PRICE_SIZE_TIME are always there.
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ ******************************************************/
 public class TradeProcessorFactory  {
-	private static HashMap <ProductBookSide, TradeProcessor> bookMap = new HashMap<ProductBookSide, TradeProcessor>();
-	
+	// first come, first served at each price
+	public static final String PRICE_TIME = "PRICE_TIME";
+	// oldest entry first, then shared in proportion to size
+	public static final String PRO_RATA = "PRO_RATA";
+	// largest entry first at each price, then oldest
+	public static final String PRICE_SIZE_TIME = "PRICE_SIZE_TIME";
+
+	//Shared by every book, which may be created on different threads
+	private static final ConcurrentHashMap<String, Function<ProductBookSide, TradeProcessor>> algorithms = new ConcurrentHashMap<String, Function<ProductBookSide, TradeProcessor>>();
+	static {
+		algorithms.put(PRICE_TIME, TradeProcessorPriceTimeImpl::new);
+		algorithms.put(PRO_RATA, TradeProcessorProRataImpl::new);
+		algorithms.put(PRICE_SIZE_TIME, TradeProcessorPriceSizeTimeImpl::new);
+	}
+
+	/**
+	 * Make an algorithm available to ProductService.createProduct, replacing any of the same name.
+	 * Products journaled with it can only be replayed once it is registered again.
+	 * 
+	 * @param name - name products are created with
+	 * @param maker - makes the TradeProcessor of one book side
+	 */
+	public static void register(String name, Function<ProductBookSide, TradeProcessor> maker) {
+		if (name == null || maker == null) throw new NullPointerException();
+		algorithms.put(name, maker);
+	}
+
+	public static boolean isRegistered(String name) {
+		return name != null && algorithms.containsKey(name);
+	}
+
 	//Factory Method-------------//
+	// the book side keeps what this returns, so each side gets a TradeProcessor of its own
 	public static TradeProcessor newProcessor(ProductBookSide bookside){
-		if(bookMap.containsKey(bookside)) return bookMap.get(bookside);
-		
-		TradeProcessor tradeProcessor = new TradeProcessorPriceTimeImpl(bookside);
-		bookMap.put(bookside, tradeProcessor);
-		
-		return tradeProcessor;
+		Function<ProductBookSide, TradeProcessor> maker = algorithms.get(bookside.getMatchingAlgorithm());
+		if (maker == null) throw new IllegalArgumentException("No matching algorithm named " + bookside.getMatchingAlgorithm());
+		return maker.apply(bookside);
 	}
 }
@@ -0,0 +1,39 @@
+package tradeProcessor;
+
+import java.util.Arrays;
+
+import book.LevelEntries;
+import book.ProductBookSide;
+
+/*******************************************************
+ * Price-size-time matching.  At the best price the
+ * entry with the most remaining volume is filled
+ * first, entries of equal size in time order.
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ ******************************************************/
+public class TradeProcessorPriceSizeTimeImpl extends TradeProcessorAllocationImpl {
+
+	// each entry's priority - larger volume, then earlier position, sorts first - and position
+	private long[] keys = new long[16];
+
+	//visible to TradeProcessorFactory, which makes one per book side
+	TradeProcessorPriceSizeTimeImpl(ProductBookSide bookside) {
+		super(bookside);
+	}
+
+	@Override
+	void allocate(LevelEntries entries, int volume, int levelVolume, int[] allocations) {
+		int n = entries.size();
+		if (keys.length < n) keys = new long[Math.max(n, keys.length * 2)];
+		for (int i = 0; i < n; i++)
+			keys[i] = (long) (Integer.MAX_VALUE - entries.get(i).getRemainingVolume()) << 32 | i;
+		Arrays.sort(keys, 0, n);
+
+		int left = volume;
+		for (int k = 0; k < n && left > 0; k++) {
+			int i = (int) keys[k];
+			allocations[i] = Math.min(left, entries.get(i).getRemainingVolume());
+			left -= allocations[i];
+		}
+	}
+}
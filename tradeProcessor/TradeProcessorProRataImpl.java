@@ -0,0 +1,46 @@
+package tradeProcessor;
+
+import book.LevelEntries;
+import book.ProductBookSide;
+
+/*******************************************************
+ * Pro-rata matching with top order priority.  The
+ * oldest entry at the best price is filled first; what
+ * is left is shared among the other entries in
+ * proportion to their remaining volume, rounding down,
+ * and the lots rounding leaves over go out in time
+ * order.  Joining a price early still pays, but quoting
+ * size pays more than racing for queue position.
+ * @author Steven Mcrae, Briant Belcote, Tom Meier
+ ******************************************************/
+public class TradeProcessorProRataImpl extends TradeProcessorAllocationImpl {
+
+	//visible to TradeProcessorFactory, which makes one per book side
+	TradeProcessorProRataImpl(ProductBookSide bookside) {
+		super(bookside);
+	}
+
+	@Override
+	void allocate(LevelEntries entries, int volume, int levelVolume, int[] allocations) {
+		int n = entries.size();
+		int top = entries.get(0).getRemainingVolume();
+		if (volume <= top) {
+			allocations[0] = volume;
+			return;
+		}
+		allocations[0] = top;
+		int left = volume - top;
+		long rest = levelVolume - top;
+		int given = 0;
+		for (int i = 1; i < n; i++) {
+			allocations[i] = (int) (left * (long) entries.get(i).getRemainingVolume() / rest);
+			given += allocations[i];
+		}
+		left -= given;
+		for (int i = 1; i < n && left > 0; i++) {
+			int more = Math.min(left, entries.get(i).getRemainingVolume() - allocations[i]);
+			allocations[i] += more;
+			left -= more;
+		}
+	}
+}